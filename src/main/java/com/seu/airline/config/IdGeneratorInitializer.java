@@ -0,0 +1,41 @@
+package com.seu.airline.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * 号段主键初始化
+ * 座位、订单项、消息的主键由 id_generators 表按号段分配（见实体上的 @TableGenerator），
+ * 启动时把每张表的下一个号段起点推进到现有最大ID之后，避免与原自增ID或脚本直接插入的数据冲突。
+ * 在 Hibernate 建表之后、Web 服务开始接收请求之前执行。
+ */
+@Component
+@Slf4j
+public class IdGeneratorInitializer {
+
+    private static final String[] TABLES = {"seats", "order_items", "messages"};
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // 依赖 EntityManagerFactory，保证在 Hibernate 更新表结构之后执行
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @PostConstruct
+    public void init() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS id_generators (" +
+                "entity_name VARCHAR(64) NOT NULL PRIMARY KEY, next_val BIGINT NOT NULL)");
+        for (String table : TABLES) {
+            jdbcTemplate.update("INSERT INTO id_generators (entity_name, next_val) " +
+                    "SELECT ?, COALESCE(MAX(id), 0) + 1 FROM " + table + " " +
+                    "ON DUPLICATE KEY UPDATE next_val = GREATEST(id_generators.next_val, VALUES(next_val))", table);
+        }
+        log.info("号段主键初始化完成：{}", String.join(", ", TABLES));
+    }
+}
@@ -8,9 +8,12 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.util.concurrent.Executors;
+
 @Configuration
 public class RedisConfig {
 
@@ -43,4 +46,23 @@ public class RedisConfig {
         template.afterPropertiesSet();
         return template;
     }
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory factory) {
+        // 不随应用启动订阅，由 SeatTransitionRelay 订阅并在 Redis 不可用时定期重试，Redis 不可用不影响启动
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer() {
+            @Override
+            public boolean isAutoStartup() {
+                return false;
+            }
+        };
+        container.setConnectionFactory(factory);
+        // 订阅消息在单个线程中按到达顺序处理（默认每条消息新建一个线程，顺序无法保证）
+        container.setTaskExecutor(Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "redis-subscriber");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        return container;
+    }
 }
@@ -71,6 +71,9 @@ public class WebSecurityConfig {
                         .antMatchers("/airport/**", "/flight/**").permitAll()
                         // 订单相关接口需要乘客角色
                         .antMatchers("/orders/**").hasRole("PASSENGER")
+                        // 健康检查允许访问，其余监控端点（含缓存命中率等指标）需要ADMIN角色
+                        .antMatchers("/actuator/health").permitAll()
+                        .antMatchers("/actuator/**").hasRole("ADMIN")
                         // 管理员接口需要ADMIN角色
                         .antMatchers("/admin/**").hasRole("ADMIN")
                         // 工作人员接口需要STAFF或ADMIN角色
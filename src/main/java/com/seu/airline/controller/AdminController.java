@@ -1,16 +1,21 @@
 package com.seu.airline.controller;
 
 import com.seu.airline.dto.ApiResponse;
+import com.seu.airline.dto.OrderDTO;
 import com.seu.airline.model.Order;
 import com.seu.airline.model.User;
 import com.seu.airline.repository.OrderRepository;
 import com.seu.airline.repository.UserRepository;
+import com.seu.airline.service.BookingCoordinator;
+import com.seu.airline.service.FlashSaleService;
+import com.seu.airline.service.OrderQueryService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RestController
@@ -24,6 +29,41 @@ public class AdminController {
     @Autowired
     private OrderRepository orderRepository;
 
+    @Autowired
+    private OrderQueryService orderQueryService;
+
+    @Autowired
+    private BookingCoordinator bookingCoordinator;
+
+    @Autowired
+    private FlashSaleService flashSaleService;
+
+    // 获取处于抢购模式的航班
+    @GetMapping("/flash-sale/flights")
+    public ResponseEntity<?> getFlashSaleFlights() {
+        return ResponseEntity.ok(ApiResponse.success(flashSaleService.getFlashSaleFlights(), "获取抢购航班成功"));
+    }
+
+    // 开启或关闭航班的抢购模式（下单请求进入排队队列），对所有实例生效；Redis 不可用时返回 503
+    @PutMapping("/flash-sale/flights/{flightId}")
+    public ResponseEntity<?> setFlashSale(
+            @PathVariable Long flightId,
+            @RequestParam boolean enabled) {
+        try {
+            flashSaleService.setFlashSale(flightId, enabled);
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(503).body(ApiResponse.error(e.getMessage()));
+        }
+        return ResponseEntity.ok(ApiResponse.success(enabled ? "抢购模式已开启" : "抢购模式已关闭"));
+    }
+
+    // 获取当前订票排队最多的航班（航班ID -> 排队或执行中的请求数）
+    @GetMapping("/booking/hot-flights")
+    public ResponseEntity<?> getHotFlights(@RequestParam(defaultValue = "20") int limit) {
+        Map<Long, Integer> hotFlights = bookingCoordinator.getHotFlights(limit);
+        return ResponseEntity.ok(ApiResponse.success(hotFlights, "获取热点航班成功"));
+    }
+
     // 获取所有用户
     @GetMapping("/users")
     public ResponseEntity<?> getAllUsers() {
@@ -107,4 +147,48 @@ public class AdminController {
         List<Order> orders = orderRepository.findByUserId(userId);
         return ResponseEntity.ok(ApiResponse.success(orders, "获取用户订单成功"));
     }
+
+    // 以下 v2 接口从订单摘要读取，返回 OrderDTO 列表（与乘客端订单列表格式相同），每次一条查询
+
+    // 获取所有订单 v2
+    @GetMapping("/v2/orders")
+    public ResponseEntity<?> getAllOrderSummaries() {
+        List<OrderDTO> orders = orderQueryService.listAllOrders();
+        return ResponseEntity.ok(ApiResponse.success(orders, "获取订单列表成功"));
+    }
+
+    // 根据状态获取订单 v2
+    @GetMapping("/v2/orders/status/{status}")
+    public ResponseEntity<?> getOrderSummariesByStatus(@PathVariable String status) {
+        try {
+            Order.OrderStatus orderStatus = Order.OrderStatus.valueOf(status.toUpperCase());
+            List<OrderDTO> orders = orderQueryService.listOrdersByStatus(orderStatus);
+            return ResponseEntity.ok(ApiResponse.success(orders, "获取" + status + "状态订单成功"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error("无效的订单状态: " + status));
+        }
+    }
+
+    // 获取指定时间段内的订单 v2
+    @GetMapping("/v2/orders/period")
+    public ResponseEntity<?> getOrderSummariesByPeriod(
+            @RequestParam String startDate,
+            @RequestParam String endDate) {
+        try {
+            LocalDateTime start = LocalDateTime.parse(startDate + "T00:00:00");
+            LocalDateTime end = LocalDateTime.parse(endDate + "T23:59:59");
+
+            List<OrderDTO> orders = orderQueryService.listOrdersCreatedBetween(start, end);
+            return ResponseEntity.ok(ApiResponse.success(orders, "获取时间段内订单成功"));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error("日期格式错误，请使用YYYY-MM-DD格式"));
+        }
+    }
+
+    // 获取指定用户的订单 v2
+    @GetMapping("/v2/orders/user/{userId}")
+    public ResponseEntity<?> getOrderSummariesByUser(@PathVariable Long userId) {
+        List<OrderDTO> orders = orderQueryService.listUserOrders(userId);
+        return ResponseEntity.ok(ApiResponse.success(orders, "获取用户订单成功"));
+    }
 }
\ No newline at end of file
@@ -1,9 +1,17 @@
 package com.seu.airline.controller;
 
 import com.seu.airline.dto.ApiResponse;
+import com.seu.airline.dto.FareCalendarDTO;
 import com.seu.airline.dto.FlightDTO;
+import com.seu.airline.dto.ItineraryDTO;
 import com.seu.airline.model.Flight;
 import com.seu.airline.repository.FlightRepository;
+import com.seu.airline.service.FareCalendarService;
+import com.seu.airline.service.FlightAvailabilityService;
+import com.seu.airline.service.FlightSearchCache;
+import com.seu.airline.service.FlightSearchIndex;
+import com.seu.airline.service.ItinerarySearchService;
+import com.seu.airline.service.RequestCoalescer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -23,6 +31,24 @@ public class FlightController {
     @Autowired
     private FlightRepository flightRepository;
 
+    @Autowired
+    private FlightSearchIndex flightSearchIndex;
+
+    @Autowired
+    private FlightAvailabilityService flightAvailabilityService;
+
+    @Autowired
+    private FlightSearchCache flightSearchCache;
+
+    @Autowired
+    private ItinerarySearchService itinerarySearchService;
+
+    @Autowired
+    private FareCalendarService fareCalendarService;
+
+    @Autowired
+    private RequestCoalescer requestCoalescer;
+
     // 搜索航班（按城市、日期）
     @GetMapping("/search")
     public ResponseEntity<?> searchFlights(
@@ -31,23 +57,94 @@ public class FlightController {
             @RequestParam String departureDate) {
         try {
             LocalDate date = LocalDate.parse(departureDate, DateTimeFormatter.ISO_LOCAL_DATE);
+
+            List<FlightDTO> cached = flightSearchCache.get(departureCity, arrivalCity, date);
+            if (cached != null) {
+                return ResponseEntity.ok(ApiResponse.success(cached));
+            }
+
+            // 缓存未命中时，同一时刻相同条件的搜索只计算一次
+            List<FlightDTO> flightDTOs = requestCoalescer.execute("flight.search",
+                    departureCity.trim() + ":" + arrivalCity.trim() + ":" + date,
+                    () -> loadFlights(departureCity, arrivalCity, date));
+            return ResponseEntity.ok(ApiResponse.success(flightDTOs));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error("日期格式错误，请使用YYYY-MM-DD格式"));
+        }
+    }
+
+    // 从内存索引（或数据库）计算搜索结果并写入缓存
+    private List<FlightDTO> loadFlights(String departureCity, String arrivalCity, LocalDate date) {
+        // 优先从内存索引返回结果，索引尚未构建完成或日期早于索引收录范围（历史日期）时回退到数据库查询
+        List<FlightDTO> flightDTOs;
+        if (flightSearchIndex.covers(date)) {
+            flightDTOs = flightSearchIndex.search(departureCity, arrivalCity, date).stream()
+                    .map(summary -> new FlightDTO(summary, flightAvailabilityService.get(summary.getId())))
+                    .collect(Collectors.toList());
+        } else {
             LocalDateTime startDate = date.atStartOfDay();
             LocalDateTime endDate = startDate.plusDays(1);
 
-            List<Flight> flights = flightRepository.findFlightsByCity(
+            flightDTOs = flightRepository.findSummariesByCity(
                     departureCity,
                     arrivalCity,
                     startDate,
-                    endDate);
-
-            List<FlightDTO> flightDTOs = flights.stream()
-                    .map(FlightDTO::new)
+                    endDate).stream()
+                    .map(summary -> new FlightDTO(summary, flightAvailabilityService.get(summary.getId())))
                     .collect(Collectors.toList());
+        }
 
-            return ResponseEntity.ok(ApiResponse.success(flightDTOs));
+        flightSearchCache.put(departureCity, arrivalCity, date, flightDTOs);
+        return flightDTOs;
+    }
+
+    // 搜索直飞及中转行程（最多两次中转）
+    @GetMapping("/itineraries")
+    public ResponseEntity<?> searchItineraries(
+            @RequestParam String departureCity,
+            @RequestParam String arrivalCity,
+            @RequestParam String departureDate,
+            @RequestParam(defaultValue = "2") Integer maxStops,
+            @RequestParam(defaultValue = "20") Integer limit) {
+        LocalDate date;
+        try {
+            date = LocalDate.parse(departureDate, DateTimeFormatter.ISO_LOCAL_DATE);
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(ApiResponse.error("日期格式错误，请使用YYYY-MM-DD格式"));
         }
+
+        if (!flightSearchIndex.isReady()) {
+            return ResponseEntity.status(503).body(ApiResponse.error("航班数据加载中，请稍后重试"));
+        }
+
+        List<ItineraryDTO> itineraries = itinerarySearchService.search(
+                departureCity, arrivalCity, date, maxStops, limit);
+        return ResponseEntity.ok(ApiResponse.success(itineraries));
+    }
+
+    // 低价日历：返回航线从指定日期起每天的最低可售价（默认 30 天，最多 60 天）
+    @GetMapping("/calendar")
+    public ResponseEntity<?> getFareCalendar(
+            @RequestParam String departureCity,
+            @RequestParam String arrivalCity,
+            @RequestParam(required = false) String startDate,
+            @RequestParam(defaultValue = "30") Integer days) {
+        LocalDate start;
+        try {
+            start = startDate != null ? LocalDate.parse(startDate, DateTimeFormatter.ISO_LOCAL_DATE) : LocalDate.now();
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error("日期格式错误，请使用YYYY-MM-DD格式"));
+        }
+        if (days < 1 || days > FareCalendarService.MAX_DAYS) {
+            return ResponseEntity.badRequest().body(ApiResponse.error("查询天数须在1到" + FareCalendarService.MAX_DAYS + "之间"));
+        }
+
+        if (!flightSearchIndex.isReady()) {
+            return ResponseEntity.status(503).body(ApiResponse.error("航班数据加载中，请稍后重试"));
+        }
+
+        List<FareCalendarDTO> calendar = fareCalendarService.getCalendar(departureCity, arrivalCity, start, days);
+        return ResponseEntity.ok(ApiResponse.success(calendar));
     }
 
     // 获取航班详情
@@ -55,9 +152,10 @@ public class FlightController {
     public ResponseEntity<?> getFlightById(@PathVariable String id) {
         try {
             Long flightId = Long.parseLong(id);
-            Optional<Flight> flight = flightRepository.findById(flightId);
+            Optional<Flight> flight = flightRepository.findWithRouteById(flightId);
             if (flight.isPresent()) {
-                return ResponseEntity.ok(ApiResponse.success(new FlightDTO(flight.get())));
+                return ResponseEntity.ok(ApiResponse.success(
+                        new FlightDTO(flight.get(), flightAvailabilityService.get(flightId))));
             } else {
                 return ResponseEntity.status(404).body(ApiResponse.error("航班不存在"));
             }
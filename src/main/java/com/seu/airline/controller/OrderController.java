@@ -1,26 +1,28 @@
 package com.seu.airline.controller;
 
 import com.seu.airline.dto.ApiResponse;
+import com.seu.airline.dto.BookingTicketDTO;
+import com.seu.airline.dto.OrderCreateRequest;
 import com.seu.airline.dto.OrderDTO;
+import com.seu.airline.dto.OrderPageDTO;
 import com.seu.airline.model.Order;
 import com.seu.airline.model.OrderItem;
-import com.seu.airline.model.Seat;
-import com.seu.airline.model.User;
 import com.seu.airline.repository.OrderItemRepository;
 import com.seu.airline.repository.OrderRepository;
-import com.seu.airline.repository.SeatRepository;
 import com.seu.airline.security.UserDetailsImpl;
+import com.seu.airline.service.BookingCoordinator;
+import com.seu.airline.service.BookingService;
+import com.seu.airline.service.FlashSaleService;
+import com.seu.airline.service.IdempotencyService;
+import com.seu.airline.service.OrderQueryService;
+import com.seu.airline.service.OrderService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
-import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
-import java.util.UUID;
-import java.util.stream.Collectors;
-import java.math.BigDecimal;
 
 @RestController
 @RequestMapping("/orders")
@@ -34,97 +36,88 @@ public class OrderController {
     private OrderItemRepository orderItemRepository;
 
     @Autowired
-    private SeatRepository seatRepository;
+    private OrderQueryService orderQueryService;
 
-    // 创建订单
+    @Autowired
+    private BookingCoordinator bookingCoordinator;
+
+    @Autowired
+    private BookingService bookingService;
+
+    @Autowired
+    private FlashSaleService flashSaleService;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    // 创建订单（携带 Idempotency-Key 时，重试请求重放第一次的响应）
     @PostMapping
     public ResponseEntity<?> createOrder(
-            @RequestBody OrderRequest orderRequest,
+            @RequestBody OrderCreateRequest orderRequest,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
             Authentication authentication) {
 
         UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
+        return idempotencyService.execute("order.create", userDetails.getId(), idempotencyKey, orderRequest,
+                () -> doCreateOrder(orderRequest, userDetails));
+    }
 
+    private ResponseEntity<?> doCreateOrder(OrderCreateRequest orderRequest, UserDetailsImpl userDetails) {
         try {
-            // 创建订单
-            Order order = new Order();
-            order.setOrderNumber(generateOrderNumber());
-            User user = new User();
-            user.setId(userDetails.getId());
-            order.setUser(user);
-            order.setStatus(Order.OrderStatus.PENDING);
-            order.setCreatedAt(LocalDateTime.now());
-            order.setUpdatedAt(LocalDateTime.now());
-
-            // 使用前端传递的总金额(包含额外服务费用等)
-            // 如果前端没有传递,则按座位价格计算
-            BigDecimal totalAmount;
-            if (orderRequest.getTotalAmount() != null && orderRequest.getTotalAmount().compareTo(BigDecimal.ZERO) > 0) {
-                totalAmount = orderRequest.getTotalAmount();
-            } else {
-                // 后备方案: 计算总金额
-                totalAmount = BigDecimal.ZERO;
-                for (OrderItemRequest item : orderRequest.getItems()) {
-                    Optional<Seat> seatOpt = seatRepository.findById(item.getSeatId());
-                    if (!seatOpt.isPresent()) {
-                        return ResponseEntity.badRequest().body(ApiResponse.error("座位不存在"));
-                    }
-
-                    Seat seat = seatOpt.get();
-                    if (seat.getStatus() != Seat.SeatStatus.AVAILABLE) {
-                        return ResponseEntity.badRequest().body(ApiResponse.error("座位已被占用"));
-                    }
-                    totalAmount = totalAmount.add(seat.getPrice());
+            List<Long> flightIds = bookingService.flightIdsOf(orderRequest);
+            // 抢购航班的请求进入准入队列，立即返回排队凭证
+            if (flashSaleService.isFlashSale(flightIds)) {
+                BookingTicketDTO ticket = flashSaleService.submit(userDetails.getId(), orderRequest, flightIds);
+                if (ticket == null) {
+                    return ResponseEntity.status(429).body(ApiResponse.error("当前抢购人数过多，请稍后重试"));
                 }
-            }
-
-            order.setTotalAmount(totalAmount);
-            Order savedOrder = orderRepository.save(order);
-
-            // 创建订单详情
-            for (OrderItemRequest item : orderRequest.getItems()) {
-                OrderItem orderItem = new OrderItem();
-                orderItem.setOrder(savedOrder);
-
-                Optional<Seat> seatOpt = seatRepository.findById(item.getSeatId());
-                if (seatOpt.isPresent()) {
-                    Seat seat = seatOpt.get();
-                    orderItem.setSeat(seat);
-                    orderItem.setPassengerName(item.getPassengerName());
-                    orderItem.setPassengerIdCard(item.getPassengerIdCard());
-                    orderItem.setPrice(seat.getPrice());
-                    orderItem.setCreatedAt(LocalDateTime.now());
-
-                    // 更新座位状态
-                    seat.setStatus(Seat.SeatStatus.RESERVED);
-                    seatRepository.save(seat);
-
-                    orderItemRepository.save(orderItem);
+                if (FlashSaleService.FAILED.equals(ticket.getStatus())) {
+                    return ResponseEntity.badRequest().body(ApiResponse.error("创建订单失败: " + ticket.getMessage()));
                 }
+                return ResponseEntity.accepted().body(ApiResponse.success(ticket, "已进入抢购队列"));
             }
 
-            // 获取完整订单信息并转换为DTO
-            List<OrderItem> orderItems = orderItemRepository.findByOrderId(savedOrder.getId());
-            OrderDTO orderDTO = new OrderDTO(savedOrder, orderItems);
-
+            OrderDTO orderDTO = bookingService.placeOrder(userDetails.getId(), orderRequest);
             return ResponseEntity.ok(ApiResponse.success(orderDTO, "订单创建成功"));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(ApiResponse.error("创建订单失败: " + e.getMessage()));
         }
     }
 
-    // 获取用户的所有订单
-    @GetMapping
-    public ResponseEntity<?> getUserOrders(Authentication authentication) {
+    // 查询抢购排队凭证的处理结果
+    @GetMapping("/tickets/{ticketId}")
+    public ResponseEntity<?> getBookingTicket(
+            @PathVariable String ticketId,
+            Authentication authentication) {
         UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
-        List<Order> orders = orderRepository.findByUserId(userDetails.getId());
+        BookingTicketDTO ticket = flashSaleService.getTicket(ticketId, userDetails.getId());
+        if (ticket == null) {
+            return ResponseEntity.status(404).body(ApiResponse.error("排队凭证不存在或已过期"));
+        }
+        return ResponseEntity.ok(ApiResponse.success(ticket));
+    }
 
-        // 转换为DTO
-        List<OrderDTO> orderDTOs = orders.stream()
-                .map(order -> {
-                    List<OrderItem> items = orderItemRepository.findByOrderId(order.getId());
-                    return new OrderDTO(order, items);
-                })
-                .collect(Collectors.toList());
+    // 获取用户的订单
+    // 传入 size 或 cursor 时按创建时间倒序分页返回（键集分页），否则返回全部订单（兼容旧客户端）
+    @GetMapping
+    public ResponseEntity<?> getUserOrders(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            Authentication authentication) {
+        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
+        // 只读投影查询，不加载订单、座位、航班实体
+        if (cursor != null || size != null) {
+            try {
+                OrderPageDTO page = orderQueryService.listUserOrders(userDetails.getId(), cursor, size);
+                return ResponseEntity.ok(ApiResponse.success(page));
+            } catch (RuntimeException e) {
+                return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+            }
+        }
+        List<OrderDTO> orderDTOs = orderQueryService.listUserOrders(userDetails.getId());
 
         return ResponseEntity.ok(ApiResponse.success(orderDTOs));
     } // 获取订单详情
@@ -135,21 +128,17 @@ public class OrderController {
             Authentication authentication) {
         UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
 
-        Optional<Order> orderOpt = orderRepository.findById(id);
-        if (!orderOpt.isPresent()) {
+        // 从订单摘要读取，一次查询一行
+        OrderDTO orderDTO = orderQueryService.getOrder(id);
+        if (orderDTO == null) {
             return ResponseEntity.status(404).body(ApiResponse.error("订单不存在"));
         }
 
-        Order order = orderOpt.get();
         // 检查是否是用户自己的订单
-        if (!order.getUser().getId().equals(userDetails.getId())) {
+        if (!userDetails.getId().equals(orderDTO.getUserId())) {
             return ResponseEntity.status(403).body(ApiResponse.error("无权访问此订单"));
         }
 
-        // 获取订单详情并转换为DTO
-        List<OrderItem> orderItems = orderItemRepository.findByOrderId(id);
-        OrderDTO orderDTO = new OrderDTO(order, orderItems);
-
         return ResponseEntity.ok(ApiResponse.success(orderDTO));
     } // 取消订单
 
@@ -157,147 +146,65 @@ public class OrderController {
     public ResponseEntity<?> cancelOrder(
             @PathVariable Long id,
             Authentication authentication) {
-        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
-
-        Optional<Order> orderOpt = orderRepository.findById(id);
-        if (!orderOpt.isPresent()) {
-            return ResponseEntity.status(404).body(ApiResponse.error("订单不存在"));
-        }
+        return bookingCoordinator.execute("order.cancel", orderItemRepository.findFlightIdsByOrderId(id),
+                () -> doCancelOrder(id, authentication));
+    }
 
-        Order order = orderOpt.get();
-        if (!order.getUser().getId().equals(userDetails.getId())) {
-            return ResponseEntity.status(403).body(ApiResponse.error("无权操作此订单"));
+    private ResponseEntity<?> doCancelOrder(Long id, Authentication authentication) {
+        ResponseEntity<?> denied = checkOwnership(id, authentication);
+        if (denied != null) {
+            return denied;
         }
-
-        if (order.getStatus() != Order.OrderStatus.PENDING) {
-            return ResponseEntity.badRequest().body(ApiResponse.error("只能取消待支付的订单"));
-        } // 更新订单状态
-        order.setStatus(Order.OrderStatus.CANCELLED);
-        order.setUpdatedAt(LocalDateTime.now());
-        orderRepository.save(order);
-
-        // 释放座位
-        List<OrderItem> orderItems = orderItemRepository.findByOrderId(id);
-        for (OrderItem item : orderItems) {
-            Optional<Seat> seatOpt = seatRepository.findById(item.getSeat().getId());
-            if (seatOpt.isPresent()) {
-                Seat seat = seatOpt.get();
-                seat.setStatus(Seat.SeatStatus.AVAILABLE);
-                seatRepository.save(seat);
-            }
+        try {
+            Order order = orderService.cancelOrder(id);
+            return ResponseEntity.ok(ApiResponse.success(order, "订单已取消"));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
         }
-
-        return ResponseEntity.ok(ApiResponse.success(order, "订单已取消"));
     }
 
-    // 支付订单
+    // 支付订单（携带 Idempotency-Key 时，重试请求重放第一次的响应）
     @PutMapping("/{id}/pay")
     public ResponseEntity<?> payOrder(
             @PathVariable Long id,
             @RequestBody(required = false) PaymentRequest paymentRequest,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
             Authentication authentication) {
         UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
-
-        Optional<Order> orderOpt = orderRepository.findById(id);
-        if (!orderOpt.isPresent()) {
-            return ResponseEntity.status(404).body(ApiResponse.error("订单不存在"));
-        }
-
-        Order order = orderOpt.get();
-        if (!order.getUser().getId().equals(userDetails.getId())) {
-            return ResponseEntity.status(403).body(ApiResponse.error("无权操作此订单"));
-        }
-
-        if (order.getStatus() != Order.OrderStatus.PENDING) {
-            return ResponseEntity.badRequest().body(ApiResponse.error("订单已处理"));
-        } // 更新订单状态
-        order.setStatus(Order.OrderStatus.PAID);
-        order.setPaymentTime(LocalDateTime.now());
-        order.setUpdatedAt(LocalDateTime.now());
-        
-        // 设置支付方式
-        if (paymentRequest != null && paymentRequest.getPaymentMethod() != null) {
-            order.setPaymentMethod(paymentRequest.getPaymentMethod());
-        }
-        
-        orderRepository.save(order);
-
-        // 更新座位状态为已占用
-        List<OrderItem> orderItems = orderItemRepository.findByOrderId(id);
-        for (OrderItem item : orderItems) {
-            Optional<Seat> seatOpt = seatRepository.findById(item.getSeat().getId());
-            if (seatOpt.isPresent()) {
-                Seat seat = seatOpt.get();
-                seat.setStatus(Seat.SeatStatus.OCCUPIED);
-                seatRepository.save(seat);
-            }
-        }
-
-        // 返回DTO而不是实体，避免懒加载序列化问题
-        OrderDTO orderDTO = new OrderDTO(order, orderItems);
-        return ResponseEntity.ok(ApiResponse.success(orderDTO, "支付成功"));
-    }
-
-    // 生成订单号
-    private String generateOrderNumber() {
-        return "ORD" + LocalDateTime.now().format(java.time.format.DateTimeFormatter.ofPattern("yyyyMMddHHmmss"))
-                + UUID.randomUUID().toString().substring(0, 6).toUpperCase();
+        String paymentMethod = paymentRequest != null ? paymentRequest.getPaymentMethod() : null;
+        return idempotencyService.execute("order.pay", userDetails.getId(), idempotencyKey, id + ":" + paymentMethod,
+                () -> bookingCoordinator.execute("order.pay", orderItemRepository.findFlightIdsByOrderId(id),
+                        () -> doPayOrder(id, paymentRequest, authentication)));
     }
 
-    // 请求和响应类
-    public static class OrderItemRequest {
-        private Long seatId;
-        private String passengerName;
-        private String passengerIdCard;
-
-        // getters and setters
-        public Long getSeatId() {
-            return seatId;
-        }
-
-        public void setSeatId(Long seatId) {
-            this.seatId = seatId;
-        }
-
-        public String getPassengerName() {
-            return passengerName;
+    private ResponseEntity<?> doPayOrder(Long id, PaymentRequest paymentRequest, Authentication authentication) {
+        ResponseEntity<?> denied = checkOwnership(id, authentication);
+        if (denied != null) {
+            return denied;
         }
-
-        public void setPassengerName(String passengerName) {
-            this.passengerName = passengerName;
-        }
-
-        public String getPassengerIdCard() {
-            return passengerIdCard;
-        }
-
-        public void setPassengerIdCard(String passengerIdCard) {
-            this.passengerIdCard = passengerIdCard;
+        try {
+            String paymentMethod = paymentRequest != null ? paymentRequest.getPaymentMethod() : null;
+            OrderDTO orderDTO = orderService.payOrder(id, paymentMethod);
+            return ResponseEntity.ok(ApiResponse.success(orderDTO, "支付成功"));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
         }
     }
 
-    public static class OrderRequest {
-        private List<OrderItemRequest> items;
-        private BigDecimal totalAmount;  // 前端计算的总金额
-
-        // getters and setters
-        public List<OrderItemRequest> getItems() {
-            return items;
-        }
-
-        public void setItems(List<OrderItemRequest> items) {
-            this.items = items;
-        }
-
-        public BigDecimal getTotalAmount() {
-            return totalAmount;
+    // 校验订单存在且属于当前用户，通过时返回 null
+    private ResponseEntity<?> checkOwnership(Long id, Authentication authentication) {
+        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
+        Optional<Order> orderOpt = orderRepository.findById(id);
+        if (!orderOpt.isPresent()) {
+            return ResponseEntity.status(404).body(ApiResponse.error("订单不存在"));
         }
-
-        public void setTotalAmount(BigDecimal totalAmount) {
-            this.totalAmount = totalAmount;
+        if (!orderOpt.get().getUser().getId().equals(userDetails.getId())) {
+            return ResponseEntity.status(403).body(ApiResponse.error("无权操作此订单"));
         }
+        return null;
     }
 
+    // 请求和响应类
     public static class OrderResponse {
         private Order order;
         private List<OrderItem> items;
@@ -2,13 +2,22 @@ package com.seu.airline.controller;
 
 import com.seu.airline.dto.ApiResponse;
 import com.seu.airline.dto.SeatDTO;
+import com.seu.airline.dto.SeatDeltaDTO;
 import com.seu.airline.model.Seat;
 import com.seu.airline.repository.SeatRepository;
+import com.seu.airline.service.RequestCoalescer;
+import com.seu.airline.service.SeatMapService;
+import com.seu.airline.service.SeatStreamService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.servlet.http.HttpServletResponse;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/seats")
@@ -18,26 +27,83 @@ public class SeatController {
     @Autowired
     private SeatRepository seatRepository;
 
+    @Autowired
+    private RequestCoalescer requestCoalescer;
+
+    @Autowired
+    private SeatMapService seatMapService;
+
+    @Autowired
+    private SeatStreamService seatStreamService;
+
     // 获取航班的所有座位
+    // 响应带座位状态版本的 ETag，版本未变时返回 304；传入 since 时只返回该版本之后状态变化的座位
     @GetMapping("/flight/{flightId}")
-    public ApiResponse<List<SeatDTO>> getFlightSeats(@PathVariable Long flightId) {
-        List<Seat> seats = seatRepository.findByFlightId(flightId);
-        List<SeatDTO> seatDTOs = seats.stream()
-                .map(SeatDTO::fromEntity)
-                .collect(Collectors.toList());
-        return ApiResponse.success(seatDTOs, "获取座位列表成功");
+    public ApiResponse<?> getFlightSeats(
+            @PathVariable Long flightId,
+            @RequestParam(required = false) Long since,
+            WebRequest webRequest) {
+        // 先取版本再查询，保证返回内容不旧于 ETag 所标记的版本
+        Long version = seatMapService.getVersion(flightId);
+        if (version != null && webRequest.checkNotModified(seatsEtag(flightId, version, since))) {
+            return null;
+        }
+        if (since != null && version != null) {
+            return ApiResponse.success(seatDelta(flightId, since, () -> loadFlightSeats(flightId)), "获取座位变化成功");
+        }
+        return ApiResponse.success(loadFlightSeats(flightId), "获取座位列表成功");
+    }
+
+    // 获取航班的紧凑座位图（舱位布局 + 状态位图 + 版本号），同一版本直接返回缓存的响应
+    @GetMapping(value = "/flight/{flightId}/map", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> getFlightSeatMap(@PathVariable Long flightId, WebRequest webRequest) {
+        Long version = seatMapService.getVersion(flightId);
+        if (version != null && webRequest.checkNotModified(seatsEtag(flightId, version, null))) {
+            return null;
+        }
+        byte[] body = seatMapService.getSeatMapJson(flightId);
+        if (body == null) {
+            return ResponseEntity.status(404).body(ApiResponse.error("航班不存在或没有座位"));
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    // 订阅航班座位状态变化（SSE）
+    // 连接后先收到一次当前版本，之后座位状态变化提交时收到 delta 事件（只含状态变化的座位），
+    // 需要重新拉取完整座位列表时收到 resync 事件；断线重连时按 Last-Event-ID 补发期间的变化
+    @GetMapping(value = "/flight/{flightId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamSeatChanges(
+            @PathVariable Long flightId,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+            HttpServletResponse response) {
+        if (!seatMapService.hasSeats(flightId)) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return null;
+        }
+        SseEmitter emitter = seatStreamService.subscribe(flightId, lastEventId);
+        if (emitter == null) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        }
+        return emitter;
     }
 
-    // 获取航班的可用座位
+    // 获取航班的可用座位（ETag 与 since 增量同上，增量中状态不再是 AVAILABLE 的座位由客户端移除）
     @GetMapping("/flight/{flightId}/available")
-    public ApiResponse<List<SeatDTO>> getAvailableSeats(@PathVariable Long flightId) {
-        List<Seat> seats = seatRepository.findByFlightIdAndStatus(
+    public ApiResponse<?> getAvailableSeats(
+            @PathVariable Long flightId,
+            @RequestParam(required = false) Long since,
+            WebRequest webRequest) {
+        Long version = seatMapService.getVersion(flightId);
+        if (version != null && webRequest.checkNotModified(seatsEtag(flightId, version, since))) {
+            return null;
+        }
+        Supplier<List<SeatDTO>> available = () -> seatRepository.findSeatViewsByFlightIdAndStatus(
                 flightId,
                 Seat.SeatStatus.AVAILABLE);
-        List<SeatDTO> seatDTOs = seats.stream()
-                .map(SeatDTO::fromEntity)
-                .collect(Collectors.toList());
-        return ApiResponse.success(seatDTOs, "获取可用座位列表成功");
+        if (since != null && version != null) {
+            return ApiResponse.success(seatDelta(flightId, since, available), "获取座位变化成功");
+        }
+        return ApiResponse.success(available.get(), "获取可用座位列表成功");
     }
 
     // 获取航班特定类型的可用座位
@@ -47,19 +113,37 @@ public class SeatController {
             @PathVariable String seatType) {
         try {
             Seat.SeatType type = Seat.SeatType.valueOf(seatType.toUpperCase());
-            List<Seat> seats = seatRepository.findByFlightIdAndSeatTypeAndStatus(
+            List<SeatDTO> seatDTOs = seatRepository.findSeatViewsByFlightIdAndSeatTypeAndStatus(
                     flightId,
                     type,
                     Seat.SeatStatus.AVAILABLE);
-            List<SeatDTO> seatDTOs = seats.stream()
-                    .map(SeatDTO::fromEntity)
-                    .collect(Collectors.toList());
             return ApiResponse.success(seatDTOs, "获取" + seatType + "舱可用座位成功");
         } catch (IllegalArgumentException e) {
             return ApiResponse.error("无效的座位类型: " + seatType);
         }
     }
 
+    // 同一时刻对同一航班座位列表的请求只查询一次
+    private List<SeatDTO> loadFlightSeats(Long flightId) {
+        return requestCoalescer.execute("seats.flight", String.valueOf(flightId),
+                () -> seatRepository.findSeatViewsByFlightId(flightId));
+    }
+
+    // 版本之后的座位变化；变化记录已不完整时退化为完整列表
+    private SeatDeltaDTO seatDelta(Long flightId, long since, Supplier<List<SeatDTO>> fullList) {
+        SeatDeltaDTO delta = seatMapService.getChangesSince(flightId, since);
+        if (delta != null && Boolean.TRUE.equals(delta.getFull())) {
+            delta.setSeats(fullList.get());
+        }
+        return delta;
+    }
+
+    // 座位接口的 ETag：航班ID + 座位状态版本（增量请求再带上起始版本）
+    // 版本号由所有实例共享，同一版本在任何实例上都对应同一座位状态；取不到版本号时不返回 ETag
+    private static String seatsEtag(Long flightId, long version, Long since) {
+        return "\"" + flightId + "-" + version + (since != null ? "-" + since : "") + "\"";
+    }
+
     // 获取座位详情
     @GetMapping("/{id}")
     public ApiResponse<SeatDTO> getSeatById(@PathVariable Long id) {
@@ -1,6 +1,7 @@
 package com.seu.airline.controller;
 
 import com.seu.airline.dto.ApiResponse;
+import com.seu.airline.dto.OrderDTO;
 import com.seu.airline.model.Flight;
 import com.seu.airline.model.Order;
 import com.seu.airline.model.OrderItem;
@@ -8,12 +9,16 @@ import com.seu.airline.model.Seat;
 import com.seu.airline.repository.FlightRepository;
 import com.seu.airline.repository.OrderItemRepository;
 import com.seu.airline.repository.OrderRepository;
-import com.seu.airline.repository.SeatRepository;
+import com.seu.airline.service.FlightSearchIndex;
+import com.seu.airline.service.FlightStatusService;
+import com.seu.airline.service.OrderQueryService;
+import com.seu.airline.service.SeatHoldExpiryService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
@@ -32,7 +37,16 @@ public class StaffController {
     private OrderItemRepository orderItemRepository;
 
     @Autowired
-    private SeatRepository seatRepository;
+    private FlightSearchIndex flightSearchIndex;
+
+    @Autowired
+    private SeatHoldExpiryService seatHoldExpiryService;
+
+    @Autowired
+    private OrderQueryService orderQueryService;
+
+    @Autowired
+    private FlightStatusService flightStatusService;
 
     // 获取所有航班
     @GetMapping("/flights")
@@ -58,48 +72,38 @@ public class StaffController {
     public ResponseEntity<?> updateFlightStatus(
             @PathVariable Long id,
             @RequestParam String status) {
-        Optional<Flight> flightOpt = flightRepository.findById(id);
-        if (!flightOpt.isPresent()) {
-            return ResponseEntity.status(404).body(ApiResponse.error("航班不存在"));
-        }
-
+        Flight.FlightStatus newStatus;
         try {
-            Flight flight = flightOpt.get();
-            Flight.FlightStatus newStatus = Flight.FlightStatus.valueOf(status.toUpperCase());
-            flight.setStatus(newStatus);
-            flight.setUpdatedAt(LocalDateTime.now());
-            flightRepository.save(flight);
-
-            return ResponseEntity.ok(ApiResponse.success(flight, "航班状态更新成功"));
+            newStatus = Flight.FlightStatus.valueOf(status.toUpperCase());
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(ApiResponse.error("无效的航班状态: " + status));
         }
+
+        // 状态修改与乘客通知事件在同一事务中写入
+        Flight flight = flightStatusService.updateStatus(id, newStatus);
+        if (flight == null) {
+            return ResponseEntity.status(404).body(ApiResponse.error("航班不存在"));
+        }
+        flightSearchIndex.refreshFlight(flight.getId());
+
+        return ResponseEntity.ok(ApiResponse.success(flight, "航班状态更新成功"));
     }
 
     // 获取航班乘客信息
     @GetMapping("/flights/{id}/passengers")
     public ResponseEntity<?> getFlightPassengers(@PathVariable Long id) {
-        Optional<Flight> flightOpt = flightRepository.findById(id);
-        if (!flightOpt.isPresent()) {
+        // 只检查航班是否存在，不加载航班实体（否则下面抓取的座位会引用其中未初始化的航空公司、机场代理）
+        if (!flightRepository.existsById(id)) {
             return ResponseEntity.status(404).body(ApiResponse.error("航班不存在"));
         }
 
-        // 获取航班的所有座位
-        List<Seat> seats = seatRepository.findByFlightId(id);
-
-        // 获取已被占用的座位的订单信息
-        List<OrderItem> passengers = new java.util.ArrayList<>();
-        for (Seat seat : seats) {
-            if (seat.getStatus() == Seat.SeatStatus.OCCUPIED) {
-                List<OrderItem> items = orderItemRepository.findBySeatId(seat.getId());
-                passengers.addAll(items);
-            }
-        }
+        // 一次查询已被占用座位的订单信息（同时抓取订单、用户、座位和航班）
+        List<OrderItem> passengers = orderItemRepository.findBySeatFlightIdAndSeatStatus(id, Seat.SeatStatus.OCCUPIED);
 
         return ResponseEntity.ok(ApiResponse.success(passengers, "获取航班乘客信息成功"));
     }
 
-    // 查看订单详情（用于核对乘客信息）
+    // 查看订单详情（用于核对乘客信息，返回订单和订单项实体，保持原有响应格式）
     @GetMapping("/orders/{id}")
     public ResponseEntity<?> getOrderDetails(@PathVariable Long id) {
         Optional<Order> orderOpt = orderRepository.findById(id);
@@ -114,6 +118,16 @@ public class StaffController {
         return ResponseEntity.ok(ApiResponse.success(response, "获取订单详情成功"));
     }
 
+    // 查看订单详情 v2（从订单摘要读取，返回 OrderDTO，与乘客端订单详情格式相同）
+    @GetMapping("/v2/orders/{id}")
+    public ResponseEntity<?> getOrderSummary(@PathVariable Long id) {
+        OrderDTO orderDTO = orderQueryService.getOrder(id);
+        if (orderDTO == null) {
+            return ResponseEntity.status(404).body(ApiResponse.error("订单不存在"));
+        }
+        return ResponseEntity.ok(ApiResponse.success(orderDTO, "获取订单详情成功"));
+    }
+
     // 手动取消超时未支付的订单
     @PutMapping("/orders/{id}/cancel-overdue")
     public ResponseEntity<?> cancelOverdueOrder(@PathVariable Long id) {
@@ -127,26 +141,16 @@ public class StaffController {
             return ResponseEntity.badRequest().body(ApiResponse.error("只能取消待支付的订单"));
         }
 
-        // 检查是否超过支付时间（例如30分钟）
-        if (order.getCreatedAt().plusMinutes(30).isAfter(LocalDateTime.now())) {
+        // 检查是否超过座位保留时长
+        if (order.getCreatedAt().plusMinutes(seatHoldExpiryService.getHoldMinutes()).isAfter(LocalDateTime.now())) {
             return ResponseEntity.badRequest().body(ApiResponse.error("订单未超时，不能强制取消"));
         }
 
-        // 更新订单状态
-        order.setStatus(Order.OrderStatus.CANCELLED);
-        order.setUpdatedAt(LocalDateTime.now());
-        orderRepository.save(order);
-
-        // 释放座位
-        List<OrderItem> orderItems = orderItemRepository.findByOrderId(id);
-        for (OrderItem item : orderItems) {
-            Optional<Seat> seatOpt = seatRepository.findById(item.getSeat().getId());
-            if (seatOpt.isPresent()) {
-                Seat seat = seatOpt.get();
-                seat.setStatus(Seat.SeatStatus.AVAILABLE);
-                seatRepository.save(seat);
-            }
+        // 与自动到期共用同一取消逻辑（条件更新取消订单并释放座位），期间已被支付或取消时不会命中
+        if (seatHoldExpiryService.expireOrders(Collections.singletonList(id)) == 0) {
+            return ResponseEntity.badRequest().body(ApiResponse.error("只能取消待支付的订单"));
         }
+        order = orderRepository.findById(id).orElse(order);
 
         return ResponseEntity.ok(ApiResponse.success(order, "超时订单已取消"));
     }
@@ -0,0 +1,19 @@
+package com.seu.airline.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 抢购排队凭证
+ * status: QUEUED 排队中，PROCESSING 下单中，SUCCESS 下单成功（order 为订单），FAILED 下单失败（message 为原因）
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookingTicketDTO {
+    private String ticketId;
+    private String status;
+    private String message;
+    private OrderDTO order;
+}
@@ -0,0 +1,17 @@
+package com.seu.airline.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 低价日历中某一天的最低可售价
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FareCalendarDTO {
+    private String date; // 出发日期 YYYY-MM-DD
+    private Double minPrice; // 当天该航线最低可售价，无余座时为 null
+    private Integer flightCount; // 当天仍有余座的航班数
+}
@@ -0,0 +1,59 @@
+package com.seu.airline.dto;
+
+import com.seu.airline.model.Seat;
+import lombok.Value;
+
+import java.math.BigDecimal;
+
+/**
+ * 航班各舱位余量快照（剩余座位数与最低可售价，不可变）
+ */
+@Value
+public class FlightAvailability {
+
+    public static final FlightAvailability EMPTY = new FlightAvailability(0, 0, 0, null, null, null);
+
+    int economySeats;
+    int businessSeats;
+    int firstClassSeats;
+    BigDecimal economyMinPrice;
+    BigDecimal businessMinPrice;
+    BigDecimal firstClassMinPrice;
+
+    /**
+     * 指定舱位的剩余座位数
+     */
+    public int getAvailable(Seat.SeatType seatType) {
+        switch (seatType) {
+            case ECONOMY:
+                return economySeats;
+            case BUSINESS:
+                return businessSeats;
+            case FIRST:
+                return firstClassSeats;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * 所有舱位中的最低可售价，无可售座位时返回 null
+     */
+    public BigDecimal getMinPrice() {
+        BigDecimal min = economyMinPrice;
+        if (businessMinPrice != null && (min == null || businessMinPrice.compareTo(min) < 0)) {
+            min = businessMinPrice;
+        }
+        if (firstClassMinPrice != null && (min == null || firstClassMinPrice.compareTo(min) < 0)) {
+            min = firstClassMinPrice;
+        }
+        return min;
+    }
+
+    /**
+     * 剩余座位总数
+     */
+    public int getTotalAvailable() {
+        return economySeats + businessSeats + firstClassSeats;
+    }
+}
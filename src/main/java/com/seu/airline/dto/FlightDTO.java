@@ -1,7 +1,6 @@
 package com.seu.airline.dto;
 
 import com.seu.airline.model.Flight;
-import com.seu.airline.model.Seat;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -11,12 +10,13 @@ import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.List;
 
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class FlightDTO {
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
     private String id;
     private String flightNo;
     private String airline;
@@ -35,7 +35,10 @@ public class FlightDTO {
     private String status;
     private String aircraft;
 
-    public FlightDTO(Flight flight) {
+    /**
+     * 从航班实体和余量快照创建 DTO（只访问航空公司和机场，不加载座位）
+     */
+    public FlightDTO(Flight flight, FlightAvailability availability) {
         this.id = flight.getId() != null ? flight.getId().toString() : null;
         this.flightNo = flight.getFlightNumber();
         this.airline = flight.getAirline() != null ? flight.getAirline().getName() : "";
@@ -44,69 +47,59 @@ public class FlightDTO {
         this.departureCity = flight.getDepartureAirport() != null ? flight.getDepartureAirport().getCity() : "";
         this.arrivalCity = flight.getArrivalAirport() != null ? flight.getArrivalAirport().getCity() : "";
 
+        applySchedule(flight.getDepartureTime(), flight.getArrivalTime());
+
+        this.status = flight.getStatus() != null ? flight.getStatus().name().toLowerCase() : "scheduled";
+        this.aircraft = flight.getAircraftType();
+        applyAvailability(availability);
+    }
+
+    /**
+     * 从搜索索引中的航班摘要和余量快照创建 DTO（不访问数据库）
+     */
+    public FlightDTO(FlightSummary summary, FlightAvailability availability) {
+        this.id = summary.getId() != null ? summary.getId().toString() : null;
+        this.flightNo = summary.getFlightNumber();
+        this.airline = summary.getAirlineName();
+        this.departureAirport = summary.getDepartureAirportCode();
+        this.arrivalAirport = summary.getArrivalAirportCode();
+        this.departureCity = summary.getDepartureCity();
+        this.arrivalCity = summary.getArrivalCity();
+
+        applySchedule(summary.getDepartureTime(), summary.getArrivalTime());
+
+        this.status = summary.getStatus() != null ? summary.getStatus().name().toLowerCase() : "scheduled";
+        this.aircraft = summary.getAircraftType();
+        applyAvailability(availability);
+    }
+
+    private void applySchedule(LocalDateTime departure, LocalDateTime arrival) {
         // 格式化时间为带时区偏移的 ISO-8601 字符串，使前端可以直接用 new Date(datetime) 解析
-        if (flight.getDepartureTime() != null) {
+        if (departure != null) {
             // 将 LocalDateTime 视为系统时区的时间点并格式化为带偏移的字符串
-            ZonedDateTime departureZdt = flight.getDepartureTime().atZone(ZoneId.systemDefault());
+            ZonedDateTime departureZdt = departure.atZone(ZoneId.systemDefault());
             this.departureTime = departureZdt.format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
-            this.date = flight.getDepartureTime().format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+            this.date = departure.format(DATE_FORMATTER);
         }
 
-        if (flight.getArrivalTime() != null) {
-            ZonedDateTime arrivalZdt = flight.getArrivalTime().atZone(ZoneId.systemDefault());
+        if (arrival != null) {
+            ZonedDateTime arrivalZdt = arrival.atZone(ZoneId.systemDefault());
             this.arrivalTime = arrivalZdt.format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
         }
 
         // 计算飞行时长
-        if (flight.getDepartureTime() != null && flight.getArrivalTime() != null) {
-            this.duration = calculateDuration(flight.getDepartureTime(), flight.getArrivalTime());
-        }
-
-        this.status = flight.getStatus() != null ? flight.getStatus().name().toLowerCase() : "scheduled";
-        this.aircraft = flight.getAircraftType();
-
-        // 统计座位数量和价格
-        if (flight.getSeats() != null && !flight.getSeats().isEmpty()) {
-            calculateSeatInfo(flight.getSeats());
-        } else {
-            this.economySeats = 0;
-            this.businessSeats = 0;
-            this.firstClassSeats = 0;
-            this.price = 0.0;
+        if (departure != null && arrival != null) {
+            this.duration = calculateDuration(departure, arrival);
         }
     }
 
-    private void calculateSeatInfo(List<Seat> seats) {
-        int economy = 0;
-        int business = 0;
-        int first = 0;
-        BigDecimal minPrice = null;
-
-        for (Seat seat : seats) {
-            // 统计可用座位数
-            if (seat.getStatus() == Seat.SeatStatus.AVAILABLE) {
-                switch (seat.getSeatType()) {
-                    case ECONOMY:
-                        economy++;
-                        break;
-                    case BUSINESS:
-                        business++;
-                        break;
-                    case FIRST:
-                        first++;
-                        break;
-                }
-
-                // 找到最低价格
-                if (minPrice == null || seat.getPrice().compareTo(minPrice) < 0) {
-                    minPrice = seat.getPrice();
-                }
-            }
-        }
-
-        this.economySeats = economy;
-        this.businessSeats = business;
-        this.firstClassSeats = first;
+    // 统计座位数量和价格（来自维护好的余量计数，无需遍历座位）
+    private void applyAvailability(FlightAvailability availability) {
+        FlightAvailability seats = availability != null ? availability : FlightAvailability.EMPTY;
+        this.economySeats = seats.getEconomySeats();
+        this.businessSeats = seats.getBusinessSeats();
+        this.firstClassSeats = seats.getFirstClassSeats();
+        BigDecimal minPrice = seats.getMinPrice();
         this.price = minPrice != null ? minPrice.doubleValue() : 0.0;
     }
 
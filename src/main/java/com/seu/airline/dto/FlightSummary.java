@@ -0,0 +1,27 @@
+package com.seu.airline.dto;
+
+import com.seu.airline.model.Flight;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * 航班搜索索引中的紧凑航班摘要（不可变，更新时整体替换）
+ * 由 FlightRepository 的 JPQL 构造器表达式直接创建，不经过实体
+ */
+@Value
+public class FlightSummary {
+    Long id;
+    String flightNumber;
+    String airlineName;
+    Long departureAirportId;
+    String departureAirportCode;
+    String departureCity;
+    Long arrivalAirportId;
+    String arrivalAirportCode;
+    String arrivalCity;
+    LocalDateTime departureTime;
+    LocalDateTime arrivalTime;
+    String aircraftType;
+    Flight.FlightStatus status;
+}
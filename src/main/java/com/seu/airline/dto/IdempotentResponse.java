@@ -0,0 +1,20 @@
+package com.seu.airline.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 幂等键记录（保存在 Redis 中）
+ * completed 为 false 时第一个请求仍在处理；为 true 时 status 和 body 为第一次的响应状态码和 JSON 响应体
+ * fingerprint 为第一次请求内容的摘要，同一幂等键用于不同请求时拒绝
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdempotentResponse {
+    private boolean completed;
+    private String fingerprint;
+    private int status;
+    private String body;
+}
@@ -0,0 +1,23 @@
+package com.seu.airline.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 行程方案（直飞或中转），由一个或多个航段组成
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ItineraryDTO {
+    private Integer stops; // 中转次数，0 表示直飞
+    private List<String> transferCities; // 中转城市
+    private String departureTime; // 首段起飞时间（ISO-8601，含时区偏移）
+    private String arrivalTime; // 末段到达时间（ISO-8601，含时区偏移）
+    private String totalDuration; // 全程耗时（含中转等待）
+    private Double totalPrice; // 各航段最低可售价之和
+    private List<FlightDTO> segments;
+}
@@ -0,0 +1,21 @@
+package com.seu.airline.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * 创建订单请求DTO
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderCreateRequest {
+    private List<OrderItemRequest> items;
+    private Long flightId; // 自动分配座位时的航班ID（乘客不指定 seatId 时使用）
+    private String seatType; // 自动分配座位时的舱位（ECONOMY/BUSINESS/FIRST）
+    private BigDecimal totalAmount; // 前端计算的总金额（包含额外服务费用等），为空时按座位价格计算
+}
@@ -2,10 +2,14 @@ package com.seu.airline.dto;
 
 import com.seu.airline.model.Order;
 import com.seu.airline.model.OrderItem;
+import com.seu.airline.model.OrderSummary;
+import com.seu.airline.model.Seat;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
@@ -37,42 +41,23 @@ public class OrderDTO {
     private String contactPhone;
     private String contactEmail;
 
-    public OrderDTO(Order order, List<OrderItem> orderItems) {
-        this.id = order.getId() != null ? order.getId().toString() : null;
-        this.orderNumber = order.getOrderNumber();
-        this.userId = order.getUser() != null ? order.getUser().getId() : null;
-        this.totalAmount = order.getTotalAmount() != null ? order.getTotalAmount().doubleValue() : 0.0;
-        this.status = order.getStatus() != null ? order.getStatus().name().toLowerCase() : "pending";
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        this.createTime = order.getCreatedAt() != null ? order.getCreatedAt().format(formatter) : null;
-        this.payTime = order.getPaymentTime() != null ? order.getPaymentTime().format(formatter) : null;
+    public OrderDTO(Order order, List<OrderItem> orderItems) {
+        applyOrder(order.getId(), order.getOrderNumber(), order.getUser() != null ? order.getUser().getId() : null,
+                order.getTotalAmount(), order.getStatus(), order.getCreatedAt(), order.getPaymentTime());
 
         // 从订单项中提取信息
         if (orderItems != null && !orderItems.isEmpty()) {
             OrderItem firstItem = orderItems.get(0);
             if (firstItem.getSeat() != null && firstItem.getSeat().getFlight() != null) {
                 var flight = firstItem.getSeat().getFlight();
-                this.flightId = flight.getId() != null ? flight.getId().toString() : null;
-                this.flightNo = flight.getFlightNumber();
-
-                if (flight.getDepartureAirport() != null) {
-                    this.departureCity = flight.getDepartureAirport().getCity();
-                }
-                if (flight.getArrivalAirport() != null) {
-                    this.arrivalCity = flight.getArrivalAirport().getCity();
-                }
-
-                DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("HH:mm");
-                DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-
-                if (flight.getDepartureTime() != null) {
-                    this.departureTime = flight.getDepartureTime().format(timeFormatter);
-                    this.date = flight.getDepartureTime().format(dateFormatter);
-                }
-                if (flight.getArrivalTime() != null) {
-                    this.arrivalTime = flight.getArrivalTime().format(timeFormatter);
-                }
+                applyFlight(flight.getId(), flight.getFlightNumber(),
+                        flight.getDepartureAirport() != null ? flight.getDepartureAirport().getCity() : null,
+                        flight.getArrivalAirport() != null ? flight.getArrivalAirport().getCity() : null,
+                        flight.getDepartureTime(), flight.getArrivalTime());
             }
 
             // 转换乘客信息
@@ -86,19 +71,67 @@ public class OrderDTO {
                     .collect(Collectors.toList());
 
             // 获取舱位类型（从第一个座位获取）
-            if (firstItem.getSeat() != null && firstItem.getSeat().getSeatType() != null) {
-                this.cabinClass = firstItem.getSeat().getSeatType().name().toLowerCase();
-            }
-
-            // 计算单价（总金额除以乘客数）
-            if (!orderItems.isEmpty()) {
-                this.price = this.totalAmount / orderItems.size();
+            if (firstItem.getSeat() != null) {
+                applyCabin(firstItem.getSeat().getSeatType(), orderItems.size());
             }
         } else {
             this.passengers = new ArrayList<>();
         }
     }
 
+    /**
+     * 从订单摘要创建 DTO（订单列表和详情使用，只读一行摘要）
+     */
+    public OrderDTO(OrderSummary summary) {
+        applyOrder(summary.getOrderId(), summary.getOrderNumber(), summary.getUserId(),
+                summary.getTotalAmount(), summary.getStatus(), summary.getCreatedAt(), summary.getPaymentTime());
+        applyFlight(summary.getFlightId(), summary.getFlightNumber(), summary.getDepartureCity(),
+                summary.getArrivalCity(), summary.getDepartureTime(), summary.getArrivalTime());
+
+        List<OrderSummary.Passenger> summaryPassengers = summary.getPassengers() != null
+                ? summary.getPassengers() : new ArrayList<>();
+        this.passengers = summaryPassengers.stream()
+                .map(passenger -> new PassengerDTO(passenger.getName(), passenger.getIdCard(), null, "adult"))
+                .collect(Collectors.toList());
+        if (!summaryPassengers.isEmpty()) {
+            applyCabin(summary.getSeatType(), summaryPassengers.size());
+        }
+    }
+
+    private void applyOrder(Long id, String orderNumber, Long userId, BigDecimal totalAmount,
+            Order.OrderStatus status, LocalDateTime createdAt, LocalDateTime paymentTime) {
+        this.id = id != null ? id.toString() : null;
+        this.orderNumber = orderNumber;
+        this.userId = userId;
+        this.totalAmount = totalAmount != null ? totalAmount.doubleValue() : 0.0;
+        this.status = status != null ? status.name().toLowerCase() : "pending";
+        this.createTime = createdAt != null ? createdAt.format(DATE_TIME_FORMATTER) : null;
+        this.payTime = paymentTime != null ? paymentTime.format(DATE_TIME_FORMATTER) : null;
+    }
+
+    private void applyFlight(Long flightId, String flightNumber, String departureCity, String arrivalCity,
+            LocalDateTime departureTime, LocalDateTime arrivalTime) {
+        this.flightId = flightId != null ? flightId.toString() : null;
+        this.flightNo = flightNumber;
+        this.departureCity = departureCity;
+        this.arrivalCity = arrivalCity;
+        if (departureTime != null) {
+            this.departureTime = departureTime.format(TIME_FORMATTER);
+            this.date = departureTime.format(DATE_FORMATTER);
+        }
+        if (arrivalTime != null) {
+            this.arrivalTime = arrivalTime.format(TIME_FORMATTER);
+        }
+    }
+
+    // 舱位类型取第一个座位，单价为总金额除以乘客数
+    private void applyCabin(Seat.SeatType seatType, int passengerCount) {
+        if (seatType != null) {
+            this.cabinClass = seatType.name().toLowerCase();
+        }
+        this.price = this.totalAmount / passengerCount;
+    }
+
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
@@ -0,0 +1,17 @@
+package com.seu.airline.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 下单请求中的单个乘客座位
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderItemRequest {
+    private Long seatId; // 为空时由服务端按 flightId/seatType 自动分配相邻座位
+    private String passengerName;
+    private String passengerIdCard;
+}
@@ -0,0 +1,23 @@
+package com.seu.airline.dto;
+
+import com.seu.airline.model.Seat;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * 订单项及其航班信息的只读投影（由 JPQL 构造器表达式直接创建，不经过实体）
+ */
+@Value
+public class OrderItemRow {
+    Long orderId;
+    String passengerName;
+    String passengerIdCard;
+    Seat.SeatType seatType;
+    Long flightId;
+    String flightNumber;
+    String departureCity;
+    String arrivalCity;
+    LocalDateTime departureTime;
+    LocalDateTime arrivalTime;
+}
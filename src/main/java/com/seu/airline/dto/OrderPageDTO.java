@@ -0,0 +1,20 @@
+package com.seu.airline.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 订单分页结果（键集分页）
+ * nextCursor 为下一页的游标，没有更多订单时为 null
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderPageDTO {
+    private List<OrderDTO> orders;
+    private String nextCursor;
+    private Boolean hasMore;
+}
@@ -0,0 +1,21 @@
+package com.seu.airline.dto;
+
+import com.seu.airline.model.Order;
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 订单的只读投影（由 JPQL 构造器表达式直接创建，不经过实体）
+ */
+@Value
+public class OrderRow {
+    Long id;
+    String orderNumber;
+    Long userId;
+    BigDecimal totalAmount;
+    Order.OrderStatus status;
+    LocalDateTime createdAt;
+    LocalDateTime paymentTime;
+}
@@ -2,6 +2,7 @@ package com.seu.airline.dto;
 
 import com.seu.airline.model.Seat;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
 
@@ -9,6 +10,7 @@ import java.math.BigDecimal;
  * 座位数据传输对象
  */
 @Data
+@NoArgsConstructor
 public class SeatDTO {
     private Long id;
     private Long flightId;
@@ -17,6 +19,19 @@ public class SeatDTO {
     private BigDecimal price;
     private String status;
 
+    /**
+     * 供 JPQL 构造器表达式使用的只读投影构造器
+     */
+    public SeatDTO(Long id, Long flightId, String seatNumber, Seat.SeatType seatType, BigDecimal price,
+            Seat.SeatStatus status) {
+        this.id = id;
+        this.flightId = flightId;
+        this.seatNumber = seatNumber;
+        this.seatType = seatType.name();
+        this.price = price;
+        this.status = status.name();
+    }
+
     /**
      * 从 Seat 实体创建 DTO
      */
@@ -0,0 +1,23 @@
+package com.seu.airline.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 座位状态增量
+ * full 为 false 时 seats 只包含 sinceVersion 之后状态发生变化的座位（携带当前状态）；
+ * 请求的版本过旧、变化记录已不完整时 full 为 true，seats 为完整列表
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SeatDeltaDTO {
+    private Long flightId;
+    private Long sinceVersion;
+    private Long version;
+    private Boolean full;
+    private List<SeatDTO> seats;
+}
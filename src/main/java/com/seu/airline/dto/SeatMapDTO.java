@@ -0,0 +1,41 @@
+package com.seu.airline.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * 紧凑座位图
+ * 座位按舱位、行、列的顺序排列（只包含实际存在的座位），第 i 个座位的ID为 seatIds[i]，座位号为行号加列字母。
+ * reserved / occupied 为 Base64 编码的位图，第 i 个座位对应第 i/8 个字节的第 i%8 位（低位在前），
+ * 末尾缺少的字节视为 0；两位均为 0 表示可售。
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SeatMapDTO {
+    private Long flightId;
+    private Long version; // 座位状态版本号（各实例共享），任一座位状态变化时递增；Redis 不可用时为空
+    private Integer seatCount;
+    private List<Cabin> cabins;
+    private long[] seatIds;
+    private String reserved; // 已预留（待支付）座位位图
+    private String occupied; // 已出票座位位图
+
+    /**
+     * 舱位布局
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Cabin {
+        private String seatType;
+        private BigDecimal price; // 舱位最低票价
+        private int[] rows; // 行号（升序，可不连续）
+        private String columns; // 列字母，如 ABCDEF
+        private String layout; // rows × columns 网格中座位是否存在的位图（行优先），网格完整时为 null
+    }
+}
@@ -0,0 +1,37 @@
+package com.seu.airline.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.seu.airline.model.Seat;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+import java.math.BigDecimal;
+
+/**
+ * 座位状态变化记录（用于维护余量计数等派生数据，跨实例转发时序列化为 JSON）
+ */
+@Value
+@AllArgsConstructor(onConstructor_ = @JsonCreator)
+public class SeatTransition {
+    Long seatId;
+    Long flightId;
+    Seat.SeatType seatType;
+    BigDecimal price;
+    Seat.SeatStatus from;
+    Seat.SeatStatus to;
+
+    /**
+     * 以座位当前状态作为目标状态创建记录
+     */
+    public static SeatTransition of(Seat seat, Seat.SeatStatus from) {
+        return new SeatTransition(seat.getId(), seat.getFlight().getId(), seat.getSeatType(), seat.getPrice(),
+                from, seat.getStatus());
+    }
+
+    /**
+     * 创建指定起止状态的记录（批量条件更新后实体状态未刷新时使用）
+     */
+    public static SeatTransition of(Seat seat, Seat.SeatStatus from, Seat.SeatStatus to) {
+        return new SeatTransition(seat.getId(), seat.getFlight().getId(), seat.getSeatType(), seat.getPrice(), from, to);
+    }
+}
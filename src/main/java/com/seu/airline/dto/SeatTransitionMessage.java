@@ -0,0 +1,24 @@
+package com.seu.airline.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 跨实例转发的座位状态变化消息
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SeatTransitionMessage {
+    // 发布消息的实例，收到自己发布的消息时忽略
+    private String origin;
+    private List<SeatTransition> transitions;
+    // 各航班本次变化后的共享座位版本号
+    private Map<Long, Long> versions;
+    // 各航班本次变化在同一事务中取得的余量版本号，用于忽略已包含在重新汇总中的变化
+    private Map<Long, Long> inventoryVersions;
+}
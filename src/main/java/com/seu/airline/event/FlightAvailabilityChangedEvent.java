@@ -0,0 +1,44 @@
+package com.seu.airline.event;
+
+import com.seu.airline.dto.SeatTransition;
+import lombok.Value;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 航班座位余量变化事件
+ * 增量更新时 flightIds 为发生变化的航班，transitions 为对应的座位状态变化（按航班重新汇总时为空）；
+ * 全量对账后 fullReload 为 true，表示所有航班都可能变化。
+ * versions 为各航班本次变化后的共享座位版本号（Redis 不可用、未取得版本号的航班不在其中）；
+ * remote 为 true 表示变化由其他实例提交、经 Redis 转发而来（共享状态已由提交的实例更新）
+ */
+@Value
+public class FlightAvailabilityChangedEvent {
+    Collection<Long> flightIds;
+    List<SeatTransition> transitions;
+    Map<Long, Long> versions;
+    boolean fullReload;
+    boolean remote;
+
+    public static FlightAvailabilityChangedEvent of(Collection<Long> flightIds) {
+        return new FlightAvailabilityChangedEvent(flightIds, Collections.emptyList(), Collections.emptyMap(), false, false);
+    }
+
+    public static FlightAvailabilityChangedEvent of(Collection<Long> flightIds, List<SeatTransition> transitions,
+            Map<Long, Long> versions) {
+        return new FlightAvailabilityChangedEvent(flightIds, transitions, versions, false, false);
+    }
+
+    public static FlightAvailabilityChangedEvent remote(Collection<Long> flightIds, List<SeatTransition> transitions,
+            Map<Long, Long> versions) {
+        return new FlightAvailabilityChangedEvent(flightIds, transitions, versions, false, true);
+    }
+
+    public static FlightAvailabilityChangedEvent fullReload() {
+        return new FlightAvailabilityChangedEvent(Collections.emptySet(), Collections.emptyList(), Collections.emptyMap(),
+                true, false);
+    }
+}
@@ -0,0 +1,15 @@
+package com.seu.airline.event;
+
+import com.seu.airline.dto.FlightSummary;
+import lombok.Value;
+
+/**
+ * 航班信息（状态、时刻等）在搜索索引中刷新后的事件
+ * previous 为刷新前的摘要，current 为刷新后的摘要，航班不在索引中时为 null
+ */
+@Value
+public class FlightUpdatedEvent {
+    Long flightId;
+    FlightSummary previous;
+    FlightSummary current;
+}
@@ -0,0 +1,23 @@
+package com.seu.airline.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+
+// 航班余量版本号（每个航班一行）
+// 座位状态变化在同一事务中递增，版本号顺序与提交顺序一致；与座位汇总在同一快照中读取时，
+// 不超过该版本号的变化都已包含在汇总中
+@Entity
+@Table(name = "flight_inventory_versions")
+@Data
+@NoArgsConstructor
+public class FlightInventoryVersion {
+
+    @Id
+    @Column(name = "flight_id")
+    private Long flightId;
+
+    @Column(name = "version", nullable = false)
+    private Long version;
+}
@@ -18,8 +18,11 @@ import java.time.LocalDateTime;
 @EntityListeners(AuditingEntityListener.class)
 public class Message {
     
+    // 主键按号段从 id_generators 表分配（每次取 50 个），插入可以按 JDBC 批次发送
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "messages_id")
+    @TableGenerator(name = "messages_id", table = "id_generators", pkColumnName = "entity_name",
+            valueColumnName = "next_val", pkColumnValue = "messages", allocationSize = 50)
     private Long id;
     
     @Column(name = "user_id", nullable = false)
@@ -55,7 +55,19 @@ public class Order {
     private List<OrderItem> orderItems;
 
     // 订单状态枚举
+    // 允许的状态转换：PENDING -> PAID / CANCELLED，PAID -> REFUNDED；CANCELLED、REFUNDED 为终态
     public enum OrderStatus {
-        PENDING, PAID, CANCELLED, REFUNDED
+        PENDING, PAID, CANCELLED, REFUNDED;
+
+        public boolean canTransitionTo(OrderStatus target) {
+            switch (this) {
+                case PENDING:
+                    return target == PAID || target == CANCELLED;
+                case PAID:
+                    return target == REFUNDED;
+                default:
+                    return false;
+            }
+        }
     }
 }
\ No newline at end of file
@@ -15,8 +15,11 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 public class OrderItem {
 
+    // 主键按号段从 id_generators 表分配（每次取 50 个），插入可以按 JDBC 批次发送
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "order_items_id")
+    @TableGenerator(name = "order_items_id", table = "id_generators", pkColumnName = "entity_name",
+            valueColumnName = "next_val", pkColumnValue = "order_items", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -0,0 +1,81 @@
+package com.seu.airline.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// 订单摘要（订单列表和详情的反规范化读模型，每个订单一行）
+// 下单时与订单在同一事务中写入，订单状态变化和航班信息变化时同步更新
+@Entity
+@Table(name = "order_summaries")
+@Data
+@NoArgsConstructor
+public class OrderSummary {
+
+    @Id
+    @Column(name = "order_id")
+    private Long orderId;
+
+    @Column(name = "order_number", nullable = false, length = 50)
+    private String orderNumber;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private Order.OrderStatus status;
+
+    @Column(name = "total_amount", nullable = false, precision = 10, scale = 2)
+    private BigDecimal totalAmount;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "payment_time")
+    private LocalDateTime paymentTime;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @Column(name = "flight_id")
+    private Long flightId;
+
+    @Column(name = "flight_number", length = 20)
+    private String flightNumber;
+
+    @Column(name = "departure_city", length = 50)
+    private String departureCity;
+
+    @Column(name = "arrival_city", length = 50)
+    private String arrivalCity;
+
+    @Column(name = "departure_time")
+    private LocalDateTime departureTime;
+
+    @Column(name = "arrival_time")
+    private LocalDateTime arrivalTime;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "seat_type", length = 20)
+    private Seat.SeatType seatType;
+
+    // 乘客列表（JSON）
+    @Convert(converter = PassengerListConverter.class)
+    @Column(name = "passengers", nullable = false, columnDefinition = "TEXT")
+    private List<Passenger> passengers;
+
+    // 订单中的乘客
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Passenger {
+        private String name;
+        private String idCard;
+    }
+}
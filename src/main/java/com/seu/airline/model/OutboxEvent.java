@@ -0,0 +1,64 @@
+package com.seu.airline.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+// 事务发件箱事件：与订单、航班状态变化在同一事务中写入，由 OutboxService 在后台分发
+// 主键自增，分发时按主键顺序处理（同一订单的事件按产生顺序分发）
+@Entity
+@Table(name = "outbox_events")
+@Data
+@NoArgsConstructor
+public class OutboxEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // 聚合类型：ORDER / FLIGHT
+    @Column(name = "aggregate_type", nullable = false, length = 20)
+    private String aggregateType;
+
+    @Column(name = "aggregate_id", nullable = false)
+    private Long aggregateId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "event_type", nullable = false, length = 40)
+    private EventType eventType;
+
+    // 事件内容（JSON）
+    @Column(name = "payload", columnDefinition = "TEXT")
+    private String payload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private Status status = Status.PENDING;
+
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts = 0;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "dispatched_at")
+    private LocalDateTime dispatchedAt;
+
+    // 事件类型
+    public enum EventType {
+        ORDER_CREATED, ORDER_PAID, ORDER_CANCELLED, ORDER_EXPIRED, FLIGHT_STATUS_CHANGED
+    }
+
+    // 分发状态：待分发、已分发、多次失败后放弃（需人工处理）
+    public enum Status {
+        PENDING, DISPATCHED, FAILED
+    }
+}
@@ -0,0 +1,41 @@
+package com.seu.airline.model;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+import java.util.ArrayList;
+import java.util.List;
+
+// 订单摘要中的乘客列表与 JSON 文本互转
+@Converter
+public class PassengerListConverter implements AttributeConverter<List<OrderSummary.Passenger>, String> {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final TypeReference<List<OrderSummary.Passenger>> TYPE = new TypeReference<List<OrderSummary.Passenger>>() {
+    };
+
+    @Override
+    public String convertToDatabaseColumn(List<OrderSummary.Passenger> passengers) {
+        try {
+            return MAPPER.writeValueAsString(passengers != null ? passengers : new ArrayList<>());
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("乘客信息序列化失败", e);
+        }
+    }
+
+    @Override
+    public List<OrderSummary.Passenger> convertToEntityAttribute(String json) {
+        if (json == null || json.isEmpty()) {
+            return new ArrayList<>();
+        }
+        try {
+            return MAPPER.readValue(json, TYPE);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("乘客信息解析失败", e);
+        }
+    }
+}
@@ -16,8 +16,11 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 public class Seat {
 
+    // 主键按号段从 id_generators 表分配（每次取 50 个），插入可以按 JDBC 批次发送
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "seats_id")
+    @TableGenerator(name = "seats_id", table = "id_generators", pkColumnName = "entity_name",
+            valueColumnName = "next_val", pkColumnValue = "seats", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -0,0 +1,30 @@
+package com.seu.airline.repository;
+
+import com.seu.airline.model.FlightInventoryVersion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface FlightInventoryVersionRepository extends JpaRepository<FlightInventoryVersion, Long> {
+
+    // 递增航班的余量版本号（首次变化时插入），行锁保持到事务结束，同一航班的版本号按提交顺序递增
+    @Modifying
+    @Query(value = "INSERT INTO flight_inventory_versions (flight_id, version) VALUES (:flightId, 1) " +
+                   "ON DUPLICATE KEY UPDATE version = version + 1", nativeQuery = true)
+    int increment(@Param("flightId") Long flightId);
+
+    // 查询指定航班的余量版本号
+    List<FlightInventoryVersion> findByFlightIdIn(Collection<Long> flightIds);
+
+    // 查询未起飞航班的余量版本号（与 SeatRepository.summarizeAvailableFares 范围一致）
+    @Query("SELECT v FROM FlightInventoryVersion v, Flight f " +
+           "WHERE f.id = v.flightId AND f.departureTime >= :from")
+    List<FlightInventoryVersion> findDepartingFrom(@Param("from") LocalDateTime from);
+}
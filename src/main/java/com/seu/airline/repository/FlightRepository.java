@@ -1,10 +1,13 @@
 package com.seu.airline.repository;
 
+import com.seu.airline.dto.FlightSummary;
 import com.seu.airline.model.Flight;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -13,6 +16,11 @@ import java.util.Optional;
 @Repository
 public interface FlightRepository extends JpaRepository<Flight, Long> {
 
+    // 航班摘要投影的公共部分（航空公司可能为空，使用左连接）
+    String SUMMARY_SELECT = "SELECT new com.seu.airline.dto.FlightSummary(f.id, f.flightNumber, COALESCE(al.name, ''), " +
+            "da.id, da.code, da.city, aa.id, aa.code, aa.city, f.departureTime, f.arrivalTime, f.aircraftType, f.status) " +
+            "FROM Flight f LEFT JOIN f.airline al JOIN f.departureAirport da JOIN f.arrivalAirport aa ";
+
     // 根据航班号查找
     Optional<Flight> findByFlightNumber(String flightNumber);
 
@@ -23,7 +31,8 @@ public interface FlightRepository extends JpaRepository<Flight, Long> {
             @Param("startDate") LocalDateTime startDate,
             @Param("endDate") LocalDateTime endDate);
 
-    // 根据城市查询航班
+    // 根据城市查询航班（同时抓取航空公司和起降机场）
+    @EntityGraph(attributePaths = {"airline", "departureAirport", "arrivalAirport"})
     @Query("SELECT f FROM Flight f WHERE f.departureAirport.city = :departureCity AND f.arrivalAirport.city = :arrivalCity AND f.departureTime BETWEEN :startDate AND :endDate AND f.status <> 'CANCELLED'")
     List<Flight> findFlightsByCity(@Param("departureCity") String departureCity,
             @Param("arrivalCity") String arrivalCity,
@@ -31,12 +40,43 @@ public interface FlightRepository extends JpaRepository<Flight, Long> {
             @Param("endDate") LocalDateTime endDate);
 
     // 根据航空公司查询航班
+    @EntityGraph(attributePaths = {"airline", "departureAirport", "arrivalAirport"})
     List<Flight> findByAirlineId(Long airlineId);
 
     // 查询特定状态的航班
+    @EntityGraph(attributePaths = {"airline", "departureAirport", "arrivalAirport"})
     List<Flight> findByStatus(Flight.FlightStatus status);
 
     // 查询即将起飞的航班（未来24小时内）
+    @EntityGraph(attributePaths = {"airline", "departureAirport", "arrivalAirport"})
     @Query("SELECT f FROM Flight f WHERE f.departureTime BETWEEN :now AND :tomorrow AND f.status = 'SCHEDULED'")
     List<Flight> findUpcomingFlights(@Param("now") LocalDateTime now, @Param("tomorrow") LocalDateTime tomorrow);
+
+    // 查询所有航班（同时抓取航空公司和起降机场，座位按批次加载）
+    @Override
+    @EntityGraph(attributePaths = {"airline", "departureAirport", "arrivalAirport"})
+    List<Flight> findAll();
+
+    // 按ID查询航班详情（同时抓取航空公司和起降机场）
+    @EntityGraph(attributePaths = {"airline", "departureAirport", "arrivalAirport"})
+    Optional<Flight> findWithRouteById(Long id);
+
+    // 按城市查询航班摘要的只读投影（不创建实体，搜索接口在索引未就绪时使用）
+    @Transactional(readOnly = true)
+    @Query(SUMMARY_SELECT + "WHERE da.city = :departureCity AND aa.city = :arrivalCity " +
+           "AND f.departureTime BETWEEN :startDate AND :endDate AND f.status <> 'CANCELLED' ORDER BY f.departureTime")
+    List<FlightSummary> findSummariesByCity(@Param("departureCity") String departureCity,
+            @Param("arrivalCity") String arrivalCity,
+            @Param("startDate") LocalDateTime startDate,
+            @Param("endDate") LocalDateTime endDate);
+
+    // 加载搜索索引所需的航班摘要（只读投影）
+    @Transactional(readOnly = true)
+    @Query(SUMMARY_SELECT + "WHERE f.departureTime >= :from")
+    List<FlightSummary> findSummariesFrom(@Param("from") LocalDateTime from);
+
+    // 按ID加载单个航班摘要用于刷新搜索索引
+    @Transactional(readOnly = true)
+    @Query(SUMMARY_SELECT + "WHERE f.id = :id")
+    Optional<FlightSummary> findSummaryById(@Param("id") Long id);
 }
\ No newline at end of file
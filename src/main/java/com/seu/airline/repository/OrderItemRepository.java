@@ -1,17 +1,40 @@
 package com.seu.airline.repository;
 
+import com.seu.airline.dto.OrderItemRow;
 import com.seu.airline.model.OrderItem;
+import com.seu.airline.model.Seat;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
 
-    // 根据订单ID查找订单详情
+    // 根据订单ID查找订单详情（同时抓取座位、航班和起降机场，供 OrderDTO 使用）
+    @EntityGraph(attributePaths = {"seat", "seat.flight", "seat.flight.departureAirport", "seat.flight.arrivalAirport"})
     List<OrderItem> findByOrderId(Long orderId);
 
+    // 批量查询多个订单的订单项及航班信息的只读投影（订单列表一次查询，不创建实体）
+    @Query("SELECT new com.seu.airline.dto.OrderItemRow(oi.order.id, oi.passengerName, oi.passengerIdCard, s.seatType, " +
+           "f.id, f.flightNumber, da.city, aa.city, f.departureTime, f.arrivalTime) " +
+           "FROM OrderItem oi JOIN oi.seat s JOIN s.flight f LEFT JOIN f.departureAirport da LEFT JOIN f.arrivalAirport aa " +
+           "WHERE oi.order.id IN :orderIds ORDER BY oi.id")
+    List<OrderItemRow> findRowsByOrderIdIn(@Param("orderIds") Collection<Long> orderIds);
+
+    // 查询订单涉及的航班（订票协调器按航班加锁）
+    @Query("SELECT DISTINCT oi.seat.flight.id FROM OrderItem oi WHERE oi.order.id = :orderId")
+    List<Long> findFlightIdsByOrderId(@Param("orderId") Long orderId);
+
     // 根据座位ID查找订单详情
     List<OrderItem> findBySeatId(Long seatId);
-}
\ No newline at end of file
+
+    // 查找航班上指定座位状态的订单详情（同时抓取订单、下单用户、座位和航班，供乘客名单使用，序列化时不再触发懒加载）
+    @EntityGraph(attributePaths = {"order", "order.user", "seat", "seat.flight", "seat.flight.airline",
+            "seat.flight.departureAirport", "seat.flight.arrivalAirport"})
+    List<OrderItem> findBySeatFlightIdAndSeatStatus(Long flightId, Seat.SeatStatus status);
+}
@@ -1,10 +1,18 @@
 package com.seu.airline.repository;
 
+import com.seu.airline.dto.OrderRow;
 import com.seu.airline.model.Order;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -14,15 +22,70 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     // 根据订单号查找
     Optional<Order> findByOrderNumber(String orderNumber);
 
-    // 根据用户ID查找订单
+    // 根据用户ID查找订单（同时抓取用户）
+    @EntityGraph(attributePaths = {"user"})
     List<Order> findByUserId(Long userId);
 
     // 根据用户ID和订单状态查找
     List<Order> findByUserIdAndStatus(Long userId, Order.OrderStatus status);
 
-    // 查询特定状态的订单
+    // 查询特定状态的订单（同时抓取用户）
+    @EntityGraph(attributePaths = {"user"})
     List<Order> findByStatus(Order.OrderStatus status);
 
-    // 查询指定时间段内的订单
+    // 查询指定时间段内的订单（同时抓取用户）
+    @EntityGraph(attributePaths = {"user"})
     List<Order> findByCreatedAtBetween(LocalDateTime start, LocalDateTime end);
-}
\ No newline at end of file
+
+    // 查询所有订单（同时抓取用户，订单项按批次加载）
+    @Override
+    @EntityGraph(attributePaths = {"user"})
+    List<Order> findAll();
+
+    // 查询指定订单的只读投影（不创建实体，补建订单摘要使用）
+    @Query("SELECT new com.seu.airline.dto.OrderRow(o.id, o.orderNumber, o.user.id, o.totalAmount, o.status, " +
+           "o.createdAt, o.paymentTime) FROM Order o WHERE o.id IN :ids ORDER BY o.id")
+    List<OrderRow> findRowsByIdIn(@Param("ids") Collection<Long> ids);
+
+    // 查询所有待支付订单的创建时间（启动时重建座位保留到期队列）
+    @Query("SELECT o.id AS id, o.createdAt AS createdAt FROM Order o WHERE o.status = 'PENDING'")
+    List<PendingHoldView> findPendingHolds();
+
+    // 订单状态转换：只有仍处于 from 状态的订单会被更新，返回实际更新的行数（0 表示已被其他请求处理）
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Order o SET o.status = :to, o.updatedAt = :now WHERE o.id = :id AND o.status = :from")
+    int transition(@Param("id") Long id, @Param("from") Order.OrderStatus from, @Param("to") Order.OrderStatus to,
+                   @Param("now") LocalDateTime now);
+
+    // 查询指定订单中已超时且仍为待支付的订单ID（超时批量取消的候选订单）
+    @Query("SELECT o.id FROM Order o WHERE o.id IN :ids AND o.status = 'PENDING' AND o.createdAt <= :createdBefore")
+    List<Long> findExpiredPendingIds(@Param("ids") Collection<Long> ids,
+                                     @Param("createdBefore") LocalDateTime createdBefore);
+
+    // 按ID顺序查询ID大于 afterId、已超时且仍为待支付的订单ID（兜底扫描，使用 status 索引）
+    @Query("SELECT o.id FROM Order o WHERE o.status = 'PENDING' AND o.createdAt <= :createdBefore AND o.id > :afterId " +
+           "ORDER BY o.id")
+    List<Long> findExpiredPendingIdsAfter(@Param("createdBefore") LocalDateTime createdBefore,
+                                          @Param("afterId") Long afterId, Pageable pageable);
+
+    // 批量取消超时的待支付订单：只有仍为待支付且创建时间不晚于 createdBefore 的订单会被取消
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Order o SET o.status = 'CANCELLED', o.updatedAt = :now " +
+           "WHERE o.id IN :ids AND o.status = 'PENDING' AND o.createdAt <= :createdBefore")
+    int expirePending(@Param("ids") Collection<Long> ids, @Param("createdBefore") LocalDateTime createdBefore,
+                      @Param("now") LocalDateTime now);
+
+    // 支付仍为待支付且未超时（创建时间晚于 holdStart）的订单；与超时取消以同一时刻为界，互斥
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Order o SET o.status = 'PAID', o.paymentTime = :now, o.updatedAt = :now, " +
+           "o.paymentMethod = COALESCE(:paymentMethod, o.paymentMethod) WHERE o.id = :id AND o.status = 'PENDING' " +
+           "AND (o.createdAt IS NULL OR o.createdAt > :holdStart)")
+    int payPending(@Param("id") Long id, @Param("paymentMethod") String paymentMethod,
+                   @Param("holdStart") LocalDateTime holdStart, @Param("now") LocalDateTime now);
+
+    interface PendingHoldView {
+        Long getId();
+
+        LocalDateTime getCreatedAt();
+    }
+}
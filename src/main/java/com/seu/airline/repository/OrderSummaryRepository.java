@@ -0,0 +1,90 @@
+package com.seu.airline.repository;
+
+import com.seu.airline.model.Order;
+import com.seu.airline.model.OrderSummary;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OrderSummaryRepository extends JpaRepository<OrderSummary, Long> {
+
+    // 查询用户的所有订单摘要
+    List<OrderSummary> findByUserIdOrderByOrderIdAsc(Long userId);
+
+    // 按创建时间倒序查询用户订单摘要的第一页（键集分页，使用 user_id, created_at 索引）
+    @Query("SELECT s FROM OrderSummary s WHERE s.userId = :userId ORDER BY s.createdAt DESC, s.orderId DESC")
+    List<OrderSummary> findPageByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    // 查询游标（上一页最后一个订单的创建时间和ID）之后的一页
+    @Query("SELECT s FROM OrderSummary s WHERE s.userId = :userId " +
+           "AND (s.createdAt < :createdAt OR (s.createdAt = :createdAt AND s.orderId < :orderId)) " +
+           "ORDER BY s.createdAt DESC, s.orderId DESC")
+    List<OrderSummary> findPageByUserIdBefore(@Param("userId") Long userId, @Param("createdAt") LocalDateTime createdAt,
+                                              @Param("orderId") Long orderId, Pageable pageable);
+
+    // 查询所有订单摘要（管理员）
+    List<OrderSummary> findAllByOrderByOrderIdAsc();
+
+    // 查询特定状态的订单摘要
+    List<OrderSummary> findByStatusOrderByOrderIdAsc(Order.OrderStatus status);
+
+    // 查询指定时间段内的订单摘要
+    List<OrderSummary> findByCreatedAtBetweenOrderByOrderIdAsc(LocalDateTime start, LocalDateTime end);
+
+    // 查询航班上指定状态的订单摘要（航班状态变化时通知乘客）
+    List<OrderSummary> findByFlightIdAndStatusIn(Long flightId, Collection<Order.OrderStatus> statuses);
+
+    // 查询还没有摘要的订单（启动时和定期补建）
+    @Query("SELECT o.id FROM Order o WHERE NOT EXISTS (SELECT s.orderId FROM OrderSummary s WHERE s.orderId = o.id) " +
+           "ORDER BY o.id")
+    List<Long> findOrderIdsWithoutSummary(Pageable pageable);
+
+    // 查询指定订单中还没有摘要的订单（查询单个订单时补写）
+    @Query("SELECT o.id FROM Order o WHERE o.id IN :ids " +
+           "AND NOT EXISTS (SELECT s.orderId FROM OrderSummary s WHERE s.orderId = o.id) ORDER BY o.id")
+    List<Long> findOrderIdsWithoutSummaryIn(@Param("ids") Collection<Long> ids, Pageable pageable);
+
+    // 查询用户还没有摘要的订单（补建完成前查询用户订单时补写）
+    @Query("SELECT o.id FROM Order o WHERE o.user.id = :userId " +
+           "AND NOT EXISTS (SELECT s.orderId FROM OrderSummary s WHERE s.orderId = o.id) ORDER BY o.id")
+    List<Long> findOrderIdsWithoutSummaryByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    // 查询特定状态还没有摘要的订单（补建完成前按状态查询时补写）
+    @Query("SELECT o.id FROM Order o WHERE o.status = :status " +
+           "AND NOT EXISTS (SELECT s.orderId FROM OrderSummary s WHERE s.orderId = o.id) ORDER BY o.id")
+    List<Long> findOrderIdsWithoutSummaryByStatus(@Param("status") Order.OrderStatus status, Pageable pageable);
+
+    // 查询指定时间段内创建、还没有摘要的订单（补建完成前按时间段查询时补写）
+    @Query("SELECT o.id FROM Order o WHERE o.createdAt BETWEEN :start AND :end " +
+           "AND NOT EXISTS (SELECT s.orderId FROM OrderSummary s WHERE s.orderId = o.id) ORDER BY o.id")
+    List<Long> findOrderIdsWithoutSummaryCreatedBetween(@Param("start") LocalDateTime start,
+                                                        @Param("end") LocalDateTime end, Pageable pageable);
+
+    // 同步订单状态
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE OrderSummary s SET s.status = :status, s.updatedAt = :now WHERE s.orderId IN :orderIds")
+    int updateStatus(@Param("orderIds") Collection<Long> orderIds, @Param("status") Order.OrderStatus status,
+                     @Param("now") LocalDateTime now);
+
+    // 同步支付状态和支付时间
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE OrderSummary s SET s.status = 'PAID', s.paymentTime = :now, s.updatedAt = :now WHERE s.orderId = :orderId")
+    int markPaid(@Param("orderId") Long orderId, @Param("now") LocalDateTime now);
+
+    // 同步航班号、起降城市和时刻（航班信息修改后）
+    @Modifying
+    @Query("UPDATE OrderSummary s SET s.flightNumber = :flightNumber, s.departureCity = :departureCity, " +
+           "s.arrivalCity = :arrivalCity, s.departureTime = :departureTime, s.arrivalTime = :arrivalTime " +
+           "WHERE s.flightId = :flightId")
+    int updateFlight(@Param("flightId") Long flightId, @Param("flightNumber") String flightNumber,
+                     @Param("departureCity") String departureCity, @Param("arrivalCity") String arrivalCity,
+                     @Param("departureTime") LocalDateTime departureTime, @Param("arrivalTime") LocalDateTime arrivalTime);
+}
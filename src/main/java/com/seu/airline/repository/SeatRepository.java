@@ -1,9 +1,21 @@
 package com.seu.airline.repository;
 
+import com.seu.airline.dto.SeatDTO;
 import com.seu.airline.model.Seat;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.LockModeType;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -24,4 +36,83 @@ public interface SeatRepository extends JpaRepository<Seat, Long> {
 
     // 查找航班特定类型的可用座位
     List<Seat> findByFlightIdAndSeatTypeAndStatus(Long flightId, Seat.SeatType seatType, Seat.SeatStatus status);
+
+    // 批量查询座位（同时抓取航班和起降机场）
+    @EntityGraph(attributePaths = {"flight", "flight.departureAirport", "flight.arrivalAirport"})
+    List<Seat> findByIdIn(Collection<Long> ids);
+
+    // 查询座位所属的航班（订票协调器按航班加锁）
+    @Query("SELECT DISTINCT s.flight.id FROM Seat s WHERE s.id IN :ids")
+    List<Long> findFlightIdsByIdIn(@Param("ids") Collection<Long> ids);
+
+    // 按主键顺序锁定座位行（自动分配座位时核对内存座位图选出的座位是否仍可售）
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM Seat s WHERE s.id IN :ids ORDER BY s.id")
+    List<Seat> lockByIdIn(@Param("ids") Collection<Long> ids);
+
+    // 原子占座：只有仍为 AVAILABLE 的座位会被置为 RESERVED，返回实际占到的座位数
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Seat s SET s.status = 'RESERVED', s.updatedAt = :now WHERE s.id IN :ids AND s.status = 'AVAILABLE'")
+    int reserveAvailableSeats(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+
+    // 查询指定订单中仍为 RESERVED 的座位（用于批量释放）
+    @Query("SELECT s FROM OrderItem oi JOIN oi.seat s WHERE oi.order.id IN :orderIds AND s.status = 'RESERVED'")
+    List<Seat> findReservedByOrderIds(@Param("orderIds") Collection<Long> orderIds);
+
+    // 批量释放仍为 RESERVED 的座位，返回实际释放的座位数
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Seat s SET s.status = 'AVAILABLE', s.updatedAt = :now WHERE s.id IN :ids AND s.status = 'RESERVED'")
+    int releaseReservedSeats(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+
+    // 批量将 RESERVED 座位置为 OCCUPIED（订单支付），返回实际更新的座位数
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Seat s SET s.status = 'OCCUPIED', s.updatedAt = :now WHERE s.id IN :ids AND s.status = 'RESERVED'")
+    int occupyReservedSeats(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+
+    // 座位图只读投影的公共部分
+    String SEAT_VIEW_SELECT = "SELECT new com.seu.airline.dto.SeatDTO(s.id, s.flight.id, s.seatNumber, s.seatType, s.price, s.status) " +
+            "FROM Seat s ";
+
+    // 查询航班所有座位的只读投影（不创建实体）
+    @Transactional(readOnly = true)
+    @Query(SEAT_VIEW_SELECT + "WHERE s.flight.id = :flightId ORDER BY s.id")
+    List<SeatDTO> findSeatViewsByFlightId(@Param("flightId") Long flightId);
+
+    // 查询航班指定状态座位的只读投影
+    @Transactional(readOnly = true)
+    @Query(SEAT_VIEW_SELECT + "WHERE s.flight.id = :flightId AND s.status = :status ORDER BY s.id")
+    List<SeatDTO> findSeatViewsByFlightIdAndStatus(@Param("flightId") Long flightId,
+            @Param("status") Seat.SeatStatus status);
+
+    // 查询航班指定舱位、指定状态座位的只读投影
+    @Transactional(readOnly = true)
+    @Query(SEAT_VIEW_SELECT + "WHERE s.flight.id = :flightId AND s.seatType = :seatType AND s.status = :status ORDER BY s.id")
+    List<SeatDTO> findSeatViewsByFlightIdAndSeatTypeAndStatus(@Param("flightId") Long flightId,
+            @Param("seatType") Seat.SeatType seatType,
+            @Param("status") Seat.SeatStatus status);
+
+    // 按航班、舱位和票价汇总可用座位数（用于初始化余量计数）
+    @Query("SELECT s.flight.id AS flightId, s.seatType AS seatType, s.price AS price, COUNT(s) AS available " +
+           "FROM Seat s WHERE s.status = 'AVAILABLE' AND s.flight.departureTime >= :from " +
+           "GROUP BY s.flight.id, s.seatType, s.price")
+    List<FareBucketView> summarizeAvailableFares(@Param("from") LocalDateTime from);
+
+    // 按航班、舱位和票价汇总指定航班的可用座位数
+    @Query("SELECT s.flight.id AS flightId, s.seatType AS seatType, s.price AS price, COUNT(s) AS available " +
+           "FROM Seat s WHERE s.status = 'AVAILABLE' AND s.flight.id IN :flightIds " +
+           "GROUP BY s.flight.id, s.seatType, s.price")
+    List<FareBucketView> summarizeAvailableFaresByFlightIds(@Param("flightIds") Collection<Long> flightIds);
+
+    /**
+     * 可用座位票价分组投影
+     */
+    interface FareBucketView {
+        Long getFlightId();
+
+        Seat.SeatType getSeatType();
+
+        BigDecimal getPrice();
+
+        Long getAvailable();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,146 @@
+package com.seu.airline.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * 订票协调器
+ * 按航班ID分段加锁，串行化同一航班的库存修改（下单、取消、支付），不同航班互不阻塞。
+ * 涉及多个航班时按分段序号升序加锁，避免死锁；锁需要在事务之外获取，保证事务提交后才释放。
+ * 记录加锁等待时间、持有时间和每个航班的排队深度，等待过久时输出告警日志，便于发现热点航班。
+ */
+@Service
+@Slf4j
+public class BookingCoordinator {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${airline.booking.lock-stripes:256}")
+    private int stripeCount;
+
+    @Value("${airline.booking.lock-timeout-ms:5000}")
+    private long lockTimeoutMs;
+
+    @Value("${airline.booking.lock-wait-warn-ms:200}")
+    private long waitWarnMs;
+
+    private ReentrantLock[] locks;
+
+    // 每个航班正在等待或持有锁的请求数
+    private final Map<Long, AtomicInteger> queueDepths = new ConcurrentHashMap<>();
+
+    private DistributionSummary queueDepthSummary;
+
+    @PostConstruct
+    public void init() {
+        locks = new ReentrantLock[Math.max(1, stripeCount)];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        queueDepthSummary = DistributionSummary.builder("booking.lock.queue.depth")
+                .description("请求到达时同一航班已在排队或执行的请求数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 在指定航班的锁内执行库存修改
+     * @param operation 操作名称（用于指标标签，如 order.create）
+     * @param flightIdList 涉及的航班ID
+     * @param action 库存修改操作（应自带事务）
+     */
+    public <T> T execute(String operation, Collection<Long> flightIdList, Supplier<T> action) {
+        Set<Long> flightIds = new TreeSet<>(flightIdList);
+        TreeSet<Integer> stripes = new TreeSet<>();
+        for (Long flightId : flightIds) {
+            stripes.add(stripeOf(flightId));
+        }
+        int depth = 0;
+        for (Long flightId : flightIds) {
+            // 计数的增减都在 compute 中完成，避免与归零移除并发时计到已移除的计数器上
+            AtomicInteger count = queueDepths.compute(flightId, (id, current) -> {
+                AtomicInteger value = current != null ? current : new AtomicInteger();
+                value.incrementAndGet();
+                return value;
+            });
+            depth = Math.max(depth, count.get() - 1);
+        }
+        queueDepthSummary.record(depth);
+
+        List<ReentrantLock> acquired = new ArrayList<>(stripes.size());
+        long start = System.nanoTime();
+        try {
+            for (int stripe : stripes) {
+                long remaining = lockTimeoutMs - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                if (remaining <= 0 || !locks[stripe].tryLock(remaining, TimeUnit.MILLISECONDS)) {
+                    log.warn("航班 {} 的{}操作等待锁超时（{} ms），当前排队 {}", flightIds, operation, lockTimeoutMs, depth);
+                    throw new RuntimeException("当前航班订票人数过多，请稍后重试");
+                }
+                acquired.add(locks[stripe]);
+            }
+            long waitNanos = System.nanoTime() - start;
+            timer("booking.lock.wait", "等待航班锁的时间", operation).record(waitNanos, TimeUnit.NANOSECONDS);
+            if (TimeUnit.NANOSECONDS.toMillis(waitNanos) > waitWarnMs) {
+                log.warn("航班 {} 的{}操作等待锁 {} ms，到达时排队 {}", flightIds, operation,
+                        TimeUnit.NANOSECONDS.toMillis(waitNanos), depth);
+            }
+
+            long holdStart = System.nanoTime();
+            try {
+                return action.get();
+            } finally {
+                timer("booking.lock.hold", "持有航班锁的时间", operation)
+                        .record(System.nanoTime() - holdStart, TimeUnit.NANOSECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("订票请求被中断");
+        } finally {
+            for (int i = acquired.size() - 1; i >= 0; i--) {
+                acquired.get(i).unlock();
+            }
+            for (Long flightId : flightIds) {
+                queueDepths.computeIfPresent(flightId, (id, count) -> count.decrementAndGet() > 0 ? count : null);
+            }
+        }
+    }
+
+    /**
+     * 当前排队最多的航班（航班ID -> 排队或执行中的请求数），按排队数降序
+     */
+    public Map<Long, Integer> getHotFlights(int limit) {
+        Map<Long, Integer> result = new LinkedHashMap<>();
+        queueDepths.entrySet().stream()
+                .sorted((a, b) -> Integer.compare(b.getValue().get(), a.getValue().get()))
+                .limit(limit)
+                .forEach(entry -> result.put(entry.getKey(), entry.getValue().get()));
+        return result;
+    }
+
+    private int stripeOf(Long flightId) {
+        return (int) Math.floorMod(flightId, (long) locks.length);
+    }
+
+    private Timer timer(String name, String description, String operation) {
+        return Timer.builder(name).description(description).tag("operation", operation).register(meterRegistry);
+    }
+}
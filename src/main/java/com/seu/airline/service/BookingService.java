@@ -0,0 +1,90 @@
+package com.seu.airline.service;
+
+import com.seu.airline.dto.OrderCreateRequest;
+import com.seu.airline.dto.OrderDTO;
+import com.seu.airline.dto.OrderItemRequest;
+import com.seu.airline.repository.SeatRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * 下单入口
+ * 依次经过 Redis 座位守卫（跨实例快速拒绝）、航班锁（同一航班串行）和下单事务；
+ * 普通下单和抢购队列的处理线程都从这里下单。
+ */
+@Service
+public class BookingService {
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private BookingCoordinator bookingCoordinator;
+
+    @Autowired
+    private SeatInventoryGuard seatInventoryGuard;
+
+    @Autowired
+    private SeatRepository seatRepository;
+
+    /**
+     * 下单，失败时抛出异常（异常信息可直接返回给用户）
+     * @param userId 下单用户ID
+     * @param request 下单请求
+     * @return 订单DTO
+     */
+    public OrderDTO placeOrder(Long userId, OrderCreateRequest request) {
+        List<Long> seatIds = selectedSeatIds(request);
+        List<Long> flightIds = flightIdsOf(request, seatIds);
+
+        // 先在 Redis 中原子占用所选座位，已被其他实例占用时直接拒绝，不进入数据库事务
+        SeatInventoryGuard.ClaimResult claim = seatInventoryGuard.tryClaim(flightIds, seatIds);
+        if (claim == SeatInventoryGuard.ClaimResult.REJECTED) {
+            throw new RuntimeException("座位已被占用");
+        }
+
+        try {
+            // 同一航班的下单、取消、支付串行执行，锁在下单事务提交后才释放
+            return bookingCoordinator.execute("order.create", flightIds,
+                    () -> orderService.createOrder(userId, request));
+        } catch (RuntimeException e) {
+            if (claim == SeatInventoryGuard.ClaimResult.CLAIMED) {
+                seatInventoryGuard.release(flightIds, seatIds);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 下单请求涉及的航班：自动分配座位时为请求中的航班，否则为所选座位所属的航班
+     */
+    public List<Long> flightIdsOf(OrderCreateRequest request) {
+        return flightIdsOf(request, selectedSeatIds(request));
+    }
+
+    private List<Long> flightIdsOf(OrderCreateRequest request, List<Long> seatIds) {
+        if (seatIds.isEmpty()) {
+            return request.getFlightId() != null
+                    ? Collections.singletonList(request.getFlightId())
+                    : Collections.emptyList();
+        }
+        return seatRepository.findFlightIdsByIdIn(seatIds);
+    }
+
+    // 下单请求中乘客指定的座位（去重，自动分配座位时为空）
+    private static List<Long> selectedSeatIds(OrderCreateRequest request) {
+        if (request.getItems() == null) {
+            return Collections.emptyList();
+        }
+        return request.getItems().stream()
+                .map(OrderItemRequest::getSeatId)
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,167 @@
+package com.seu.airline.service;
+
+import com.seu.airline.dto.FareCalendarDTO;
+import com.seu.airline.dto.FlightAvailability;
+import com.seu.airline.dto.FlightSummary;
+import com.seu.airline.event.FlightAvailabilityChangedEvent;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 低价日历服务
+ * 按（出发城市，到达城市）维护每天的最低可售价，供前端一次性绘制价格日历。
+ * 航班集合来自 FlightSearchIndex（索引版本变化时全量重算），
+ * 余量和最低价来自 FlightAvailabilityService（余量变化事件到达时只重算受影响的日期）。
+ */
+@Service
+@Slf4j
+public class FareCalendarService {
+
+    public static final int MAX_DAYS = 60;
+
+    @Autowired
+    private FlightSearchIndex flightSearchIndex;
+
+    @Autowired
+    private FlightAvailabilityService flightAvailabilityService;
+
+    private volatile Map<RouteKey, Map<LocalDate, DayFare>> calendars = new ConcurrentHashMap<>();
+
+    // 构建日历时所基于的索引版本，-1 表示尚未构建
+    private volatile long builtVersion = -1;
+
+    private final Object buildLock = new Object();
+
+    /**
+     * 查询航线从 startDate 起 days 天的每日最低价
+     */
+    public List<FareCalendarDTO> getCalendar(String departureCity, String arrivalCity, LocalDate startDate, int days) {
+        ensureCurrent();
+        Map<LocalDate, DayFare> calendar = calendars.get(new RouteKey(normalize(departureCity), normalize(arrivalCity)));
+
+        List<FareCalendarDTO> result = new ArrayList<>(days);
+        for (int i = 0; i < days; i++) {
+            LocalDate date = startDate.plusDays(i);
+            DayFare fare = calendar != null ? calendar.get(date) : null;
+            result.add(new FareCalendarDTO(
+                    date.format(DateTimeFormatter.ISO_LOCAL_DATE),
+                    fare != null ? fare.minPrice.doubleValue() : null,
+                    fare != null ? fare.flightCount : 0));
+        }
+        return result;
+    }
+
+    /**
+     * 座位余量变化后重算受影响航班所在日期的最低价
+     */
+    @EventListener
+    public void onAvailabilityChanged(FlightAvailabilityChangedEvent event) {
+        if (event.isFullReload()) {
+            synchronized (buildLock) {
+                builtVersion = -1;
+            }
+            return;
+        }
+        if (builtVersion < 0) {
+            return;
+        }
+        synchronized (buildLock) {
+            for (Long flightId : event.getFlightIds()) {
+                FlightSummary summary = flightSearchIndex.get(flightId);
+                if (summary != null) {
+                    recomputeDay(summary.getDepartureCity(), summary.getArrivalCity(),
+                            summary.getDepartureTime().toLocalDate());
+                }
+            }
+        }
+    }
+
+    // 索引内容变化（航班增删、改期、取消）或全量对账后整体重算
+    private void ensureCurrent() {
+        if (builtVersion == flightSearchIndex.getVersion()) {
+            return;
+        }
+        synchronized (buildLock) {
+            long version = flightSearchIndex.getVersion();
+            if (builtVersion == version) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            Map<RouteKey, Map<LocalDate, DayFare>> rebuilt = new ConcurrentHashMap<>();
+            for (FlightSummary summary : flightSearchIndex.getAll()) {
+                FlightAvailability availability = flightAvailabilityService.peek(summary.getId());
+                BigDecimal minPrice = availability.getMinPrice();
+                if (minPrice == null) {
+                    continue;
+                }
+                rebuilt.computeIfAbsent(keyOf(summary.getDepartureCity(), summary.getArrivalCity()),
+                                k -> new ConcurrentHashMap<>())
+                        .merge(summary.getDepartureTime().toLocalDate(), new DayFare(minPrice, 1), DayFare::merge);
+            }
+            calendars = rebuilt;
+            builtVersion = version;
+            log.debug("低价日历重算完成：{} 条航线，耗时 {} ms", rebuilt.size(), System.currentTimeMillis() - start);
+        }
+    }
+
+    // 重算某航线某天的最低价，调用方须持有 buildLock
+    private void recomputeDay(String departureCity, String arrivalCity, LocalDate date) {
+        DayFare fare = null;
+        for (FlightSummary summary : flightSearchIndex.search(departureCity, arrivalCity, date)) {
+            BigDecimal minPrice = flightAvailabilityService.peek(summary.getId()).getMinPrice();
+            if (minPrice != null) {
+                fare = DayFare.merge(fare, new DayFare(minPrice, 1));
+            }
+        }
+
+        RouteKey key = keyOf(departureCity, arrivalCity);
+        if (fare != null) {
+            calendars.computeIfAbsent(key, k -> new ConcurrentHashMap<>()).put(date, fare);
+        } else {
+            Map<LocalDate, DayFare> calendar = calendars.get(key);
+            if (calendar != null) {
+                calendar.remove(date);
+            }
+        }
+    }
+
+    private static RouteKey keyOf(String departureCity, String arrivalCity) {
+        return new RouteKey(normalize(departureCity), normalize(arrivalCity));
+    }
+
+    private static String normalize(String city) {
+        return city == null ? "" : city.trim();
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static final class RouteKey {
+        private final String departureCity;
+        private final String arrivalCity;
+    }
+
+    @AllArgsConstructor
+    private static final class DayFare {
+        private final BigDecimal minPrice;
+        private final int flightCount;
+
+        static DayFare merge(DayFare a, DayFare b) {
+            if (a == null) {
+                return b;
+            }
+            return new DayFare(a.minPrice.min(b.minPrice), a.flightCount + b.flightCount);
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package com.seu.airline.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.seu.airline.dto.BookingTicketDTO;
+import com.seu.airline.dto.FlightAvailability;
+import com.seu.airline.dto.OrderCreateRequest;
+import com.seu.airline.dto.OrderDTO;
+import com.seu.airline.model.Seat;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 抢购模式下单服务
+ * 开启抢购模式的航班，下单请求不直接进入数据库事务，而是放入有界的内存准入队列并立即返回排队凭证，
+ * 由固定数量的处理线程取出依次下单，客户端凭凭证轮询结果。
+ * 处理线程一次从队列取出多个请求只是减少队列交接，每个请求仍各自获取航班锁、在各自的事务中下单。
+ * 队列已满时立即拒绝，余量为零时立即返回售罄，在队列中等待过久的请求直接失败，
+ * 使过载表现为快速失败，而不是数据库连接池耗尽和请求超时。
+ * 准入队列在每个实例内存中，各实例各自限流（数据库并发上限为实例数 × 处理线程数）；
+ * 抢购航班集合保存在 Redis 中，开关对所有实例生效（各实例定期刷新本地副本），
+ * 排队凭证同时写入 Redis 并设置过期时间，客户端在任一实例上都能查询到，查询时校验凭证所属用户。
+ */
+@Service
+@Slf4j
+public class FlashSaleService {
+
+    public static final String QUEUED = "QUEUED";
+    public static final String PROCESSING = "PROCESSING";
+    public static final String SUCCESS = "SUCCESS";
+    public static final String FAILED = "FAILED";
+
+    @Autowired
+    private BookingService bookingService;
+
+    @Autowired
+    private FlightAvailabilityService flightAvailabilityService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private static final String FLIGHTS_KEY = "flash-sale:flights";
+
+    private static final String TICKET_KEY_PREFIX = "flash-sale:ticket:";
+
+    @Value("${airline.flash-sale.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${airline.flash-sale.workers:4}")
+    private int workerCount;
+
+    @Value("${airline.flash-sale.batch-size:50}")
+    private int batchSize;
+
+    @Value("${airline.flash-sale.max-wait-ms:30000}")
+    private long maxWaitMs;
+
+    @Value("${airline.flash-sale.ticket-ttl-seconds:600}")
+    private long ticketTtlSeconds;
+
+    @Value("#{'${airline.flash-sale.flights:}'.split(',')}")
+    private List<String> initialFlights;
+
+    // Redis 中抢购航班集合的本地副本，下单路径只读本地副本
+    private volatile Set<Long> flashSaleFlights = Collections.emptySet();
+
+    private final Map<String, Ticket> tickets = new ConcurrentHashMap<>();
+
+    private BlockingQueue<Ticket> queue;
+
+    private ExecutorService workers;
+
+    private Timer queueWait;
+
+    @PostConstruct
+    public void init() {
+        Set<Long> initial = new HashSet<>();
+        for (String flightId : initialFlights) {
+            if (!flightId.trim().isEmpty()) {
+                initial.add(Long.valueOf(flightId.trim()));
+            }
+        }
+        flashSaleFlights = Collections.unmodifiableSet(initial);
+        if (!initial.isEmpty()) {
+            try {
+                stringRedisTemplate.opsForSet().add(FLIGHTS_KEY, initial.stream().map(String::valueOf).toArray(String[]::new));
+            } catch (Exception e) {
+                log.warn("抢购航班写入 Redis 失败，暂时只在本实例生效: {}", e.getMessage());
+            }
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        queueWait = Timer.builder("flash_sale.queue.wait").description("抢购请求在准入队列中的等待时间")
+                .register(meterRegistry);
+        Gauge.builder("flash_sale.queue.size", queue, BlockingQueue::size)
+                .description("抢购准入队列中的请求数").register(meterRegistry);
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(workerCount, r -> {
+            Thread thread = new Thread(r, "flash-sale-worker-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(this::work);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * 航班是否处于抢购模式
+     */
+    public boolean isFlashSale(Collection<Long> flightIds) {
+        if (flashSaleFlights.isEmpty()) {
+            return false;
+        }
+        for (Long flightId : flightIds) {
+            if (flashSaleFlights.contains(flightId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 开启或关闭航班的抢购模式（对所有实例生效，其他实例在下一次刷新时生效）
+     * Redis 不可用时抛出异常，不只修改本实例
+     */
+    public void setFlashSale(Long flightId, boolean enabled) {
+        try {
+            if (enabled) {
+                stringRedisTemplate.opsForSet().add(FLIGHTS_KEY, String.valueOf(flightId));
+            } else {
+                stringRedisTemplate.opsForSet().remove(FLIGHTS_KEY, String.valueOf(flightId));
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("设置抢购模式失败，Redis 不可用: " + e.getMessage(), e);
+        }
+        refreshFlights();
+        log.info("航班 {} 抢购模式已{}", flightId, enabled ? "开启" : "关闭");
+    }
+
+    /**
+     * 处于抢购模式的航班
+     */
+    public Set<Long> getFlashSaleFlights() {
+        return flashSaleFlights;
+    }
+
+    /**
+     * 从 Redis 刷新抢购航班集合；Redis 不可用时沿用上一次的结果
+     */
+    @Scheduled(fixedDelayString = "${airline.flash-sale.refresh-ms:1000}")
+    public void refreshFlights() {
+        try {
+            Set<String> members = stringRedisTemplate.opsForSet().members(FLIGHTS_KEY);
+            Set<Long> flights = new HashSet<>();
+            if (members != null) {
+                members.forEach(member -> flights.add(Long.valueOf(member)));
+            }
+            flashSaleFlights = Collections.unmodifiableSet(flights);
+        } catch (Exception e) {
+            log.debug("刷新抢购航班失败，沿用本地副本: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 提交抢购下单请求，返回排队凭证
+     * 余量不足时返回 FAILED 凭证（售罄），队列已满时返回 null
+     */
+    public BookingTicketDTO submit(Long userId, OrderCreateRequest request, Collection<Long> flightIds) {
+        if (isSoldOut(request, flightIds)) {
+            meterRegistry.counter("flash_sale.requests", "result", "sold_out").increment();
+            return new BookingTicketDTO(null, FAILED, "已售罄", null);
+        }
+        Ticket ticket = new Ticket(UUID.randomUUID().toString().replace("-", ""), userId, request);
+        if (!queue.offer(ticket)) {
+            meterRegistry.counter("flash_sale.requests", "result", "rejected").increment();
+            return null;
+        }
+        tickets.put(ticket.id, ticket);
+        store(ticket, maxWaitMs / 1000 + ticketTtlSeconds);
+        meterRegistry.counter("flash_sale.requests", "result", "queued").increment();
+        return ticket.toDTO();
+    }
+
+    /**
+     * 查询排队凭证，凭证不存在、已过期或不属于该用户时返回 null
+     * 本实例受理的凭证直接读内存，其他实例受理的凭证从 Redis 读取
+     */
+    public BookingTicketDTO getTicket(String ticketId, Long userId) {
+        Ticket ticket = tickets.get(ticketId);
+        if (ticket != null) {
+            return ticket.userId.equals(userId) ? ticket.toDTO() : null;
+        }
+        try {
+            List<Object> fields = stringRedisTemplate.opsForHash()
+                    .multiGet(TICKET_KEY_PREFIX + ticketId, Arrays.asList("userId", "ticket"));
+            if (fields.get(0) == null || fields.get(1) == null || !String.valueOf(userId).equals(fields.get(0))) {
+                return null;
+            }
+            return objectMapper.readValue((String) fields.get(1), BookingTicketDTO.class);
+        } catch (Exception e) {
+            log.warn("从 Redis 读取排队凭证 {} 失败: {}", ticketId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 清理已过期的凭证
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictExpiredTickets() {
+        long expireBefore = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(ticketTtlSeconds);
+        tickets.values().removeIf(ticket -> ticket.finishedAt > 0 && ticket.finishedAt < expireBefore);
+    }
+
+    // 按余量计数快速判断是否售罄（只读内存）
+    private boolean isSoldOut(OrderCreateRequest request, Collection<Long> flightIds) {
+        int passengers = request.getItems() != null ? request.getItems().size() : 0;
+        for (Long flightId : flightIds) {
+            FlightAvailability availability = flightAvailabilityService.get(flightId);
+            int available = availability.getTotalAvailable();
+            if (request.getSeatType() != null) {
+                try {
+                    available = availability.getAvailable(Seat.SeatType.valueOf(request.getSeatType().toUpperCase()));
+                } catch (IllegalArgumentException e) {
+                    // 无效舱位交给下单流程报错
+                }
+            }
+            if (available < Math.max(1, passengers)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void work() {
+        List<Ticket> batch = new ArrayList<>(batchSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - 1);
+                for (Ticket ticket : batch) {
+                    process(ticket);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void process(Ticket ticket) {
+        long waited = System.currentTimeMillis() - ticket.createdAt;
+        queueWait.record(waited, TimeUnit.MILLISECONDS);
+        if (waited > maxWaitMs) {
+            finish(ticket, FAILED, "排队超时，请重试", null);
+            return;
+        }
+        ticket.status = PROCESSING;
+        store(ticket, maxWaitMs / 1000 + ticketTtlSeconds);
+        try {
+            OrderDTO order = bookingService.placeOrder(ticket.userId, ticket.request);
+            finish(ticket, SUCCESS, "订单创建成功", order);
+        } catch (Exception e) {
+            finish(ticket, FAILED, e.getMessage(), null);
+        }
+    }
+
+    private void finish(Ticket ticket, String status, String message, OrderDTO order) {
+        ticket.finish(status, message, order);
+        store(ticket, ticketTtlSeconds);
+    }
+
+    // 把凭证的当前状态写入 Redis，供其他实例查询；写入失败时只能在本实例查询
+    private void store(Ticket ticket, long ttlSeconds) {
+        try {
+            String key = TICKET_KEY_PREFIX + ticket.id;
+            Map<String, String> fields = new HashMap<>();
+            fields.put("userId", String.valueOf(ticket.userId));
+            fields.put("ticket", objectMapper.writeValueAsString(ticket.toDTO()));
+            stringRedisTemplate.opsForHash().putAll(key, fields);
+            stringRedisTemplate.expire(key, ttlSeconds, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.warn("排队凭证 {} 写入 Redis 失败: {}", ticket.id, e.getMessage());
+        }
+    }
+
+    /**
+     * 排队中的下单请求
+     */
+    private static final class Ticket {
+        private final String id;
+        private final Long userId;
+        private final OrderCreateRequest request;
+        private final long createdAt = System.currentTimeMillis();
+        private volatile String status = QUEUED;
+        private volatile String message;
+        private volatile OrderDTO order;
+        private volatile long finishedAt;
+
+        Ticket(String id, Long userId, OrderCreateRequest request) {
+            this.id = id;
+            this.userId = userId;
+            this.request = request;
+        }
+
+        void finish(String status, String message, OrderDTO order) {
+            this.order = order;
+            this.message = message;
+            this.status = status;
+            this.finishedAt = System.currentTimeMillis();
+        }
+
+        BookingTicketDTO toDTO() {
+            return new BookingTicketDTO(id, status, message, order);
+        }
+    }
+}
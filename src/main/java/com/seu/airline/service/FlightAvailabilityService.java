@@ -0,0 +1,408 @@
+package com.seu.airline.service;
+
+import com.seu.airline.dto.FlightAvailability;
+import com.seu.airline.dto.SeatTransition;
+import com.seu.airline.event.FlightAvailabilityChangedEvent;
+import com.seu.airline.model.FlightInventoryVersion;
+import com.seu.airline.model.Seat;
+import com.seu.airline.repository.FlightInventoryVersionRepository;
+import com.seu.airline.repository.SeatRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 航班舱位余量计数服务
+ * 为每个航班的每个舱位维护剩余座位数和按票价分组的可售座位数（用于得到最低可售价），
+ * 下单、取消、支付等路径在事务提交后按座位状态变化增量更新，搜索结果只读取计数快照。
+ * 本实例提交的变化经 SeatTransitionRelay 转发给其他实例，其他实例的变化同样增量应用。
+ * 每次变化在同一事务中递增航班的余量版本号，重新汇总时在同一快照中读取版本号和座位，
+ * 版本号不超过汇总版本的变化已包含在汇总中，到达时直接忽略，避免同一变化被计入两次；
+ * 汇总期间应用到旧计数上的较新变化在替换时补上。
+ */
+@Service
+@Slf4j
+public class FlightAvailabilityService implements CommandLineRunner {
+
+    @Autowired
+    private SeatRepository seatRepository;
+
+    @Autowired
+    private FlightInventoryVersionRepository flightInventoryVersionRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private SeatTransitionRelay seatTransitionRelay;
+
+    @Autowired
+    private SeatMapService seatMapService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // 每个航班保留最近应用的变化数，替换为新汇总时补上汇总之后的变化
+    private static final int RECENT_DELTAS = 64;
+
+    private final Map<Long, FlightInventory> inventories = new ConcurrentHashMap<>();
+
+    private TransactionTemplate snapshotTemplate;
+
+    @PostConstruct
+    public void init() {
+        // 版本号和座位汇总需要在同一快照中读取
+        snapshotTemplate = new TransactionTemplate(transactionManager);
+        snapshotTemplate.setReadOnly(true);
+        snapshotTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+    }
+
+    @Override
+    public void run(String... args) {
+        reloadAll();
+    }
+
+    /**
+     * 定期与 seats 表对账，修正直接改库或转发消息丢失造成的偏差
+     */
+    @Scheduled(initialDelayString = "${airline.inventory.reconcile-interval-ms:60000}",
+            fixedDelayString = "${airline.inventory.reconcile-interval-ms:60000}")
+    public void scheduledReconcile() {
+        reloadAll();
+    }
+
+    /**
+     * 获取航班余量快照，未加载的航班按需从数据库汇总一次
+     */
+    public FlightAvailability get(Long flightId) {
+        FlightInventory inventory = inventories.get(flightId);
+        if (inventory == null) {
+            reload(Collections.singletonList(flightId));
+            inventory = inventories.get(flightId);
+        }
+        return inventory != null ? inventory.snapshot : FlightAvailability.EMPTY;
+    }
+
+    /**
+     * 只读内存的余量快照，未加载的航班视为无余座（用于批量遍历航班的场景）
+     */
+    public FlightAvailability peek(Long flightId) {
+        FlightInventory inventory = inventories.get(flightId);
+        return inventory != null ? inventory.snapshot : FlightAvailability.EMPTY;
+    }
+
+    /**
+     * 记录座位状态变化
+     * 处于事务中时递增受影响航班的余量版本号，提交后生效（回滚则丢弃），否则立即生效
+     */
+    public void recordTransitions(List<SeatTransition> transitions) {
+        if (transitions == null || transitions.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            List<SeatTransition> pending = new ArrayList<>(transitions);
+            Map<Long, Long> inventoryVersions = TransactionSynchronizationManager.isActualTransactionActive()
+                    ? incrementVersions(pending) : Collections.emptyMap();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    applyTransitions(pending, inventoryVersions, null);
+                }
+            });
+        } else {
+            applyTransitions(transitions, Collections.emptyMap(), null);
+        }
+    }
+
+    /**
+     * 应用其他实例已提交的座位状态变化（由 SeatTransitionRelay 调用，不再转发）
+     * @param versions 提交的实例为各航班取得的共享座位版本号
+     * @param inventoryVersions 提交的事务中各航班的余量版本号
+     */
+    public void applyRemoteTransitions(List<SeatTransition> transitions, Map<Long, Long> versions,
+                                       Map<Long, Long> inventoryVersions) {
+        applyTransitions(transitions, inventoryVersions, versions);
+    }
+
+    /**
+     * 从 seats 表重新汇总所有未起飞航班的余量
+     */
+    public void reloadAll() {
+        try {
+            long start = System.currentTimeMillis();
+            LocalDateTime from = LocalDate.now().atStartOfDay();
+            Map<Long, FlightInventory> loaded = snapshotTemplate.execute(status -> load(
+                    flightInventoryVersionRepository.findDepartingFrom(from),
+                    seatRepository.summarizeAvailableFares(from), Collections.emptySet()));
+            for (Map.Entry<Long, FlightInventory> entry : loaded.entrySet()) {
+                install(entry.getKey(), entry.getValue());
+            }
+            // 已起飞或无版本号且已售罄的航班移出内存，之后按需汇总
+            for (Long flightId : new ArrayList<>(inventories.keySet())) {
+                if (!loaded.containsKey(flightId)) {
+                    evict(flightId);
+                }
+            }
+            eventPublisher.publishEvent(FlightAvailabilityChangedEvent.fullReload());
+            log.debug("航班余量计数加载完成：{} 个航班，耗时 {} ms", loaded.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("航班余量计数加载失败，继续使用旧计数", e);
+        }
+    }
+
+    /**
+     * 从 seats 表重新汇总指定航班的余量
+     */
+    public void reload(Collection<Long> flightIds) {
+        Map<Long, FlightInventory> loaded = snapshotTemplate.execute(status -> load(
+                flightInventoryVersionRepository.findByFlightIdIn(flightIds),
+                seatRepository.summarizeAvailableFaresByFlightIds(flightIds), flightIds));
+        for (Map.Entry<Long, FlightInventory> entry : loaded.entrySet()) {
+            install(entry.getKey(), entry.getValue());
+        }
+        eventPublisher.publishEvent(FlightAvailabilityChangedEvent.of(loaded.keySet()));
+    }
+
+    // 按汇总结果建立计数，flightIds 中没有可用座位的航班建立空计数；没有版本号的航班版本为 0（尚无带版本的变化）
+    private Map<Long, FlightInventory> load(List<FlightInventoryVersion> versions,
+                                            List<SeatRepository.FareBucketView> buckets, Collection<Long> flightIds) {
+        Map<Long, Long> loadedVersions = new HashMap<>();
+        for (FlightInventoryVersion version : versions) {
+            loadedVersions.put(version.getFlightId(), version.getVersion());
+        }
+        Set<Long> ids = new HashSet<>(flightIds);
+        ids.addAll(loadedVersions.keySet());
+        buckets.forEach(bucket -> ids.add(bucket.getFlightId()));
+
+        Map<Long, FlightInventory> loaded = new HashMap<>();
+        for (Long flightId : ids) {
+            loaded.put(flightId, new FlightInventory(loadedVersions.getOrDefault(flightId, 0L)));
+        }
+        for (SeatRepository.FareBucketView bucket : buckets) {
+            loaded.get(bucket.getFlightId()).addBucket(bucket);
+        }
+        loaded.values().forEach(FlightInventory::refreshSnapshot);
+        return loaded;
+    }
+
+    // 用新汇总替换航班计数：新汇总比当前计数旧时保留当前计数，否则补上当前计数上已应用但汇总中没有的变化
+    private void install(Long flightId, FlightInventory fresh) {
+        while (true) {
+            FlightInventory current = inventories.get(flightId);
+            if (current == null) {
+                if (inventories.putIfAbsent(flightId, fresh) == null) {
+                    return;
+                }
+                continue;
+            }
+            synchronized (current) {
+                if (current.retired) {
+                    continue;
+                }
+                if (fresh.loadedVersion < current.loadedVersion) {
+                    return;
+                }
+                fresh.replay(current);
+                current.retired = true;
+                inventories.put(flightId, fresh);
+                return;
+            }
+        }
+    }
+
+    private void evict(Long flightId) {
+        FlightInventory current = inventories.get(flightId);
+        if (current == null) {
+            return;
+        }
+        synchronized (current) {
+            current.retired = true;
+            inventories.remove(flightId, current);
+        }
+    }
+
+    // 按航班ID顺序递增版本号（避免多航班事务之间死锁），行锁保持到事务结束
+    private Map<Long, Long> incrementVersions(List<SeatTransition> transitions) {
+        Set<Long> flightIds = new TreeSet<>();
+        for (SeatTransition transition : transitions) {
+            if (transition.getFrom() != transition.getTo()) {
+                flightIds.add(transition.getFlightId());
+            }
+        }
+        if (flightIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        flightIds.forEach(flightInventoryVersionRepository::increment);
+        Map<Long, Long> versions = new HashMap<>();
+        for (FlightInventoryVersion version : flightInventoryVersionRepository.findByFlightIdIn(flightIds)) {
+            versions.put(version.getFlightId(), version.getVersion());
+        }
+        return versions;
+    }
+
+    // remoteVersions 为空表示本实例提交的变化：先递增受影响航班的共享版本号，再通知本实例并转发给其他实例
+    private void applyTransitions(List<SeatTransition> transitions, Map<Long, Long> inventoryVersions,
+                                  Map<Long, Long> remoteVersions) {
+        Map<Long, List<SeatTransition>> byFlight = new LinkedHashMap<>();
+        List<SeatTransition> applied = new ArrayList<>(transitions.size());
+        for (SeatTransition transition : transitions) {
+            if (transition.getFrom() == transition.getTo()) {
+                continue;
+            }
+            byFlight.computeIfAbsent(transition.getFlightId(), id -> new ArrayList<>()).add(transition);
+            applied.add(transition);
+        }
+        if (applied.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<Long, List<SeatTransition>> entry : byFlight.entrySet()) {
+            applyToInventory(entry.getKey(), entry.getValue(), inventoryVersions.get(entry.getKey()));
+        }
+
+        Set<Long> changedFlights = byFlight.keySet();
+        if (remoteVersions != null) {
+            eventPublisher.publishEvent(FlightAvailabilityChangedEvent.remote(changedFlights, applied, remoteVersions));
+        } else {
+            Map<Long, Long> versions = seatMapService.nextVersions(changedFlights);
+            eventPublisher.publishEvent(FlightAvailabilityChangedEvent.of(changedFlights, applied, versions));
+            seatTransitionRelay.publish(applied, versions, inventoryVersions);
+        }
+    }
+
+    // 未加载的航班忽略（之后按需汇总时已包含）；计数正被替换时应用到新计数上
+    private void applyToInventory(Long flightId, List<SeatTransition> transitions, Long version) {
+        while (true) {
+            FlightInventory inventory = inventories.get(flightId);
+            if (inventory == null || inventory.apply(transitions, version)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 单个航班的余量计数，修改时加锁，读取时直接返回不可变快照
+     */
+    private static final class FlightInventory {
+        private final CabinInventory[] cabins = new CabinInventory[Seat.SeatType.values().length];
+
+        // 汇总时的余量版本号，不超过它的变化已包含在计数中
+        private final long loadedVersion;
+
+        // 汇总之后应用的带版本号的变化（最近 RECENT_DELTAS 个）
+        private final Deque<AppliedDelta> recent = new ArrayDeque<>();
+
+        // 已被新汇总替换，之后的变化应用到新计数上
+        private boolean retired;
+
+        private volatile FlightAvailability snapshot = FlightAvailability.EMPTY;
+
+        FlightInventory(long loadedVersion) {
+            this.loadedVersion = loadedVersion;
+            for (int i = 0; i < cabins.length; i++) {
+                cabins[i] = new CabinInventory();
+            }
+        }
+
+        void addBucket(SeatRepository.FareBucketView bucket) {
+            cabins[bucket.getSeatType().ordinal()].add(bucket.getPrice(), bucket.getAvailable().intValue());
+        }
+
+        /**
+         * 应用一次提交中本航班的座位状态变化
+         * @param version 余量版本号，为空时（不在事务中提交）总是应用
+         * @return 计数已被替换时返回 false
+         */
+        synchronized boolean apply(List<SeatTransition> transitions, Long version) {
+            if (retired) {
+                return false;
+            }
+            if (version != null && version <= loadedVersion) {
+                return true;
+            }
+            for (SeatTransition transition : transitions) {
+                CabinInventory cabin = cabins[transition.getSeatType().ordinal()];
+                if (transition.getFrom() == Seat.SeatStatus.AVAILABLE) {
+                    cabin.add(transition.getPrice(), -1);
+                } else if (transition.getTo() == Seat.SeatStatus.AVAILABLE) {
+                    cabin.add(transition.getPrice(), 1);
+                }
+            }
+            refreshSnapshot();
+            if (version != null) {
+                recent.addLast(new AppliedDelta(version, transitions));
+                if (recent.size() > RECENT_DELTAS) {
+                    recent.removeFirst();
+                }
+            }
+            return true;
+        }
+
+        // 补上被替换计数上已应用、但本次汇总中没有的变化（调用方持有 previous 的锁）
+        synchronized void replay(FlightInventory previous) {
+            for (AppliedDelta delta : previous.recent) {
+                if (delta.version > loadedVersion) {
+                    apply(delta.transitions, delta.version);
+                }
+            }
+        }
+
+        synchronized void refreshSnapshot() {
+            CabinInventory economy = cabins[Seat.SeatType.ECONOMY.ordinal()];
+            CabinInventory business = cabins[Seat.SeatType.BUSINESS.ordinal()];
+            CabinInventory first = cabins[Seat.SeatType.FIRST.ordinal()];
+            snapshot = new FlightAvailability(
+                    economy.available, business.available, first.available,
+                    economy.lowestFare(), business.lowestFare(), first.lowestFare());
+        }
+    }
+
+    private static final class AppliedDelta {
+        private final long version;
+        private final List<SeatTransition> transitions;
+
+        AppliedDelta(long version, List<SeatTransition> transitions) {
+            this.version = version;
+            this.transitions = transitions;
+        }
+    }
+
+    /**
+     * 单个舱位的剩余座位数及按票价分组的可售座位数
+     */
+    private static final class CabinInventory {
+        private final TreeMap<BigDecimal, Integer> fares = new TreeMap<>();
+        private int available;
+
+        void add(BigDecimal price, int delta) {
+            if (price == null) {
+                return;
+            }
+            int count = fares.getOrDefault(price, 0) + delta;
+            if (count > 0) {
+                fares.put(price, count);
+            } else {
+                fares.remove(price);
+            }
+            available = Math.max(0, available + delta);
+        }
+
+        BigDecimal lowestFare() {
+            return fares.isEmpty() ? null : fares.firstKey();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.seu.airline.service;
+
+import com.seu.airline.dto.FlightDTO;
+import com.seu.airline.dto.FlightSummary;
+import com.seu.airline.event.FlightAvailabilityChangedEvent;
+import com.seu.airline.event.FlightUpdatedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 航班搜索结果缓存（Redis）
+ * 以规范化的（出发城市，到达城市，日期）为键缓存 /flight/search 的结果。
+ * 航班状态变化或座位余量变化时精确删除该航班所在航线日期的缓存。
+ * 缓存由任一实例用自己的余量计数填充：某实例提交变化并删除缓存后，尚未收到该变化的实例可能用旧计数重新填充，
+ * 因此每个实例在收到转发的变化、更新自己的计数后都再删除一次，余量陈旧时间通常只有转发延迟；
+ * 转发消息丢失时由余量对账修正计数，陈旧时间上限为余量对账间隔加过期时间。
+ * Redis 不可用时视为未命中，不影响搜索。
+ */
+@Service
+@Slf4j
+public class FlightSearchCache {
+
+    private static final String KEY_PREFIX = "flight:search:";
+
+    @Autowired
+    private RedisService redisService;
+
+    @Autowired
+    private FlightSearchIndex flightSearchIndex;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${airline.search.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${airline.search.cache.ttl-seconds:30}")
+    private long ttlSeconds;
+
+    private Counter hits;
+    private Counter misses;
+
+    @PostConstruct
+    public void registerMetrics() {
+        hits = Counter.builder("flight.search.cache.requests").tag("result", "hit")
+                .description("航班搜索缓存命中次数").register(meterRegistry);
+        misses = Counter.builder("flight.search.cache.requests").tag("result", "miss")
+                .description("航班搜索缓存未命中次数").register(meterRegistry);
+        Gauge.builder("flight.search.cache.hit.ratio", this, FlightSearchCache::hitRatio)
+                .description("航班搜索缓存命中率").register(meterRegistry);
+    }
+
+    /**
+     * 读取缓存的搜索结果，未命中返回 null
+     */
+    @SuppressWarnings("unchecked")
+    public List<FlightDTO> get(String departureCity, String arrivalCity, LocalDate date) {
+        if (!enabled) {
+            return null;
+        }
+        try {
+            Object cached = redisService.get(keyOf(departureCity, arrivalCity, date));
+            if (cached instanceof List) {
+                hits.increment();
+                return (List<FlightDTO>) cached;
+            }
+        } catch (Exception e) {
+            log.warn("读取航班搜索缓存失败: {}", e.getMessage());
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * 写入搜索结果
+     */
+    public void put(String departureCity, String arrivalCity, LocalDate date, List<FlightDTO> flights) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            redisService.set(keyOf(departureCity, arrivalCity, date), flights, ttlSeconds, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.warn("写入航班搜索缓存失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 座位余量变化（本实例或其他实例的下单、取消、支付）后删除受影响航班所在航线日期的缓存
+     * 全量对账不逐个删除，由过期时间兜底
+     */
+    @EventListener
+    public void onAvailabilityChanged(FlightAvailabilityChangedEvent event) {
+        if (event.isFullReload()) {
+            return;
+        }
+        Set<String> keys = new HashSet<>();
+        for (Long flightId : event.getFlightIds()) {
+            FlightSummary summary = flightSearchIndex.get(flightId);
+            if (summary != null) {
+                keys.add(keyOf(summary));
+            }
+        }
+        keys.forEach(this::evictKey);
+    }
+
+    /**
+     * 航班状态或时刻变化后删除变化前后所在航线日期的缓存
+     */
+    @EventListener
+    public void onFlightUpdated(FlightUpdatedEvent event) {
+        Set<String> keys = new HashSet<>();
+        if (event.getPrevious() != null) {
+            keys.add(keyOf(event.getPrevious()));
+        }
+        if (event.getCurrent() != null) {
+            keys.add(keyOf(event.getCurrent()));
+        }
+        keys.forEach(this::evictKey);
+    }
+
+    private void evictKey(String key) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            redisService.delete(key);
+        } catch (Exception e) {
+            log.warn("删除航班搜索缓存失败: {}", e.getMessage());
+        }
+    }
+
+    private double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0.0 : hits.count() / total;
+    }
+
+    private static String keyOf(FlightSummary summary) {
+        return keyOf(summary.getDepartureCity(), summary.getArrivalCity(), summary.getDepartureTime().toLocalDate());
+    }
+
+    private static String keyOf(String departureCity, String arrivalCity, LocalDate date) {
+        return KEY_PREFIX + normalize(departureCity) + ":" + normalize(arrivalCity) + ":"
+                + date.format(DateTimeFormatter.ISO_LOCAL_DATE);
+    }
+
+    private static String normalize(String city) {
+        return city == null ? "" : city.trim();
+    }
+}
@@ -0,0 +1,254 @@
+package com.seu.airline.service;
+
+import com.seu.airline.dto.FlightSummary;
+import com.seu.airline.event.FlightUpdatedEvent;
+import com.seu.airline.model.Flight;
+import com.seu.airline.repository.FlightRepository;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 航班搜索内存索引
+ * 以（出发城市，到达城市，出发日期）为键保存紧凑的航班摘要，只收录重建当天及以后起飞的航班，
+ * 更早日期的查询由调用方回退到数据库（见 covers）。
+ * 启动时全量构建，航班状态变化时按航班增量刷新，并定期全量重建兜底。
+ * 座位余量不在索引中保存，由 FlightAvailabilityService 维护。
+ * 读操作无锁，写操作串行化并整体替换桶数组。
+ */
+@Service
+@Slf4j
+public class FlightSearchIndex implements CommandLineRunner {
+
+    private static final Comparator<FlightSummary> BY_DEPARTURE_TIME =
+            Comparator.comparing(FlightSummary::getDepartureTime).thenComparing(FlightSummary::getId);
+
+    @Autowired
+    private FlightRepository flightRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    private volatile Map<RouteDayKey, FlightSummary[]> buckets = new ConcurrentHashMap<>();
+
+    private volatile Map<Long, FlightSummary> flightsById = new ConcurrentHashMap<>();
+
+    private volatile boolean ready = false;
+
+    // 最近一次全量重建收录的起始日期，早于该日期的航班不在索引中
+    private volatile LocalDate indexedFrom;
+
+    // 每次索引内容变化时递增，供依赖索引的派生结构判断是否需要重建
+    private final AtomicLong version = new AtomicLong();
+
+    private final Object writeLock = new Object();
+
+    // 全量重建期间被增量刷新过的航班，重建完成后需要补刷（由 writeLock 保护）
+    private Set<Long> refreshedDuringRebuild;
+
+    @Override
+    public void run(String... args) {
+        rebuild();
+    }
+
+    /**
+     * 定期全量重建，修正多实例部署或数据库直接修改带来的偏差
+     */
+    @Scheduled(initialDelayString = "${airline.search.index.rebuild-interval-ms:600000}",
+            fixedDelayString = "${airline.search.index.rebuild-interval-ms:600000}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    /**
+     * 索引是否已完成首次构建
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 索引是否收录了指定出发日期的全部航班（已构建且日期不早于重建起始日期）
+     */
+    public boolean covers(LocalDate date) {
+        LocalDate from = indexedFrom;
+        return ready && from != null && !date.isBefore(from);
+    }
+
+    /**
+     * 按城市和日期查询航班（已按起飞时间排序，不含已取消航班）
+     */
+    public List<FlightSummary> search(String departureCity, String arrivalCity, LocalDate date) {
+        FlightSummary[] bucket = buckets.get(new RouteDayKey(normalize(departureCity), normalize(arrivalCity), date));
+        if (bucket == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(bucket));
+    }
+
+    /**
+     * 获取索引中的航班摘要
+     */
+    public FlightSummary get(Long flightId) {
+        return flightsById.get(flightId);
+    }
+
+    /**
+     * 当前索引中的全部航班摘要
+     */
+    public Collection<FlightSummary> getAll() {
+        return Collections.unmodifiableCollection(flightsById.values());
+    }
+
+    /**
+     * 索引内容版本号
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * 全量重建索引
+     */
+    public void rebuild() {
+        synchronized (writeLock) {
+            refreshedDuringRebuild = new HashSet<>();
+        }
+        Set<Long> dirty = Collections.emptySet();
+        try {
+            long start = System.currentTimeMillis();
+            LocalDate fromDate = LocalDate.now();
+            LocalDateTime from = fromDate.atStartOfDay();
+            List<FlightSummary> summaries = flightRepository.findSummariesFrom(from);
+
+            Map<Long, FlightSummary> newById = new ConcurrentHashMap<>();
+            Map<RouteDayKey, List<FlightSummary>> grouped = new HashMap<>();
+            for (FlightSummary summary : summaries) {
+                if (summary.getStatus() == Flight.FlightStatus.CANCELLED) {
+                    continue;
+                }
+                newById.put(summary.getId(), summary);
+                grouped.computeIfAbsent(keyOf(summary), k -> new ArrayList<>()).add(summary);
+            }
+
+            Map<RouteDayKey, FlightSummary[]> newBuckets = new ConcurrentHashMap<>();
+            grouped.forEach((key, list) -> {
+                list.sort(BY_DEPARTURE_TIME);
+                newBuckets.put(key, list.toArray(new FlightSummary[0]));
+            });
+
+            synchronized (writeLock) {
+                buckets = newBuckets;
+                flightsById = newById;
+                indexedFrom = fromDate;
+                ready = true;
+                version.incrementAndGet();
+                dirty = refreshedDuringRebuild;
+            }
+            log.info("航班搜索索引构建完成：{} 个航班，{} 条路线日期，耗时 {} ms",
+                    newById.size(), newBuckets.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("航班搜索索引构建失败，继续使用旧索引", e);
+        } finally {
+            synchronized (writeLock) {
+                refreshedDuringRebuild = null;
+            }
+        }
+
+        // 重建期间发生的增量变化可能被旧快照覆盖，补刷一次
+        for (Long flightId : dirty) {
+            refreshFlight(flightId);
+        }
+    }
+
+    /**
+     * 重新加载单个航班（状态、时刻等）
+     */
+    public void refreshFlight(Long flightId) {
+        FlightSummary summary = flightRepository.findSummaryById(flightId).orElse(null);
+        FlightSummary previous;
+        synchronized (writeLock) {
+            markDirty(flightId);
+            previous = place(flightId, summary);
+        }
+        eventPublisher.publishEvent(new FlightUpdatedEvent(flightId, previous, flightsById.get(flightId)));
+    }
+
+    // 将航班摘要放入索引（summary 为 null 或已取消时移除）并返回原摘要，调用方须持有 writeLock
+    private FlightSummary place(Long flightId, FlightSummary summary) {
+        FlightSummary previous = flightsById.get(flightId);
+        if (previous != null) {
+            removeFromBucket(keyOf(previous), flightId);
+        }
+        if (summary == null || summary.getStatus() == Flight.FlightStatus.CANCELLED
+                || summary.getDepartureTime() == null) {
+            flightsById.remove(flightId);
+            version.incrementAndGet();
+            return previous;
+        }
+        flightsById.put(flightId, summary);
+
+        RouteDayKey key = keyOf(summary);
+        FlightSummary[] bucket = buckets.get(key);
+        FlightSummary[] updated;
+        if (bucket == null) {
+            updated = new FlightSummary[] { summary };
+        } else {
+            updated = Arrays.copyOf(bucket, bucket.length + 1);
+            updated[bucket.length] = summary;
+            Arrays.sort(updated, BY_DEPARTURE_TIME);
+        }
+        buckets.put(key, updated);
+        version.incrementAndGet();
+        return previous;
+    }
+
+    private void removeFromBucket(RouteDayKey key, Long flightId) {
+        FlightSummary[] bucket = buckets.get(key);
+        if (bucket == null) {
+            return;
+        }
+        FlightSummary[] updated = Arrays.stream(bucket)
+                .filter(s -> !s.getId().equals(flightId))
+                .toArray(FlightSummary[]::new);
+        if (updated.length == 0) {
+            buckets.remove(key);
+        } else {
+            buckets.put(key, updated);
+        }
+    }
+
+    private void markDirty(Long flightId) {
+        if (refreshedDuringRebuild != null) {
+            refreshedDuringRebuild.add(flightId);
+        }
+    }
+
+    private static RouteDayKey keyOf(FlightSummary summary) {
+        return new RouteDayKey(normalize(summary.getDepartureCity()), normalize(summary.getArrivalCity()),
+                summary.getDepartureTime().toLocalDate());
+    }
+
+    private static String normalize(String city) {
+        return city == null ? "" : city.trim();
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static final class RouteDayKey {
+        private final String departureCity;
+        private final String arrivalCity;
+        private final LocalDate date;
+    }
+}
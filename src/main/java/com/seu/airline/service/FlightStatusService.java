@@ -0,0 +1,55 @@
+package com.seu.airline.service;
+
+import com.seu.airline.model.Flight;
+import com.seu.airline.model.OutboxEvent;
+import com.seu.airline.repository.FlightRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 航班状态服务
+ * 状态修改与发件箱事件在同一事务中写入，提交后由 OutboxService 通知该航班的乘客。
+ */
+@Service
+@Slf4j
+public class FlightStatusService {
+
+    @Autowired
+    private FlightRepository flightRepository;
+
+    @Autowired
+    private OutboxService outboxService;
+
+    /**
+     * 修改航班状态，状态未变化时不产生事件
+     * @param flightId 航班ID
+     * @param status 新状态
+     * @return 修改后的航班，航班不存在时返回 null
+     */
+    @Transactional
+    public Flight updateStatus(Long flightId, Flight.FlightStatus status) {
+        Flight flight = flightRepository.findById(flightId).orElse(null);
+        if (flight == null) {
+            return null;
+        }
+        Flight.FlightStatus previous = flight.getStatus();
+        flight.setStatus(status);
+        flight.setUpdatedAt(LocalDateTime.now());
+        flightRepository.save(flight);
+
+        if (previous != status) {
+            Map<String, Object> payload = new HashMap<>();
+            payload.put("previousStatus", previous != null ? previous.name() : null);
+            payload.put("status", status.name());
+            outboxService.publish(OutboxService.FLIGHT, flightId, OutboxEvent.EventType.FLIGHT_STATUS_CHANGED, payload);
+            log.info("航班 {} 状态由 {} 变更为 {}", flight.getFlightNumber(), previous, status);
+        }
+        return flight;
+    }
+}
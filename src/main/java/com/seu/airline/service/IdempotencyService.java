@@ -0,0 +1,171 @@
+package com.seu.airline.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.seu.airline.dto.ApiResponse;
+import com.seu.airline.dto.IdempotentResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 请求幂等处理（Idempotency-Key）
+ * 第一个携带某个幂等键的请求在 Redis 中登记“处理中”后执行，完成后把响应状态码和响应体保存到该键；
+ * 之后相同幂等键的请求直接重放保存的响应，不再访问数据库；并发到达的重复请求等待第一个请求完成后重放。
+ * 幂等键按用户和操作隔离；同一幂等键用于内容不同的请求时返回 422。
+ * 限流、服务繁忙等临时失败（429、5xx）和异常不保存，客户端可以用同一幂等键重试。
+ * Redis 不可用时直接执行请求（退化为无幂等保护）。
+ */
+@Service
+@Slf4j
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final String KEY_PREFIX = "idempotency:";
+
+    private static final int MAX_KEY_LENGTH = 128;
+
+    private static final long POLL_INTERVAL_MS = 50;
+
+    @Autowired
+    private RedisService redisService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${airline.idempotency.ttl-seconds:86400}")
+    private long ttlSeconds;
+
+    @Value("${airline.idempotency.processing-ttl-seconds:60}")
+    private long processingTtlSeconds;
+
+    @Value("${airline.idempotency.wait-ms:10000}")
+    private long waitMs;
+
+    /**
+     * 按幂等键执行请求；未携带幂等键时直接执行
+     * @param operation 操作名称（如 order.create），不同操作的幂等键互不影响
+     * @param userId 当前用户ID
+     * @param idempotencyKey 请求头中的幂等键
+     * @param request 请求内容（用于判断同一幂等键是否用于不同请求）
+     * @param action 实际处理请求的操作
+     */
+    public ResponseEntity<?> execute(String operation, Long userId, String idempotencyKey, Object request,
+                                     Supplier<ResponseEntity<?>> action) {
+        if (idempotencyKey == null || idempotencyKey.isEmpty()) {
+            return action.get();
+        }
+        if (idempotencyKey.length() > MAX_KEY_LENGTH) {
+            return ResponseEntity.badRequest().body(ApiResponse.error("幂等键过长"));
+        }
+        String key = KEY_PREFIX + operation + ":" + userId + ":" + idempotencyKey;
+        String fingerprint = fingerprint(request);
+
+        long deadline = System.currentTimeMillis() + waitMs;
+        while (true) {
+            boolean acquired;
+            Object stored = null;
+            try {
+                acquired = Boolean.TRUE.equals(redisService.setIfAbsent(key,
+                        new IdempotentResponse(false, fingerprint, 0, null), processingTtlSeconds, TimeUnit.SECONDS));
+                if (!acquired) {
+                    stored = redisService.get(key);
+                }
+            } catch (Exception e) {
+                log.warn("幂等键存储不可用，直接处理请求: {}", e.getMessage());
+                count(operation, "bypassed");
+                return action.get();
+            }
+            if (acquired) {
+                count(operation, "executed");
+                return executeAndStore(key, fingerprint, action);
+            }
+
+            if (stored instanceof IdempotentResponse) {
+                IdempotentResponse record = (IdempotentResponse) stored;
+                if (!fingerprint.equals(record.getFingerprint())) {
+                    count(operation, "mismatch");
+                    return ResponseEntity.unprocessableEntity().body(ApiResponse.error("该幂等键已用于其他请求"));
+                }
+                if (record.isCompleted()) {
+                    count(operation, "replayed");
+                    return ResponseEntity.status(record.getStatus())
+                            .header(REPLAYED_HEADER, "true")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .body(record.getBody());
+                }
+            }
+            // 第一个请求仍在处理（或刚失败删除了记录），稍后重新检查
+            if (System.currentTimeMillis() >= deadline) {
+                count(operation, "conflict");
+                return ResponseEntity.status(409).body(ApiResponse.error("相同请求正在处理中，请稍后重试"));
+            }
+            try {
+                Thread.sleep(POLL_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return ResponseEntity.status(409).body(ApiResponse.error("相同请求正在处理中，请稍后重试"));
+            }
+        }
+    }
+
+    private ResponseEntity<?> executeAndStore(String key, String fingerprint, Supplier<ResponseEntity<?>> action) {
+        ResponseEntity<?> response;
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            release(key);
+            throw e;
+        }
+        int status = response.getStatusCodeValue();
+        if (status == 429 || status >= 500) {
+            release(key);
+            return response;
+        }
+        try {
+            String body = objectMapper.writeValueAsString(response.getBody());
+            redisService.set(key, new IdempotentResponse(true, fingerprint, status, body), ttlSeconds, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            // 请求已执行，保留“处理中”记录直到过期：期间的重试返回 409，而不是再执行一次
+            log.warn("保存幂等响应失败: {}", e.getMessage());
+        }
+        return response;
+    }
+
+    private void release(String key) {
+        try {
+            redisService.delete(key);
+        } catch (Exception e) {
+            log.warn("删除幂等键失败，等待过期: {}", e.getMessage());
+        }
+    }
+
+    private String fingerprint(Object request) {
+        try {
+            byte[] bytes = objectMapper.writeValueAsString(request).getBytes(StandardCharsets.UTF_8);
+            return DigestUtils.md5DigestAsHex(bytes);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("请求内容无法序列化", e);
+        }
+    }
+
+    private void count(String operation, String result) {
+        meterRegistry.counter("idempotency.requests", "operation", operation, "result", result).increment();
+    }
+
+}
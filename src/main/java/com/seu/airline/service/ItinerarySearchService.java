@@ -0,0 +1,359 @@
+package com.seu.airline.service;
+
+import com.seu.airline.dto.FlightAvailability;
+import com.seu.airline.dto.FlightDTO;
+import com.seu.airline.dto.FlightSummary;
+import com.seu.airline.dto.ItineraryDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * 中转行程搜索服务
+ * 以机场为节点、航班为带时刻的边构建内存时间依赖图，搜索最多两次中转的行程。
+ * 搜索时保证最短中转时间，按“能否在剩余航段内到达目的城市”剪枝，
+ * 并只保留全程耗时最短的若干方案（超过当前最差方案耗时的路径直接放弃）。
+ * 图由航班搜索索引派生，索引版本变化后在下一次搜索时重建。
+ */
+@Service
+@Slf4j
+public class ItinerarySearchService {
+
+    public static final int MAX_STOPS = 2;
+
+    private static final Comparator<Candidate> RANKING = Comparator
+            .comparingLong((Candidate c) -> c.elapsedMinutes)
+            .thenComparingInt(c -> c.legs.length)
+            .thenComparing(c -> c.totalPrice);
+
+    @Autowired
+    private FlightSearchIndex flightSearchIndex;
+
+    @Autowired
+    private FlightAvailabilityService flightAvailabilityService;
+
+    @Value("${airline.search.itinerary.min-connection-minutes:60}")
+    private int minConnectionMinutes;
+
+    @Value("${airline.search.itinerary.max-connection-minutes:360}")
+    private int maxConnectionMinutes;
+
+    @Value("${airline.search.itinerary.max-results:20}")
+    private int maxResults;
+
+    private volatile FlightGraph graph;
+
+    /**
+     * 搜索指定日期出发的直飞及中转行程，按全程耗时、中转次数、总价排序
+     *
+     * @param maxStops 最多中转次数（0-2）
+     * @param limit    最多返回方案数
+     */
+    public List<ItineraryDTO> search(String departureCity, String arrivalCity, LocalDate date, int maxStops, int limit) {
+        FlightGraph g = currentGraph();
+        int[] origins = g.nodesOf(departureCity);
+        int[] targets = g.nodesOf(arrivalCity);
+        if (origins.length == 0 || targets.length == 0) {
+            return Collections.emptyList();
+        }
+
+        Search search = new Search(g, targets,
+                Math.max(0, Math.min(maxStops, MAX_STOPS)),
+                Math.max(1, Math.min(limit, maxResults)));
+        long dayStart = toMinutes(date.atStartOfDay());
+        for (int origin : origins) {
+            search.fromOrigin(origin, dayStart, dayStart + 24 * 60 - 1);
+        }
+        return search.results();
+    }
+
+    // 获取与索引版本一致的图，必要时重建
+    private FlightGraph currentGraph() {
+        FlightGraph g = graph;
+        if (g != null && g.version == flightSearchIndex.getVersion()) {
+            return g;
+        }
+        synchronized (this) {
+            long version = flightSearchIndex.getVersion();
+            g = graph;
+            if (g == null || g.version != version) {
+                long start = System.nanoTime();
+                g = FlightGraph.build(version, flightSearchIndex.getAll());
+                graph = g;
+                log.debug("中转搜索图重建完成：{} 个机场，耗时 {} ms",
+                        g.departures.length, (System.nanoTime() - start) / 1_000_000);
+            }
+            return g;
+        }
+    }
+
+    private static long toMinutes(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) / 60;
+    }
+
+    /**
+     * 单次搜索的状态：剪枝用的可达集合、当前路径和有界结果堆
+     */
+    private final class Search {
+        private final FlightGraph g;
+        private final BitSet targets = new BitSet();
+        // reach[k]：在 k 个航段内可到达目的城市的机场
+        private final BitSet[] reach = new BitSet[MAX_STOPS + 1];
+        private final int maxLegs;
+        private final int limit;
+        // 结果堆，堆顶为当前最差方案
+        private final PriorityQueue<Candidate> best;
+        private final Map<Long, FlightAvailability> availability = new HashMap<>();
+
+        private final FlightSummary[] path = new FlightSummary[MAX_STOPS + 1];
+        private final int[] visitedNodes = new int[MAX_STOPS + 2];
+
+        Search(FlightGraph g, int[] targetNodes, int maxStops, int limit) {
+            this.g = g;
+            this.maxLegs = maxStops + 1;
+            this.limit = limit;
+            this.best = new PriorityQueue<>(limit + 1, RANKING.reversed());
+            for (int target : targetNodes) {
+                targets.set(target);
+            }
+            reach[0] = new BitSet();
+            BitSet frontier = targets;
+            BitSet accumulated = new BitSet();
+            for (int k = 1; k <= MAX_STOPS; k++) {
+                BitSet next = new BitSet();
+                for (int n = frontier.nextSetBit(0); n >= 0; n = frontier.nextSetBit(n + 1)) {
+                    next.or(g.inbound[n]);
+                }
+                accumulated.or(next);
+                reach[k] = (BitSet) accumulated.clone();
+                frontier = next;
+            }
+        }
+
+        void fromOrigin(int origin, long from, long until) {
+            visitedNodes[0] = origin;
+            scan(origin, from, until, 0, Long.MIN_VALUE);
+        }
+
+        // 从 node 出发、起飞时间在 [from, until] 的航班中选择第 depth+1 段
+        private void scan(int node, long from, long until, int depth, long firstDeparture) {
+            long[] departures = g.departureMinutes[node];
+            for (int i = g.lowerBound(node, from); i < departures.length && departures[i] <= until; i++) {
+                long start = depth == 0 ? departures[i] : firstDeparture;
+                long arrival = g.arrivalMinutes[node][i];
+                if (arrival - start >= worstElapsed()) {
+                    continue;
+                }
+                int next = g.destinations[node][i];
+                if (revisits(next, depth)) {
+                    continue;
+                }
+                boolean isTarget = targets.get(next);
+                int legsLeft = maxLegs - depth - 1;
+                if (!isTarget && (legsLeft == 0 || !reach[legsLeft].get(next))) {
+                    continue;
+                }
+                FlightSummary leg = g.departures[node][i];
+                if (seatsOf(leg).getTotalAvailable() == 0) {
+                    continue;
+                }
+
+                path[depth] = leg;
+                if (isTarget) {
+                    offer(depth + 1, arrival - start);
+                } else {
+                    visitedNodes[depth + 1] = next;
+                    scan(next, arrival + minConnectionMinutes, arrival + maxConnectionMinutes, depth + 1, start);
+                }
+            }
+        }
+
+        // 不允许回到已经过的城市（含出发城市）
+        private boolean revisits(int node, int depth) {
+            String city = g.cityOfNode[node];
+            for (int i = 0; i <= depth; i++) {
+                if (g.cityOfNode[visitedNodes[i]].equals(city)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private long worstElapsed() {
+            return best.size() < limit ? Long.MAX_VALUE : best.peek().elapsedMinutes;
+        }
+
+        private void offer(int legCount, long elapsed) {
+            FlightSummary[] legs = Arrays.copyOf(path, legCount);
+            BigDecimal total = BigDecimal.ZERO;
+            for (FlightSummary leg : legs) {
+                total = total.add(seatsOf(leg).getMinPrice());
+            }
+            best.offer(new Candidate(legs, elapsed, total));
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+
+        private FlightAvailability seatsOf(FlightSummary leg) {
+            return availability.computeIfAbsent(leg.getId(), flightAvailabilityService::peek);
+        }
+
+        List<ItineraryDTO> results() {
+            List<Candidate> ranked = new ArrayList<>(best);
+            ranked.sort(RANKING);
+            List<ItineraryDTO> itineraries = new ArrayList<>(ranked.size());
+            for (Candidate candidate : ranked) {
+                List<FlightDTO> segments = new ArrayList<>(candidate.legs.length);
+                List<String> transferCities = new ArrayList<>();
+                for (int i = 0; i < candidate.legs.length; i++) {
+                    FlightSummary leg = candidate.legs[i];
+                    segments.add(new FlightDTO(leg, seatsOf(leg)));
+                    if (i < candidate.legs.length - 1) {
+                        transferCities.add(leg.getArrivalCity());
+                    }
+                }
+                itineraries.add(new ItineraryDTO(
+                        candidate.legs.length - 1,
+                        transferCities,
+                        segments.get(0).getDepartureTime(),
+                        segments.get(segments.size() - 1).getArrivalTime(),
+                        String.format("%dh %dm", candidate.elapsedMinutes / 60, candidate.elapsedMinutes % 60),
+                        candidate.totalPrice.doubleValue(),
+                        segments));
+            }
+            return itineraries;
+        }
+    }
+
+    private static final class Candidate {
+        final FlightSummary[] legs;
+        final long elapsedMinutes;
+        final BigDecimal totalPrice;
+
+        Candidate(FlightSummary[] legs, long elapsedMinutes, BigDecimal totalPrice) {
+            this.legs = legs;
+            this.elapsedMinutes = elapsedMinutes;
+            this.totalPrice = totalPrice;
+        }
+    }
+
+    /**
+     * 不可变的航班时刻图：每个机场的出港航班按起飞时间排序，时刻以分钟存放便于二分查找
+     */
+    private static final class FlightGraph {
+        final long version;
+        final Map<String, int[]> nodesByCity;
+        final String[] cityOfNode;
+        final FlightSummary[][] departures;
+        final long[][] departureMinutes;
+        final long[][] arrivalMinutes;
+        final int[][] destinations;
+        // inbound[n]：有直飞航班到达 n 的机场集合
+        final BitSet[] inbound;
+
+        private FlightGraph(long version, Map<String, int[]> nodesByCity, String[] cityOfNode,
+                FlightSummary[][] departures, long[][] departureMinutes, long[][] arrivalMinutes,
+                int[][] destinations, BitSet[] inbound) {
+            this.version = version;
+            this.nodesByCity = nodesByCity;
+            this.cityOfNode = cityOfNode;
+            this.departures = departures;
+            this.departureMinutes = departureMinutes;
+            this.arrivalMinutes = arrivalMinutes;
+            this.destinations = destinations;
+            this.inbound = inbound;
+        }
+
+        static FlightGraph build(long version, Collection<FlightSummary> flights) {
+            Map<Long, Integer> nodeByAirport = new HashMap<>();
+            List<String> cities = new ArrayList<>();
+            List<List<FlightSummary>> outgoing = new ArrayList<>();
+            for (FlightSummary flight : flights) {
+                if (flight.getDepartureAirportId() == null || flight.getArrivalAirportId() == null
+                        || flight.getDepartureTime() == null || flight.getArrivalTime() == null) {
+                    continue;
+                }
+                int from = nodeOf(flight.getDepartureAirportId(), flight.getDepartureCity(),
+                        nodeByAirport, cities, outgoing);
+                nodeOf(flight.getArrivalAirportId(), flight.getArrivalCity(), nodeByAirport, cities, outgoing);
+                outgoing.get(from).add(flight);
+            }
+
+            int size = cities.size();
+            String[] cityOfNode = cities.toArray(new String[0]);
+            FlightSummary[][] departures = new FlightSummary[size][];
+            long[][] departureMinutes = new long[size][];
+            long[][] arrivalMinutes = new long[size][];
+            int[][] destinations = new int[size][];
+            BitSet[] inbound = new BitSet[size];
+            for (int n = 0; n < size; n++) {
+                inbound[n] = new BitSet(size);
+            }
+            for (int n = 0; n < size; n++) {
+                List<FlightSummary> list = outgoing.get(n);
+                list.sort(Comparator.comparing(FlightSummary::getDepartureTime));
+                departures[n] = list.toArray(new FlightSummary[0]);
+                departureMinutes[n] = new long[list.size()];
+                arrivalMinutes[n] = new long[list.size()];
+                destinations[n] = new int[list.size()];
+                for (int i = 0; i < list.size(); i++) {
+                    FlightSummary flight = list.get(i);
+                    departureMinutes[n][i] = toMinutes(flight.getDepartureTime());
+                    arrivalMinutes[n][i] = toMinutes(flight.getArrivalTime());
+                    destinations[n][i] = nodeByAirport.get(flight.getArrivalAirportId());
+                    inbound[destinations[n][i]].set(n);
+                }
+            }
+
+            Map<String, List<Integer>> grouped = new HashMap<>();
+            for (int n = 0; n < size; n++) {
+                grouped.computeIfAbsent(cityOfNode[n], c -> new ArrayList<>()).add(n);
+            }
+            Map<String, int[]> nodesByCity = new HashMap<>();
+            grouped.forEach((city, nodes) -> nodesByCity.put(city, nodes.stream().mapToInt(Integer::intValue).toArray()));
+
+            return new FlightGraph(version, nodesByCity, cityOfNode, departures, departureMinutes,
+                    arrivalMinutes, destinations, inbound);
+        }
+
+        private static int nodeOf(Long airportId, String city, Map<Long, Integer> nodeByAirport,
+                List<String> cities, List<List<FlightSummary>> outgoing) {
+            Integer node = nodeByAirport.get(airportId);
+            if (node == null) {
+                node = cities.size();
+                nodeByAirport.put(airportId, node);
+                cities.add(city == null ? "" : city.trim());
+                outgoing.add(new ArrayList<>());
+            }
+            return node;
+        }
+
+        int[] nodesOf(String city) {
+            return nodesByCity.getOrDefault(city == null ? "" : city.trim(), new int[0]);
+        }
+
+        // 第一个起飞时间不早于 minute 的航班下标
+        int lowerBound(int node, long minute) {
+            long[] times = departureMinutes[node];
+            int low = 0;
+            int high = times.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (times[mid] < minute) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.seu.airline.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 订单号生成器（Snowflake 风格）
+ * 订单号为 ORD + 19 位十进制数字，数字由 41 位毫秒时间戳（自 2024-01-01 起）、10 位节点号和 12 位序号组成。
+ * 时间戳和序号打包在一个 AtomicLong 中用 CAS 推进，无锁、不访问数据库；
+ * 同一毫秒内序号用完或系统时钟回拨时借用下一毫秒，保证同一节点生成的订单号单调递增。
+ * 节点号优先使用配置值，未配置时在 Redis 中租用一个空闲节点号并定期续期，保证多实例之间不重复；
+ * 启动时 Redis 不可用或没有空闲节点号时暂用随机节点号，并在每次续期时重试租用，租到后切换。
+ */
+@Service
+@Slf4j
+public class OrderNumberGenerator {
+
+    private static final String PREFIX = "ORD";
+
+    // 2024-01-01T00:00:00Z
+    private static final long EPOCH = 1704067200000L;
+
+    private static final int NODE_BITS = 10;
+
+    private static final int SEQUENCE_BITS = 12;
+
+    private static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    // 数字部分固定宽度，订单号按字符串排序即按生成顺序排序
+    private static final int DIGITS = 19;
+
+    private static final String NODE_KEY_PREFIX = "order:number:node:";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${airline.order-number.node-id:-1}")
+    private int configuredNodeId;
+
+    @Value("${airline.order-number.node-lease-seconds:60}")
+    private long leaseSeconds;
+
+    // 高位为相对 EPOCH 的毫秒数，低 12 位为该毫秒内已用的序号
+    private final AtomicLong state = new AtomicLong();
+
+    private final String leaseOwner = UUID.randomUUID().toString();
+
+    private volatile long nodeBits;
+
+    private volatile String leasedKey;
+
+    @PostConstruct
+    public void init() {
+        int nodeId;
+        if (configuredNodeId >= 0) {
+            nodeId = configuredNodeId & MAX_NODE_ID;
+        } else {
+            Integer leased = leaseNodeId();
+            nodeId = leased != null ? leased : ThreadLocalRandom.current().nextInt(MAX_NODE_ID + 1);
+            if (leased == null) {
+                log.warn("暂用随机订单号节点号 {}（多实例下可能重复），续期时重试租用；多实例部署可配置 airline.order-number.node-id",
+                        nodeId);
+            }
+        }
+        nodeBits = (long) nodeId << SEQUENCE_BITS;
+        log.info("订单号生成器节点号: {}", nodeId);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        String key = leasedKey;
+        if (key != null) {
+            try {
+                if (leaseOwner.equals(stringRedisTemplate.opsForValue().get(key))) {
+                    stringRedisTemplate.delete(key);
+                }
+            } catch (Exception e) {
+                log.debug("释放订单号节点租约失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 生成下一个订单号
+     */
+    public String next() {
+        long id = nextId();
+        char[] chars = new char[PREFIX.length() + DIGITS];
+        PREFIX.getChars(0, PREFIX.length(), chars, 0);
+        for (int i = chars.length - 1; i >= PREFIX.length(); i--) {
+            chars[i] = (char) ('0' + id % 10);
+            id /= 10;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 生成下一个数字ID（时间戳 | 节点号 | 序号）
+     */
+    public long nextId() {
+        long now = System.currentTimeMillis() - EPOCH;
+        while (true) {
+            long current = state.get();
+            long timestamp = current >>> SEQUENCE_BITS;
+            long next;
+            if (now > timestamp) {
+                next = now << SEQUENCE_BITS;
+            } else if ((current & SEQUENCE_MASK) < SEQUENCE_MASK) {
+                // 同一毫秒（或时钟回拨后仍停留在已用的毫秒）内递增序号
+                next = current + 1;
+            } else {
+                // 序号用完，借用下一毫秒
+                next = (timestamp + 1) << SEQUENCE_BITS;
+            }
+            if (state.compareAndSet(current, next)) {
+                long nextTimestamp = next >>> SEQUENCE_BITS;
+                return (nextTimestamp << (NODE_BITS + SEQUENCE_BITS)) | nodeBits | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    /**
+     * 定期续期节点号租约；租约已丢失（如 Redis 数据被清空后被其他实例占用）或尚未租到时重新租用
+     */
+    @Scheduled(fixedDelayString = "${airline.order-number.node-renew-ms:20000}")
+    public void renewLease() {
+        if (configuredNodeId >= 0) {
+            return;
+        }
+        String key = leasedKey;
+        try {
+            if (key != null && leaseOwner.equals(stringRedisTemplate.opsForValue().get(key))) {
+                stringRedisTemplate.expire(key, Duration.ofSeconds(leaseSeconds));
+                return;
+            }
+        } catch (Exception e) {
+            log.warn("续期订单号节点租约失败: {}", e.getMessage());
+            return;
+        }
+        Integer nodeId = leaseNodeId();
+        if (nodeId != null) {
+            nodeBits = (long) nodeId << SEQUENCE_BITS;
+            log.warn("订单号节点租约{}，已租用节点号: {}", key != null ? "丢失" : "此前未租到", nodeId);
+        }
+    }
+
+    // 从随机位置开始依次尝试租用空闲节点号；Redis 不可用或没有空闲节点号时返回 null（leasedKey 置空，下次续期重试）
+    private Integer leaseNodeId() {
+        int start = ThreadLocalRandom.current().nextInt(MAX_NODE_ID + 1);
+        try {
+            for (int i = 0; i <= MAX_NODE_ID; i++) {
+                int nodeId = (start + i) & MAX_NODE_ID;
+                String key = NODE_KEY_PREFIX + nodeId;
+                if (Boolean.TRUE.equals(stringRedisTemplate.opsForValue()
+                        .setIfAbsent(key, leaseOwner, Duration.ofSeconds(leaseSeconds)))) {
+                    leasedKey = key;
+                    return nodeId;
+                }
+            }
+            log.warn("没有空闲的订单号节点号");
+        } catch (Exception e) {
+            log.warn("无法从 Redis 租用订单号节点号: {}", e.getMessage());
+        }
+        leasedKey = null;
+        return null;
+    }
+}
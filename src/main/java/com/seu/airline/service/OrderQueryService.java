@@ -0,0 +1,176 @@
+package com.seu.airline.service;
+
+import com.seu.airline.dto.OrderDTO;
+import com.seu.airline.dto.OrderPageDTO;
+import com.seu.airline.model.Order;
+import com.seu.airline.model.OrderSummary;
+import com.seu.airline.repository.OrderItemRepository;
+import com.seu.airline.repository.OrderRepository;
+import com.seu.airline.repository.OrderSummaryRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * 订单只读查询服务
+ * 订单列表和详情从订单摘要表（order_summaries，每个订单一行）读取，不加载订单、订单项、座位、航班和机场实体。
+ * 分页查询按创建时间倒序使用键集分页（游标为上一页最后一个订单的创建时间和ID），每页一次查询。
+ * 摘要缺失时（首次补建尚未完成、滚动发布期间旧版本实例写入的订单等）先由订单和订单项补写摘要再读取：
+ * 单个订单在未找到摘要时补写，列表在首次全量补建完成前按查询范围补写。
+ * 补写在各自的事务中提交，查询方法不开启外层事务，补写后的读取能看到新提交的摘要。
+ */
+@Service
+public class OrderQueryService {
+
+    @Autowired
+    private OrderSummaryRepository orderSummaryRepository;
+
+    @Autowired
+    private OrderSummaryService orderSummaryService;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate readOnly;
+
+    private static final int DEFAULT_PAGE_SIZE = 20;
+
+    private static final int MAX_PAGE_SIZE = 100;
+
+    @PostConstruct
+    public void init() {
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+    }
+
+    /**
+     * 查询用户的所有订单
+     */
+    public List<OrderDTO> listUserOrders(Long userId) {
+        if (!orderSummaryService.isBackfilled()) {
+            orderSummaryService.backfillUser(userId);
+        }
+        return toDTOs(orderSummaryRepository.findByUserIdOrderByOrderIdAsc(userId));
+    }
+
+    /**
+     * 按创建时间倒序分页查询用户订单
+     * @param userId 用户ID
+     * @param cursor 上一页返回的游标，查询第一页时为 null
+     * @param size 每页订单数（为空时取默认值，超过上限时取上限）
+     */
+    public OrderPageDTO listUserOrders(Long userId, String cursor, Integer size) {
+        if (!orderSummaryService.isBackfilled()) {
+            orderSummaryService.backfillUser(userId);
+        }
+        int pageSize = size == null || size <= 0 ? DEFAULT_PAGE_SIZE : Math.min(size, MAX_PAGE_SIZE);
+        // 多取一条判断是否还有下一页
+        PageRequest page = PageRequest.of(0, pageSize + 1);
+        List<OrderSummary> orders;
+        if (cursor == null || cursor.isEmpty()) {
+            orders = orderSummaryRepository.findPageByUserId(userId, page);
+        } else {
+            String[] parts = decodeCursor(cursor);
+            orders = orderSummaryRepository.findPageByUserIdBefore(userId, LocalDateTime.parse(parts[0]),
+                    Long.valueOf(parts[1]), page);
+        }
+
+        boolean hasMore = orders.size() > pageSize;
+        if (hasMore) {
+            orders = orders.subList(0, pageSize);
+        }
+        String nextCursor = hasMore ? encodeCursor(orders.get(orders.size() - 1)) : null;
+        return new OrderPageDTO(toDTOs(orders), nextCursor, hasMore);
+    }
+
+    /**
+     * 查询订单详情，订单不存在时返回 null
+     */
+    public OrderDTO getOrder(Long orderId) {
+        Optional<OrderSummary> summary = orderSummaryRepository.findById(orderId);
+        if (summary.isPresent()) {
+            return new OrderDTO(summary.get());
+        }
+
+        // 摘要缺失：补写后重新读取，补写失败时直接由订单和订单项生成
+        orderSummaryService.backfillOrders(Collections.singletonList(orderId));
+        summary = orderSummaryRepository.findById(orderId);
+        if (summary.isPresent()) {
+            return new OrderDTO(summary.get());
+        }
+        return readOnly.execute(status -> orderRepository.findById(orderId)
+                .map(order -> new OrderDTO(order, orderItemRepository.findByOrderId(orderId)))
+                .orElse(null));
+    }
+
+    /**
+     * 查询所有订单（管理员）
+     */
+    public List<OrderDTO> listAllOrders() {
+        if (!orderSummaryService.isBackfilled()) {
+            orderSummaryService.backfill();
+        }
+        return toDTOs(orderSummaryRepository.findAllByOrderByOrderIdAsc());
+    }
+
+    /**
+     * 查询特定状态的订单（管理员）
+     */
+    public List<OrderDTO> listOrdersByStatus(Order.OrderStatus status) {
+        if (!orderSummaryService.isBackfilled()) {
+            orderSummaryService.backfillStatus(status);
+        }
+        return toDTOs(orderSummaryRepository.findByStatusOrderByOrderIdAsc(status));
+    }
+
+    /**
+     * 查询指定时间段内创建的订单（管理员）
+     */
+    public List<OrderDTO> listOrdersCreatedBetween(LocalDateTime start, LocalDateTime end) {
+        if (!orderSummaryService.isBackfilled()) {
+            orderSummaryService.backfillCreatedBetween(start, end);
+        }
+        return toDTOs(orderSummaryRepository.findByCreatedAtBetweenOrderByOrderIdAsc(start, end));
+    }
+
+    private static List<OrderDTO> toDTOs(List<OrderSummary> summaries) {
+        return summaries.stream().map(OrderDTO::new).collect(Collectors.toList());
+    }
+
+    // 游标为 "创建时间,订单ID" 的 URL 安全 Base64 编码，对客户端不透明
+    private static String encodeCursor(OrderSummary last) {
+        String value = last.getCreatedAt() + "," + last.getOrderId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodeCursor(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(",");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException();
+            }
+            LocalDateTime.parse(parts[0]);
+            Long.valueOf(parts[1]);
+            return parts;
+        } catch (RuntimeException e) {
+            throw new RuntimeException("无效的分页游标");
+        }
+    }
+}
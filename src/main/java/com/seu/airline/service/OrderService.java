@@ -0,0 +1,210 @@
+package com.seu.airline.service;
+
+import com.seu.airline.dto.OrderCreateRequest;
+import com.seu.airline.dto.OrderDTO;
+import com.seu.airline.dto.OrderItemRequest;
+import com.seu.airline.dto.SeatTransition;
+import com.seu.airline.model.Order;
+import com.seu.airline.model.OrderItem;
+import com.seu.airline.model.OutboxEvent;
+import com.seu.airline.model.Seat;
+import com.seu.airline.model.User;
+import com.seu.airline.repository.OrderItemRepository;
+import com.seu.airline.repository.OrderRepository;
+import com.seu.airline.repository.SeatRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 订单服务
+ */
+@Service
+@Slf4j
+public class OrderService {
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+
+    @Autowired
+    private SeatRepository seatRepository;
+
+    @Autowired
+    private FlightAvailabilityService flightAvailabilityService;
+
+    @Autowired
+    private SeatHoldExpiryService seatHoldExpiryService;
+
+    @Autowired
+    private SeatMapService seatMapService;
+
+    @Autowired
+    private OrderNumberGenerator orderNumberGenerator;
+
+    @Autowired
+    private OrderSummaryService orderSummaryService;
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    private OrderStateMachine orderStateMachine;
+
+    // 自动分配座位时，选出的座位在数据库中已被占用后重新选择的最大次数
+    private static final int MAX_ASSIGN_ATTEMPTS = 3;
+
+    /**
+     * 创建订单
+     * 用一条条件更新语句一次性占住所有座位（只有仍可售的座位会被占用），
+     * 占到的座位数少于请求数时抛出异常，整个事务回滚，不会留下部分占座或订单。
+     * 乘客都未指定座位时，按 flightId 和 seatType 在内存座位图中为同行乘客分配相邻座位后再占座。
+     * @param userId 下单用户ID
+     * @param request 下单请求
+     * @return 订单DTO
+     */
+    @Transactional
+    public OrderDTO createOrder(Long userId, OrderCreateRequest request) {
+        List<OrderItemRequest> items = request.getItems();
+        if (items == null || items.isEmpty()) {
+            throw new RuntimeException("订单中没有乘客座位");
+        }
+        boolean autoAssign = items.stream().allMatch(item -> item.getSeatId() == null);
+        List<Long> assigned = autoAssign ? assignAdjacentSeats(request, items.size()) : null;
+
+        Set<Long> seatIds = new LinkedHashSet<>();
+        for (int i = 0; i < items.size(); i++) {
+            OrderItemRequest item = items.get(i);
+            Long seatId = autoAssign ? assigned.get(i) : item.getSeatId();
+            if (seatId == null || !seatIds.add(seatId)) {
+                throw new RuntimeException("座位选择无效或重复");
+            }
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        int claimed = seatRepository.reserveAvailableSeats(seatIds, now);
+        if (claimed != seatIds.size()) {
+            log.info("用户 {} 下单占座失败：请求 {} 个座位，仅占到 {} 个", userId, seatIds.size(), claimed);
+            throw new RuntimeException("座位已被占用");
+        }
+
+        Map<Long, Seat> seats = seatRepository.findByIdIn(seatIds).stream()
+                .collect(Collectors.toMap(Seat::getId, Function.identity()));
+
+        // 使用前端传递的总金额(包含额外服务费用等)，未传递时按座位价格计算
+        BigDecimal totalAmount = request.getTotalAmount();
+        if (totalAmount == null || totalAmount.compareTo(BigDecimal.ZERO) <= 0) {
+            totalAmount = seats.values().stream().map(Seat::getPrice).reduce(BigDecimal.ZERO, BigDecimal::add);
+        }
+
+        Order order = new Order();
+        order.setOrderNumber(orderNumberGenerator.next());
+        User user = new User();
+        user.setId(userId);
+        order.setUser(user);
+        order.setStatus(Order.OrderStatus.PENDING);
+        order.setTotalAmount(totalAmount);
+        order.setCreatedAt(now);
+        order.setUpdatedAt(now);
+        Order savedOrder = orderRepository.save(order);
+
+        List<OrderItem> orderItems = new ArrayList<>(items.size());
+        List<SeatTransition> transitions = new ArrayList<>(items.size());
+        Iterator<Long> seatIdIterator = seatIds.iterator();
+        for (OrderItemRequest item : items) {
+            Seat seat = seats.get(seatIdIterator.next());
+            OrderItem orderItem = new OrderItem();
+            orderItem.setOrder(savedOrder);
+            orderItem.setSeat(seat);
+            orderItem.setPassengerName(item.getPassengerName());
+            orderItem.setPassengerIdCard(item.getPassengerIdCard());
+            orderItem.setPrice(seat.getPrice());
+            orderItem.setCreatedAt(now);
+            orderItems.add(orderItem);
+            transitions.add(SeatTransition.of(seat, Seat.SeatStatus.AVAILABLE));
+        }
+        orderItemRepository.saveAll(orderItems);
+        orderSummaryService.create(savedOrder, orderItems);
+        outboxService.publish(OutboxService.ORDER, savedOrder.getId(), OutboxEvent.EventType.ORDER_CREATED, null);
+        flightAvailabilityService.recordTransitions(transitions);
+        // 登记座位保留到期（事务回滚时订单不存在，到期处理不会命中任何订单）
+        seatHoldExpiryService.scheduleHold(savedOrder.getId(), now);
+
+        return new OrderDTO(savedOrder, orderItems);
+    }
+
+    /**
+     * 取消待支付订单并释放其座位
+     * 由订单状态机用条件更新切换状态，已支付、已取消或已超时的订单不会被重复处理。
+     * @param orderId 订单ID
+     * @return 取消后的订单
+     */
+    @Transactional
+    public Order cancelOrder(Long orderId) {
+        if (orderStateMachine.cancel(orderId, LocalDateTime.now(), null, OutboxEvent.EventType.ORDER_CANCELLED) < 0) {
+            throw new RuntimeException("只能取消待支付的订单");
+        }
+        return orderRepository.findById(orderId).orElseThrow(() -> new RuntimeException("订单不存在"));
+    }
+
+    /**
+     * 支付待支付订单并将其座位置为已出票
+     * 由订单状态机用条件更新切换状态（与超时取消互斥）。
+     * @param orderId 订单ID
+     * @param paymentMethod 支付方式（为空时不修改）
+     * @return 订单DTO
+     */
+    @Transactional
+    public OrderDTO payOrder(Long orderId, String paymentMethod) {
+        List<OrderItem> orderItems = orderStateMachine.pay(orderId, paymentMethod, LocalDateTime.now());
+        if (orderItems == null) {
+            throw new RuntimeException("订单已处理或已超时");
+        }
+        Order order = orderRepository.findById(orderId).orElseThrow(() -> new RuntimeException("订单不存在"));
+        return new OrderDTO(order, orderItems);
+    }
+
+    /**
+     * 为同行乘客分配相邻座位
+     * 内存座位图只用于快速选座，选出的座位在数据库中加行锁核对，已被占用的排除后重新选择；
+     * 核对通过的座位在本事务结束前不会被其他订单占用。
+     */
+    private List<Long> assignAdjacentSeats(OrderCreateRequest request, int count) {
+        if (request.getFlightId() == null || request.getSeatType() == null) {
+            throw new RuntimeException("未选择座位时需要指定航班和舱位");
+        }
+        Seat.SeatType seatType;
+        try {
+            seatType = Seat.SeatType.valueOf(request.getSeatType().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("无效的座位类型: " + request.getSeatType());
+        }
+
+        Set<Long> unavailable = new HashSet<>();
+        for (int attempt = 0; attempt < MAX_ASSIGN_ATTEMPTS; attempt++) {
+            List<Long> candidate = seatMapService.allocateAdjacentSeats(request.getFlightId(), seatType, count,
+                    unavailable);
+            if (candidate == null) {
+                throw new RuntimeException("该舱位剩余座位不足");
+            }
+            List<Long> taken = seatRepository.lockByIdIn(candidate).stream()
+                    .filter(seat -> seat.getStatus() != Seat.SeatStatus.AVAILABLE)
+                    .map(Seat::getId)
+                    .collect(Collectors.toList());
+            if (taken.isEmpty()) {
+                return candidate;
+            }
+            unavailable.addAll(taken);
+        }
+        throw new RuntimeException("座位已被占用");
+    }
+}
@@ -0,0 +1,155 @@
+package com.seu.airline.service;
+
+import com.seu.airline.dto.SeatTransition;
+import com.seu.airline.model.Order;
+import com.seu.airline.model.OrderItem;
+import com.seu.airline.model.OutboxEvent;
+import com.seu.airline.model.Seat;
+import com.seu.airline.repository.OrderItemRepository;
+import com.seu.airline.repository.OrderRepository;
+import com.seu.airline.repository.SeatRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 订单状态机
+ * 订单状态转换统一用条件更新完成：UPDATE ... WHERE id = ? AND status = 期望的当前状态，
+ * 更新行数为 0 说明订单已被其他请求处理（如支付与超时取消并发），调用方据此判断而不是先读后写；
+ * 不加悲观锁，更新语句本身持有的行锁只到所在事务结束。
+ * 状态变化后该订单的座位用一条语句批量更新，并在同一事务中同步订单摘要、写入发件箱事件。
+ * 支付和超时取消都以 当前时间 - 保留时长 为界，同一时刻只有其中一个能命中。
+ */
+@Service
+@Slf4j
+public class OrderStateMachine {
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+
+    @Autowired
+    private SeatRepository seatRepository;
+
+    @Autowired
+    private FlightAvailabilityService flightAvailabilityService;
+
+    @Autowired
+    private OrderSummaryService orderSummaryService;
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Value("${airline.booking.hold-minutes:30}")
+    private long holdMinutes;
+
+    /**
+     * 取消待支付订单并释放其预留座位（需在事务中调用）
+     * @param orderId 订单ID
+     * @param now 当前时间
+     * @param createdBefore 不为空时只取消创建时间不晚于该时间的订单（超时取消）
+     * @param eventType 发件箱事件类型（ORDER_CANCELLED / ORDER_EXPIRED）
+     * @return 释放的座位数；订单已不是待支付（或尚未超时）时返回 -1
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int cancel(Long orderId, LocalDateTime now, LocalDateTime createdBefore, OutboxEvent.EventType eventType) {
+        int updated = createdBefore == null
+                ? transition(orderId, Order.OrderStatus.PENDING, Order.OrderStatus.CANCELLED, now)
+                : orderRepository.expirePending(Collections.singletonList(orderId), createdBefore, now);
+        if (updated == 0) {
+            return -1;
+        }
+
+        List<Seat> seats = seatRepository.findReservedByOrderIds(Collections.singletonList(orderId));
+        int released = 0;
+        if (!seats.isEmpty()) {
+            released = seatRepository.releaseReservedSeats(seats.stream().map(Seat::getId).collect(Collectors.toList()), now);
+            flightAvailabilityService.recordTransitions(seats.stream()
+                    .map(seat -> SeatTransition.of(seat, Seat.SeatStatus.RESERVED, Seat.SeatStatus.AVAILABLE))
+                    .collect(Collectors.toList()));
+        }
+        orderSummaryService.updateStatus(Collections.singletonList(orderId), Order.OrderStatus.CANCELLED, now);
+        outboxService.publish(OutboxService.ORDER, orderId, eventType, null);
+        return released;
+    }
+
+    /**
+     * 批量取消已超时的待支付订单并释放其预留座位（需在事务中调用）
+     * 先查出候选订单，再用一条条件更新取消；期间有订单被支付或取消（更新行数与候选数不一致）时抛出异常，
+     * 整个事务回滚，由调用方改为逐个取消。座位释放、订单摘要和发件箱事件都按批写入。
+     * @param orderIds 订单ID
+     * @param now 当前时间
+     * @param createdBefore 只取消创建时间不晚于该时间的订单
+     * @return 取消的订单数和释放的座位数
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int[] expire(Collection<Long> orderIds, LocalDateTime now, LocalDateTime createdBefore) {
+        List<Long> expired = orderRepository.findExpiredPendingIds(orderIds, createdBefore);
+        if (expired.isEmpty()) {
+            return new int[] { 0, 0 };
+        }
+        if (orderRepository.expirePending(expired, createdBefore, now) != expired.size()) {
+            throw new RuntimeException("批量取消期间有订单已被其他请求处理");
+        }
+
+        List<Seat> seats = seatRepository.findReservedByOrderIds(expired);
+        int released = 0;
+        if (!seats.isEmpty()) {
+            released = seatRepository.releaseReservedSeats(seats.stream().map(Seat::getId).collect(Collectors.toList()), now);
+            flightAvailabilityService.recordTransitions(seats.stream()
+                    .map(seat -> SeatTransition.of(seat, Seat.SeatStatus.RESERVED, Seat.SeatStatus.AVAILABLE))
+                    .collect(Collectors.toList()));
+        }
+        orderSummaryService.updateStatus(expired, Order.OrderStatus.CANCELLED, now);
+        outboxService.publishAll(OutboxService.ORDER, expired, OutboxEvent.EventType.ORDER_EXPIRED);
+        return new int[] { expired.size(), released };
+    }
+
+    /**
+     * 支付待支付订单并将其座位置为已出票（需在事务中调用）
+     * 订单已超过保留时长时不予支付（即使超时取消尚未执行）；有座位不再处于预留状态时抛出异常，整个事务回滚。
+     * @param orderId 订单ID
+     * @param paymentMethod 支付方式（为空时不修改）
+     * @param now 当前时间
+     * @return 订单项；订单已不是待支付或已超时时返回 null
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<OrderItem> pay(Long orderId, String paymentMethod, LocalDateTime now) {
+        if (orderRepository.payPending(orderId, paymentMethod, now.minusMinutes(holdMinutes), now) == 0) {
+            return null;
+        }
+
+        List<OrderItem> orderItems = orderItemRepository.findByOrderId(orderId);
+        List<Long> seatIds = orderItems.stream().map(item -> item.getSeat().getId()).collect(Collectors.toList());
+        if (seatRepository.occupyReservedSeats(seatIds, now) != seatIds.size()) {
+            throw new RuntimeException("订单座位状态异常，请联系客服");
+        }
+        flightAvailabilityService.recordTransitions(orderItems.stream()
+                .map(item -> SeatTransition.of(item.getSeat(), Seat.SeatStatus.RESERVED, Seat.SeatStatus.OCCUPIED))
+                .collect(Collectors.toList()));
+        orderSummaryService.markPaid(orderId, now);
+        outboxService.publish(OutboxService.ORDER, orderId, OutboxEvent.EventType.ORDER_PAID, null);
+        return orderItems;
+    }
+
+    /**
+     * 把订单从 from 状态切换到 to 状态，返回实际更新的行数（0 表示订单已不处于 from 状态）
+     */
+    private int transition(Long orderId, Order.OrderStatus from, Order.OrderStatus to, LocalDateTime now) {
+        if (!from.canTransitionTo(to)) {
+            throw new IllegalStateException("不允许的订单状态转换：" + from + " -> " + to);
+        }
+        return orderRepository.transition(orderId, from, to, now);
+    }
+}
@@ -0,0 +1,279 @@
+package com.seu.airline.service;
+
+import com.seu.airline.dto.FlightSummary;
+import com.seu.airline.dto.OrderItemRow;
+import com.seu.airline.dto.OrderRow;
+import com.seu.airline.event.FlightUpdatedEvent;
+import com.seu.airline.model.Flight;
+import com.seu.airline.model.Order;
+import com.seu.airline.model.OrderItem;
+import com.seu.airline.model.OrderSummary;
+import com.seu.airline.repository.OrderItemRepository;
+import com.seu.airline.repository.OrderRepository;
+import com.seu.airline.repository.OrderSummaryRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 订单摘要读模型维护
+ * 订单列表和详情展示的字段（航班号、起降城市、时刻、舱位、乘客）下单后基本不变，
+ * 下单时在同一事务中把这些字段连同订单状态写成一行摘要，订单状态变化时在同一事务中同步更新，
+ * 航班信息修改后批量刷新该航班的摘要；读取订单只需查询一张表的一行。
+ * 启动时和之后定期为尚无摘要的订单补建摘要（历史订单、滚动发布期间旧版本实例写入的订单、上次补建放弃的订单）；
+ * 补建只选择还没有摘要的订单，可与线上下单和其他实例的补建同时进行，
+ * 某一批与其他实例补建的摘要主键冲突时整批回滚后重新查询，不会中止补建。
+ * 首次全量补建完成前，查询方按查询范围（单个订单、用户、状态、时间段）先补写缺失的摘要再读取。
+ */
+@Service
+@Slf4j
+public class OrderSummaryService implements CommandLineRunner {
+
+    private static final int BACKFILL_BATCH_SIZE = 500;
+
+    // 连续冲突超过该次数时放弃本次补建（其他实例正在补建，剩余的由其完成或下次启动时继续）
+    private static final int MAX_BACKFILL_CONFLICTS = 10;
+
+    @Autowired
+    private OrderSummaryRepository orderSummaryRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // 是否已完成一次全量补建（完成前查询方需先补写查询范围内缺失的摘要）
+    private volatile boolean backfilled = false;
+
+    @Override
+    public void run(String... args) {
+        backfill();
+    }
+
+    /**
+     * 定期补建，补上滚动发布期间旧版本实例写入的订单和此前补建放弃的订单
+     */
+    @Scheduled(initialDelayString = "${airline.order-summary.backfill-interval-ms:60000}",
+            fixedDelayString = "${airline.order-summary.backfill-interval-ms:60000}")
+    public void scheduledBackfill() {
+        backfill();
+    }
+
+    /**
+     * 是否已完成一次全量补建
+     */
+    public boolean isBackfilled() {
+        return backfilled;
+    }
+
+    /**
+     * 下单时写入订单摘要（需在下单事务中调用，订单项的座位应已抓取航班和起降机场）
+     * @param order 已保存的订单
+     * @param orderItems 订单项
+     */
+    public OrderSummary create(Order order, List<OrderItem> orderItems) {
+        OrderRow row = new OrderRow(order.getId(), order.getOrderNumber(), order.getUser().getId(),
+                order.getTotalAmount(), order.getStatus(), order.getCreatedAt(), order.getPaymentTime());
+        List<OrderItemRow> items = orderItems.stream().map(item -> {
+            Flight flight = item.getSeat().getFlight();
+            return new OrderItemRow(order.getId(), item.getPassengerName(), item.getPassengerIdCard(),
+                    item.getSeat().getSeatType(), flight.getId(), flight.getFlightNumber(),
+                    flight.getDepartureAirport() != null ? flight.getDepartureAirport().getCity() : null,
+                    flight.getArrivalAirport() != null ? flight.getArrivalAirport().getCity() : null,
+                    flight.getDepartureTime(), flight.getArrivalTime());
+        }).collect(Collectors.toList());
+        OrderSummary summary = toSummary(row, items, order.getUpdatedAt());
+        // 主键为订单ID，直接插入（不经过 save 的先查询后合并）
+        entityManager.persist(summary);
+        return summary;
+    }
+
+    /**
+     * 同步订单状态（需在修改订单状态的事务中调用）
+     */
+    public void updateStatus(Collection<Long> orderIds, Order.OrderStatus status, LocalDateTime now) {
+        if (!orderIds.isEmpty()) {
+            orderSummaryRepository.updateStatus(orderIds, status, now);
+        }
+    }
+
+    /**
+     * 同步支付（需在支付事务中调用）
+     */
+    public void markPaid(Long orderId, LocalDateTime now) {
+        orderSummaryRepository.markPaid(orderId, now);
+    }
+
+    /**
+     * 航班号、起降城市或时刻修改后刷新该航班的订单摘要
+     */
+    @EventListener
+    public void onFlightUpdated(FlightUpdatedEvent event) {
+        FlightSummary previous = event.getPrevious();
+        FlightSummary current = event.getCurrent();
+        if (previous == null || current == null || !flightChanged(previous, current)) {
+            return;
+        }
+        try {
+            Integer updated = new TransactionTemplate(transactionManager).execute(status ->
+                    orderSummaryRepository.updateFlight(current.getId(), current.getFlightNumber(),
+                            current.getDepartureCity(), current.getArrivalCity(),
+                            current.getDepartureTime(), current.getArrivalTime()));
+            log.info("航班 {} 信息变化，刷新订单摘要 {} 条", current.getId(), updated);
+        } catch (Exception e) {
+            log.error("刷新航班 {} 的订单摘要失败", current.getId(), e);
+        }
+    }
+
+    /**
+     * 为尚无摘要的订单补建摘要（按批次，每批一个事务）
+     */
+    public void backfill() {
+        if (backfill(orderSummaryRepository::findOrderIdsWithoutSummary, "全部订单")) {
+            backfilled = true;
+        }
+    }
+
+    /**
+     * 为指定订单中尚无摘要的订单补写摘要
+     */
+    public void backfillOrders(Collection<Long> orderIds) {
+        if (!orderIds.isEmpty()) {
+            backfill(page -> orderSummaryRepository.findOrderIdsWithoutSummaryIn(orderIds, page), "订单 " + orderIds);
+        }
+    }
+
+    /**
+     * 为用户尚无摘要的订单补写摘要
+     */
+    public void backfillUser(Long userId) {
+        backfill(page -> orderSummaryRepository.findOrderIdsWithoutSummaryByUserId(userId, page), "用户 " + userId);
+    }
+
+    /**
+     * 为特定状态尚无摘要的订单补写摘要
+     */
+    public void backfillStatus(Order.OrderStatus status) {
+        backfill(page -> orderSummaryRepository.findOrderIdsWithoutSummaryByStatus(status, page), "状态 " + status);
+    }
+
+    /**
+     * 为指定时间段内创建、尚无摘要的订单补写摘要
+     */
+    public void backfillCreatedBetween(LocalDateTime start, LocalDateTime end) {
+        backfill(page -> orderSummaryRepository.findOrderIdsWithoutSummaryCreatedBetween(start, end, page),
+                "时间段 " + start + " ~ " + end);
+    }
+
+    // 按批次补建 missingIds 选出的订单的摘要，全部补建完成时返回 true
+    private boolean backfill(Function<Pageable, List<Long>> missingIds, String scope) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        int total = 0;
+        int conflicts = 0;
+        while (true) {
+            Integer created;
+            try {
+                created = transactionTemplate.execute(status -> {
+                    List<Long> orderIds = missingIds.apply(PageRequest.of(0, BACKFILL_BATCH_SIZE));
+                    if (orderIds.isEmpty()) {
+                        return 0;
+                    }
+                    createFromRows(orderIds);
+                    return orderIds.size();
+                });
+            } catch (DataIntegrityViolationException e) {
+                // 其他实例已为这一批中的订单建了摘要：整批已回滚，重新查询时这些订单不会再被选中
+                if (++conflicts > MAX_BACKFILL_CONFLICTS) {
+                    log.warn("补建订单摘要（{}）与其他实例持续冲突，已补建 {} 条，停止本次补建", scope, total);
+                    return false;
+                }
+                log.debug("补建订单摘要与其他实例冲突，重新查询: {}", e.getMessage());
+                continue;
+            } catch (Exception e) {
+                log.error("补建订单摘要（{}）失败，已补建 {} 条，下次补建时继续", scope, total, e);
+                return false;
+            }
+            conflicts = 0;
+            if (created == null || created == 0) {
+                break;
+            }
+            total += created;
+        }
+        if (total > 0) {
+            log.info("补建订单摘要（{}）{} 条", scope, total);
+        }
+        return true;
+    }
+
+    // 由订单和订单项的只读投影创建摘要（每批两次查询）
+    private void createFromRows(List<Long> orderIds) {
+        Map<Long, List<OrderItemRow>> itemsByOrder = orderItemRepository.findRowsByOrderIdIn(orderIds).stream()
+                .collect(Collectors.groupingBy(OrderItemRow::getOrderId));
+        LocalDateTime now = LocalDateTime.now();
+        for (OrderRow order : orderRepository.findRowsByIdIn(orderIds)) {
+            entityManager.persist(toSummary(order,
+                    itemsByOrder.getOrDefault(order.getId(), Collections.emptyList()), now));
+        }
+    }
+
+    // 航班和舱位取第一个订单项（与 OrderDTO 一致）
+    private static OrderSummary toSummary(OrderRow order, List<OrderItemRow> items, LocalDateTime updatedAt) {
+        OrderSummary summary = new OrderSummary();
+        summary.setOrderId(order.getId());
+        summary.setOrderNumber(order.getOrderNumber());
+        summary.setUserId(order.getUserId());
+        summary.setStatus(order.getStatus() != null ? order.getStatus() : Order.OrderStatus.PENDING);
+        summary.setTotalAmount(order.getTotalAmount());
+        summary.setCreatedAt(order.getCreatedAt());
+        summary.setPaymentTime(order.getPaymentTime());
+        summary.setUpdatedAt(updatedAt);
+        if (!items.isEmpty()) {
+            OrderItemRow firstItem = items.get(0);
+            summary.setFlightId(firstItem.getFlightId());
+            summary.setFlightNumber(firstItem.getFlightNumber());
+            summary.setDepartureCity(firstItem.getDepartureCity());
+            summary.setArrivalCity(firstItem.getArrivalCity());
+            summary.setDepartureTime(firstItem.getDepartureTime());
+            summary.setArrivalTime(firstItem.getArrivalTime());
+            summary.setSeatType(firstItem.getSeatType());
+        }
+        summary.setPassengers(items.stream()
+                .map(item -> new OrderSummary.Passenger(item.getPassengerName(), item.getPassengerIdCard()))
+                .collect(Collectors.toList()));
+        return summary;
+    }
+
+    private static boolean flightChanged(FlightSummary previous, FlightSummary current) {
+        return !Objects.equals(previous.getFlightNumber(), current.getFlightNumber())
+                || !Objects.equals(previous.getDepartureCity(), current.getDepartureCity())
+                || !Objects.equals(previous.getArrivalCity(), current.getArrivalCity())
+                || !Objects.equals(previous.getDepartureTime(), current.getDepartureTime())
+                || !Objects.equals(previous.getArrivalTime(), current.getArrivalTime());
+    }
+}
@@ -0,0 +1,435 @@
+package com.seu.airline.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.seu.airline.model.Flight;
+import com.seu.airline.model.Message;
+import com.seu.airline.model.Order;
+import com.seu.airline.model.OrderSummary;
+import com.seu.airline.model.OutboxEvent;
+import com.seu.airline.repository.MessageRepository;
+import com.seu.airline.repository.OrderSummaryRepository;
+import com.seu.airline.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 事务发件箱
+ * 订单创建、支付、取消、超时和航班状态变化时，在同一事务中向 outbox_events 写入一条事件（请求路径上只多一条 INSERT），
+ * 事务提交后唤醒后台分发线程，另有定时轮询兜底（进程崩溃、唤醒丢失时事件仍在表中，重启后继续分发）。
+ * 分发线程按主键顺序批量领取到期事件（FOR UPDATE SKIP LOCKED，多实例互不重复），转换为站内消息批量写入，
+ * 消息写入与事件标记为已分发在同一事务中完成；整批失败时逐条重试，失败的事件按指数退避稍后重试，
+ * 超过最大次数后标记为 FAILED 等待人工处理。新的通知渠道在 deliver 中接入。
+ */
+@Service
+@Slf4j
+public class OutboxService {
+
+    public static final String ORDER = "ORDER";
+
+    public static final String FLIGHT = "FLIGHT";
+
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    private static final TypeReference<Map<String, Object>> PAYLOAD_TYPE = new TypeReference<Map<String, Object>>() {
+    };
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private OrderSummaryRepository orderSummaryRepository;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${airline.outbox.batch-size:100}")
+    private int batchSize;
+
+    @Value("${airline.outbox.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${airline.outbox.retry-delay-ms:10000}")
+    private long retryDelayMs;
+
+    @Value("${airline.outbox.retention-hours:72}")
+    private long retentionHours;
+
+    @Value("${airline.booking.hold-minutes:30}")
+    private long holdMinutes;
+
+    private ExecutorService dispatcher;
+
+    private TransactionTemplate transactionTemplate;
+
+    private final AtomicBoolean wakeRequested = new AtomicBoolean();
+
+    private Timer dispatchLag;
+
+    @PostConstruct
+    public void init() {
+        dispatcher = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "outbox-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        dispatchLag = Timer.builder("outbox.dispatch.lag")
+                .description("事件从写入到分发完成的延迟").register(meterRegistry);
+        Gauge.builder("outbox.failed", outboxEventRepository, repository -> repository.countByStatus(OutboxEvent.Status.FAILED))
+                .description("多次分发失败、等待人工处理的事件数").register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdownNow();
+    }
+
+    /**
+     * 写入一条事件（必须在产生该事件的业务事务中调用，事务回滚则事件一同回滚）
+     * @param aggregateType 聚合类型（ORDER / FLIGHT）
+     * @param aggregateId 订单ID或航班ID
+     * @param eventType 事件类型
+     * @param payload 事件内容，可为 null
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void publish(String aggregateType, Long aggregateId, OutboxEvent.EventType eventType, Map<String, Object> payload) {
+        outboxEventRepository.save(newEvent(aggregateType, aggregateId, eventType, payload, LocalDateTime.now()));
+        wakeUpAfterCommit();
+    }
+
+    /**
+     * 为多个聚合写入同类型、无内容的事件（批量取消等场景，一次 saveAll 写入）
+     * @param aggregateType 聚合类型（ORDER / FLIGHT）
+     * @param aggregateIds 订单ID或航班ID
+     * @param eventType 事件类型
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void publishAll(String aggregateType, Collection<Long> aggregateIds, OutboxEvent.EventType eventType) {
+        if (aggregateIds.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<OutboxEvent> events = new ArrayList<>(aggregateIds.size());
+        for (Long aggregateId : aggregateIds) {
+            events.add(newEvent(aggregateType, aggregateId, eventType, null, now));
+        }
+        outboxEventRepository.saveAll(events);
+        wakeUpAfterCommit();
+    }
+
+    private OutboxEvent newEvent(String aggregateType, Long aggregateId, OutboxEvent.EventType eventType,
+                                 Map<String, Object> payload, LocalDateTime now) {
+        OutboxEvent event = new OutboxEvent();
+        event.setAggregateType(aggregateType);
+        event.setAggregateId(aggregateId);
+        event.setEventType(eventType);
+        event.setPayload(payload != null ? toJson(payload) : null);
+        event.setCreatedAt(now);
+        event.setNextAttemptAt(now);
+        return event;
+    }
+
+    // 事务提交后唤醒分发线程
+    private void wakeUpAfterCommit() {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                wakeUp();
+            }
+        });
+    }
+
+    /**
+     * 定时轮询兜底（唤醒丢失、重试到期、其他实例写入后崩溃等情况）
+     */
+    @Scheduled(fixedDelayString = "${airline.outbox.poll-interval-ms:2000}")
+    public void poll() {
+        wakeUp();
+    }
+
+    /**
+     * 清理分发完成超过保留时长的事件
+     */
+    @Scheduled(fixedDelayString = "${airline.outbox.purge-interval-ms:3600000}")
+    public void purge() {
+        try {
+            Integer deleted = transactionTemplate.execute(status ->
+                    outboxEventRepository.deleteDispatchedBefore(LocalDateTime.now().minusHours(retentionHours)));
+            if (deleted != null && deleted > 0) {
+                log.info("清理已分发的发件箱事件 {} 条", deleted);
+            }
+        } catch (Exception e) {
+            log.warn("清理发件箱事件失败: {}", e.getMessage());
+        }
+    }
+
+    // 分发只在单个线程中执行，多次唤醒合并为一次
+    private void wakeUp() {
+        if (wakeRequested.compareAndSet(false, true)) {
+            dispatcher.execute(() -> {
+                wakeRequested.set(false);
+                drain();
+            });
+        }
+    }
+
+    private void drain() {
+        try {
+            while (dispatchBatch() >= batchSize) {
+                // 整批领满说明可能还有积压，继续领取下一批
+            }
+        } catch (Exception e) {
+            log.error("发件箱分发失败，等待下次轮询", e);
+        }
+    }
+
+    // 领取并分发一批事件，返回领取的事件数
+    private int dispatchBatch() {
+        List<Long> claimedIds = new ArrayList<>();
+        try {
+            Integer claimed = transactionTemplate.execute(status -> {
+                List<OutboxEvent> events = outboxEventRepository.lockDue(LocalDateTime.now(), PageRequest.of(0, batchSize));
+                events.forEach(event -> claimedIds.add(event.getId()));
+                if (!events.isEmpty()) {
+                    deliver(events);
+                }
+                return events.size();
+            });
+            return claimed != null ? claimed : 0;
+        } catch (Exception e) {
+            if (claimedIds.isEmpty()) {
+                throw e;
+            }
+            log.warn("发件箱批量分发失败，逐条重试 {} 个事件: {}", claimedIds.size(), e.getMessage());
+        }
+
+        // 整批回滚后逐条分发，找出失败的事件
+        for (Long id : claimedIds) {
+            try {
+                transactionTemplate.execute(status -> {
+                    List<OutboxEvent> events = outboxEventRepository.lockPendingById(id);
+                    if (!events.isEmpty()) {
+                        deliver(events);
+                    }
+                    return null;
+                });
+            } catch (Exception e) {
+                recordFailure(id, e);
+            }
+        }
+        return claimedIds.size();
+    }
+
+    // 把事件转换为各渠道的通知并标记为已分发（与通知写入在同一事务中）
+    private void deliver(List<OutboxEvent> events) {
+        messageRepository.saveAll(toMessages(events));
+
+        LocalDateTime now = LocalDateTime.now();
+        for (OutboxEvent event : events) {
+            event.setStatus(OutboxEvent.Status.DISPATCHED);
+            event.setDispatchedAt(now);
+            dispatchLag.record(Duration.between(event.getCreatedAt(), now));
+        }
+        meterRegistry.counter("outbox.events", "result", "dispatched").increment(events.size());
+    }
+
+    private void recordFailure(Long id, Exception error) {
+        try {
+            transactionTemplate.execute(status -> {
+                OutboxEvent event = outboxEventRepository.findById(id).orElse(null);
+                if (event == null || event.getStatus() != OutboxEvent.Status.PENDING) {
+                    return null;
+                }
+                int attempts = event.getAttempts() + 1;
+                event.setAttempts(attempts);
+                event.setLastError(truncate(String.valueOf(error.getMessage()), 500));
+                if (attempts >= maxAttempts) {
+                    event.setStatus(OutboxEvent.Status.FAILED);
+                    meterRegistry.counter("outbox.events", "result", "failed").increment();
+                    log.error("发件箱事件 {}（{}）分发失败 {} 次，已放弃", id, event.getEventType(), attempts, error);
+                } else {
+                    // 指数退避，最长一小时
+                    long delayMs = Math.min(retryDelayMs << Math.min(attempts - 1, 16), TimeUnit.HOURS.toMillis(1));
+                    event.setNextAttemptAt(LocalDateTime.now().plusNanos(TimeUnit.MILLISECONDS.toNanos(delayMs)));
+                    meterRegistry.counter("outbox.events", "result", "retried").increment();
+                    log.warn("发件箱事件 {}（{}）第 {} 次分发失败，{} ms 后重试: {}",
+                            id, event.getEventType(), attempts, delayMs, error.getMessage());
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("记录发件箱事件 {} 的失败状态失败", id, e);
+        }
+    }
+
+    // 订单事件通知下单用户；航班状态事件通知该航班上待支付和已支付订单的用户（每个订单一条）
+    private List<Message> toMessages(List<OutboxEvent> events) {
+        List<Long> orderIds = events.stream()
+                .filter(event -> ORDER.equals(event.getAggregateType()))
+                .map(OutboxEvent::getAggregateId)
+                .distinct()
+                .collect(Collectors.toList());
+        Map<Long, OrderSummary> orders = orderIds.isEmpty() ? Collections.emptyMap()
+                : orderSummaryRepository.findAllById(orderIds).stream()
+                        .collect(Collectors.toMap(OrderSummary::getOrderId, Function.identity()));
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Message> messages = new ArrayList<>();
+        for (OutboxEvent event : events) {
+            if (event.getEventType() == OutboxEvent.EventType.FLIGHT_STATUS_CHANGED) {
+                Map<String, Object> payload = fromJson(event.getPayload());
+                Flight.FlightStatus status = Flight.FlightStatus.valueOf(String.valueOf(payload.get("status")));
+                List<OrderSummary> affected = orderSummaryRepository.findByFlightIdAndStatusIn(event.getAggregateId(),
+                        Arrays.asList(Order.OrderStatus.PENDING, Order.OrderStatus.PAID));
+                for (OrderSummary order : affected) {
+                    messages.add(flightMessage(order, status, now));
+                }
+                continue;
+            }
+            OrderSummary order = orders.get(event.getAggregateId());
+            if (order == null) {
+                log.warn("发件箱事件 {} 对应的订单 {} 不存在，跳过通知", event.getId(), event.getAggregateId());
+                continue;
+            }
+            messages.add(orderMessage(order, event.getEventType(), now));
+        }
+        return messages;
+    }
+
+    private Message orderMessage(OrderSummary order, OutboxEvent.EventType eventType, LocalDateTime now) {
+        String title;
+        String content;
+        int priority = 1;
+        switch (eventType) {
+            case ORDER_CREATED:
+                title = "订单创建成功";
+                content = "您的订单 " + order.getOrderNumber() + "（" + describeFlight(order) + "）已创建，请在 "
+                        + holdMinutes + " 分钟内完成支付。";
+                break;
+            case ORDER_PAID:
+                title = "订单支付成功";
+                content = "您的订单 " + order.getOrderNumber() + " 已支付成功，请准时登机。";
+                priority = 2;
+                break;
+            case ORDER_CANCELLED:
+                title = "订单已取消";
+                content = "您的订单 " + order.getOrderNumber() + " 已取消，座位已释放。";
+                break;
+            default:
+                title = "订单超时已取消";
+                content = "您的订单 " + order.getOrderNumber() + " 超时未支付，已自动取消。";
+                priority = 2;
+                break;
+        }
+        return newMessage(order.getUserId(), title, content, "ORDER", order.getOrderId(), priority, now);
+    }
+
+    private Message flightMessage(OrderSummary order, Flight.FlightStatus status, LocalDateTime now) {
+        String content = "您预订的航班 " + describeFlight(order) + " 状态已变更为：" + statusLabel(status) + "。";
+        if (status == Flight.FlightStatus.CANCELLED) {
+            content += "如需改签或退票请联系客服。";
+        }
+        int priority = status == Flight.FlightStatus.CANCELLED || status == Flight.FlightStatus.DELAYED ? 3 : 2;
+        return newMessage(order.getUserId(), "航班状态变更", content, "FLIGHT", order.getFlightId(), priority, now);
+    }
+
+    private static Message newMessage(Long userId, String title, String content, String messageType,
+                                      Long relatedId, int priority, LocalDateTime now) {
+        Message message = new Message();
+        message.setUserId(userId);
+        message.setTitle(title);
+        message.setContent(content);
+        message.setMessageType(messageType);
+        message.setRelatedId(relatedId);
+        message.setPriority(priority);
+        message.setCreatedAt(now);
+        message.setUpdatedAt(now);
+        return message;
+    }
+
+    private static String describeFlight(OrderSummary order) {
+        String departureTime = order.getDepartureTime() != null ? order.getDepartureTime().format(TIME_FORMATTER) : "";
+        return order.getFlightNumber() + " " + order.getDepartureCity() + "→" + order.getArrivalCity()
+                + " " + departureTime;
+    }
+
+    private static String statusLabel(Flight.FlightStatus status) {
+        switch (status) {
+            case SCHEDULED:
+                return "计划";
+            case DELAYED:
+                return "延误";
+            case CANCELLED:
+                return "取消";
+            case DEPARTED:
+                return "已起飞";
+            default:
+                return "已到达";
+        }
+    }
+
+    private String toJson(Map<String, Object> payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("事件内容序列化失败", e);
+        }
+    }
+
+    private Map<String, Object> fromJson(String payload) {
+        if (payload == null) {
+            return Collections.emptyMap();
+        }
+        try {
+            return objectMapper.readValue(payload, PAYLOAD_TYPE);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("事件内容解析失败", e);
+        }
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+}
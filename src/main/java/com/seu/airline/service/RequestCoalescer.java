@@ -0,0 +1,83 @@
+package com.seu.airline.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 请求合并（single-flight）
+ * 同一时刻对同一键的多个请求只执行一次计算，其余请求等待并共享该结果（包括异常）。
+ * 计算结束后立即移除，不做缓存；返回的结果会被多个请求共享，调用方不应修改。
+ */
+@Service
+public class RequestCoalescer {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 执行或加入对同一键正在进行的计算
+     *
+     * @param name   业务名称（用于指标标签，如 flight.search）
+     * @param key    请求参数组成的键
+     * @param loader 实际计算
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String name, String key, Supplier<T> loader) {
+        String flightKey = name + ":" + key;
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(flightKey, future);
+
+        if (existing != null) {
+            counter(name, "collapsed").increment();
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                throw unwrap(e);
+            }
+        }
+
+        counter(name, "executed").increment();
+        try {
+            T result = loader.get();
+            future.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } catch (Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(flightKey, future);
+        }
+    }
+
+    private Counter counter(String name, String result) {
+        return Counter.builder("request.coalescer.calls")
+                .tag("name", name)
+                .tag("result", result)
+                .description("请求合并调用次数，result=collapsed 表示被合并的请求")
+                .register(meterRegistry);
+    }
+
+    private static RuntimeException unwrap(CompletionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return e;
+    }
+}
@@ -0,0 +1,266 @@
+package com.seu.airline.service;
+
+import com.seu.airline.model.OutboxEvent;
+import com.seu.airline.repository.OrderRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 座位保留到期服务
+ * 待支付订单在创建时登记到时间轮（哈希时间轮，每个槽位按到期刻度取模），启动时从 PENDING 订单重建。
+ * 每个刻度推进时间轮，取出到期订单，按批次在一个事务内由订单状态机用一条条件更新取消，并批量释放其 RESERVED 座位；
+ * 批量取消失败（如期间有订单被支付）时改为每个订单一个事务逐个取消，失败的订单单独延后重试，不影响同批其他订单。
+ * 订单在到期前已支付或已取消时，条件更新不会命中，无需从时间轮中删除。
+ * 时间轮只在登记订单的实例上，实例宕机后其订单不会再出队，因此另有低频扫描按创建时间查出
+ * 所有实例上已超时的待支付订单并取消；与时间轮重复处理同一订单时条件更新只有一次命中。
+ */
+@Service
+@Slf4j
+public class SeatHoldExpiryService implements CommandLineRunner {
+
+    // 处理失败的批次延后重试的时间
+    private static final long RETRY_DELAY_MS = 60_000;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderStateMachine orderStateMachine;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${airline.booking.hold-minutes:30}")
+    private long holdMinutes;
+
+    @Value("${airline.booking.expiry-tick-ms:1000}")
+    private long tickMs;
+
+    @Value("${airline.booking.expiry-batch-size:200}")
+    private int batchSize;
+
+    private TimingWheel wheel;
+
+    private TransactionTemplate transactionTemplate;
+
+    private Counter expiredOrders;
+
+    private Counter releasedSeats;
+
+    @PostConstruct
+    public void init() {
+        wheel = new TimingWheel(tickMs, System.currentTimeMillis());
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        expiredOrders = Counter.builder("booking.hold.expired.orders")
+                .description("因超时未支付被自动取消的订单数").register(meterRegistry);
+        releasedSeats = Counter.builder("booking.hold.released.seats")
+                .description("因订单超时释放的座位数（按分钟取速率即每分钟释放座位数）").register(meterRegistry);
+        Gauge.builder("booking.hold.pending", wheel, TimingWheel::size)
+                .description("时间轮中等待到期的订单数").register(meterRegistry);
+    }
+
+    @Override
+    public void run(String... args) {
+        List<OrderRepository.PendingHoldView> holds = orderRepository.findPendingHolds();
+        for (OrderRepository.PendingHoldView hold : holds) {
+            LocalDateTime createdAt = hold.getCreatedAt() != null ? hold.getCreatedAt() : LocalDateTime.now();
+            scheduleHold(hold.getId(), createdAt);
+        }
+        log.info("座位保留到期队列重建完成：{} 个待支付订单", holds.size());
+    }
+
+    /**
+     * 座位保留时长（分钟）
+     */
+    public long getHoldMinutes() {
+        return holdMinutes;
+    }
+
+    /**
+     * 登记待支付订单，在 createdAt + 保留时长 后自动取消
+     */
+    public void scheduleHold(Long orderId, LocalDateTime createdAt) {
+        long deadline = createdAt.plusMinutes(holdMinutes).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        wheel.add(orderId, deadline);
+    }
+
+    /**
+     * 推进时间轮并处理到期订单
+     */
+    @Scheduled(fixedDelayString = "${airline.booking.expiry-tick-ms:1000}")
+    public void tick() {
+        List<Long> due = wheel.advance(System.currentTimeMillis());
+        for (int from = 0; from < due.size(); from += batchSize) {
+            List<Long> batch = due.subList(from, Math.min(from + batchSize, due.size()));
+            try {
+                expireOrders(batch);
+            } catch (Exception e) {
+                log.error("超时订单批量取消失败，{} 个订单稍后重试", batch.size(), e);
+                long retryAt = System.currentTimeMillis() + RETRY_DELAY_MS;
+                batch.forEach(orderId -> wheel.add(orderId, retryAt));
+            }
+        }
+    }
+
+    /**
+     * 兜底扫描：取消所有已超时仍待支付的订单（包括已宕机实例登记的订单）
+     */
+    @Scheduled(initialDelayString = "${airline.booking.expiry-sweep-ms:300000}",
+            fixedDelayString = "${airline.booking.expiry-sweep-ms:300000}")
+    public void sweep() {
+        LocalDateTime createdBefore = LocalDateTime.now().minusMinutes(holdMinutes);
+        long afterId = 0;
+        int expired = 0;
+        while (true) {
+            List<Long> batch = orderRepository.findExpiredPendingIdsAfter(createdBefore, afterId,
+                    PageRequest.of(0, batchSize));
+            if (batch.isEmpty()) {
+                break;
+            }
+            try {
+                expired += expireOrders(batch);
+            } catch (Exception e) {
+                log.error("超时订单兜底扫描取消失败，{} 个订单等待下次扫描", batch.size(), e);
+            }
+            afterId = batch.get(batch.size() - 1);
+        }
+        if (expired > 0) {
+            log.info("超时订单兜底扫描取消 {} 个订单", expired);
+        }
+    }
+
+    /**
+     * 取消指定订单中已超时且仍为待支付的订单并释放其座位
+     * 先在一个事务内批量取消（超时期限在语句中判断）；批量事务失败时逐个订单各自一个事务取消，
+     * 仍失败的订单延后重试。已被支付或取消的订单更新不到任何行，直接跳过。
+     * @param orderIds 订单ID
+     * @return 实际取消的订单数
+     */
+    public int expireOrders(List<Long> orderIds) {
+        int[] result;
+        try {
+            result = transactionTemplate.execute(status -> {
+                LocalDateTime now = LocalDateTime.now();
+                return orderStateMachine.expire(orderIds, now, now.minusMinutes(holdMinutes));
+            });
+        } catch (RuntimeException e) {
+            log.warn("超时订单批量取消失败，改为逐个取消：{} 个订单，原因：{}", orderIds.size(), e.getMessage());
+            result = expireEach(orderIds);
+        }
+
+        if (result == null || result[0] == 0) {
+            return 0;
+        }
+        expiredOrders.increment(result[0]);
+        releasedSeats.increment(result[1]);
+        log.info("自动取消超时订单 {} 个，释放座位 {} 个", result[0], result[1]);
+        return result[0];
+    }
+
+    // 每个订单一个事务逐个取消，单个订单失败只延后重试该订单
+    private int[] expireEach(List<Long> orderIds) {
+        int cancelled = 0;
+        int released = 0;
+        for (Long orderId : orderIds) {
+            try {
+                Integer seats = transactionTemplate.execute(status -> {
+                    LocalDateTime now = LocalDateTime.now();
+                    return orderStateMachine.cancel(orderId, now, now.minusMinutes(holdMinutes),
+                            OutboxEvent.EventType.ORDER_EXPIRED);
+                });
+                if (seats != null && seats >= 0) {
+                    cancelled++;
+                    released += seats;
+                }
+            } catch (RuntimeException e) {
+                log.error("超时订单取消失败，稍后重试：orderId={}", orderId, e);
+                wheel.add(orderId, System.currentTimeMillis() + RETRY_DELAY_MS);
+            }
+        }
+        return new int[] { cancelled, released };
+    }
+
+    /**
+     * 哈希时间轮：槽位数为 2 的幂，订单按到期刻度放入对应槽位，
+     * 推进到某刻度时只检查该槽位，到期刻度不晚于当前刻度的条目出队，其余条目等待下一圈。
+     */
+    private static final class TimingWheel {
+        private static final int WHEEL_SIZE = 512;
+        private static final int MASK = WHEEL_SIZE - 1;
+
+        private final List<List<HoldEntry>> slots = new ArrayList<>(WHEEL_SIZE);
+        private final long tickMs;
+        private final long startMillis;
+
+        // 下一个待处理的刻度
+        private long currentTick;
+        private int size;
+
+        TimingWheel(long tickMs, long startMillis) {
+            this.tickMs = tickMs;
+            this.startMillis = startMillis;
+            for (int i = 0; i < WHEEL_SIZE; i++) {
+                slots.add(new ArrayList<>());
+            }
+        }
+
+        synchronized void add(Long orderId, long deadlineMillis) {
+            // 向上取整，保证不会早于到期时间触发；已过期的条目在下一次推进时处理
+            long tick = Math.max(Math.floorDiv(deadlineMillis - startMillis + tickMs - 1, tickMs), currentTick);
+            slots.get((int) (tick & MASK)).add(new HoldEntry(orderId, tick));
+            size++;
+        }
+
+        synchronized List<Long> advance(long nowMillis) {
+            List<Long> due = new ArrayList<>();
+            long nowTick = Math.floorDiv(nowMillis - startMillis, tickMs);
+            // 停顿超过一圈时每个槽位只需检查一次（每个槽位在窗口内的刻度即该槽位不超过当前时间的最大刻度）
+            if (nowTick - currentTick >= WHEEL_SIZE) {
+                currentTick = nowTick - WHEEL_SIZE + 1;
+            }
+            while (currentTick <= nowTick) {
+                long tick = currentTick;
+                slots.get((int) (tick & MASK)).removeIf(entry -> {
+                    if (entry.deadlineTick > tick) {
+                        return false;
+                    }
+                    due.add(entry.orderId);
+                    return true;
+                });
+                currentTick++;
+            }
+            size -= due.size();
+            return due;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+    }
+
+    @AllArgsConstructor
+    private static final class HoldEntry {
+        private final Long orderId;
+        private final long deadlineTick;
+    }
+}
@@ -0,0 +1,289 @@
+package com.seu.airline.service;
+
+import com.seu.airline.dto.SeatDTO;
+import com.seu.airline.dto.SeatTransition;
+import com.seu.airline.event.FlightAvailabilityChangedEvent;
+import com.seu.airline.model.Seat;
+import com.seu.airline.repository.SeatRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 跨实例座位库存守卫（Redis）
+ * 有订票请求的航班在 Redis 中保存一个座位哈希（座位ID -> 0 可售 / 1 已占 / c:时间 下单中占用），
+ * 下单前用一个 Lua 脚本原子地检查并占用全部所选座位，任一座位已占用则整单拒绝，不进入 MySQL 事务。
+ * 数据库仍是唯一可信来源：守卫只做快速拒绝，占用成功后仍由条件更新最终占座；
+ * 事务提交后的座位状态变化（任何实例的下单、取消、支付、超时释放）同步到哈希，
+ * 事务失败时由调用方释放守卫中的占用。哈希在最近一次占用后一段时间无访问即过期（只守卫热点航班），
+ * 启动时和定期与 seats 表对账，修正重启、Redis 数据丢失或直接改库造成的偏差。
+ * 守卫只允许错放（交给数据库条件更新拒绝），不允许错拒：从数据库快照加载时不把哈希中已有的座位改为已占
+ * （快照读取之后提交的释放可能已经写入哈希），下单中的占用超过时限（实例崩溃未释放）视为可售。
+ * Redis 不可用时放行，由数据库兜底。
+ */
+@Service
+@Slf4j
+public class SeatInventoryGuard implements CommandLineRunner {
+
+    private static final String KEY_PREFIX = "seat:guard:";
+
+    // 正在守卫的航班ID集合，对账时遍历
+    private static final String FLIGHTS_KEY = KEY_PREFIX + "flights";
+
+    // 加载期间占位的字段：哈希因此已存在，加载期间提交的状态变化照常写入，不会被快照覆盖
+    private static final String LOADING_FIELD = "loading";
+
+    // KEYS: 涉及航班的座位哈希；ARGV[1]: 过期秒数，ARGV[2]: 当前毫秒时间，ARGV[3]: 早于该时间的下单中占用视为已失效，
+    // ARGV[4..]: 座位ID。返回 1 全部占用成功，0 有座位已被占用（不做任何修改），-1 有座位不在守卫中
+    private static final RedisScript<Long> CLAIM_SCRIPT = new DefaultRedisScript<>(
+            "local owners = {}\n" +
+            "for i = 4, #ARGV do\n" +
+            "  local found = false\n" +
+            "  for _, key in ipairs(KEYS) do\n" +
+            "    local v = redis.call('HGET', key, ARGV[i])\n" +
+            "    if v then\n" +
+            "      local expired = string.sub(v, 1, 2) == 'c:' and tonumber(string.sub(v, 3)) < tonumber(ARGV[3])\n" +
+            "      if v ~= '0' and not expired then return 0 end\n" +
+            "      owners[i] = key\n" +
+            "      found = true\n" +
+            "      break\n" +
+            "    end\n" +
+            "  end\n" +
+            "  if not found then return -1 end\n" +
+            "end\n" +
+            "for i = 4, #ARGV do redis.call('HSET', owners[i], ARGV[i], 'c:' .. ARGV[2]) end\n" +
+            "for _, key in ipairs(KEYS) do redis.call('EXPIRE', key, ARGV[1]) end\n" +
+            "return 1", Long.class);
+
+    // KEYS: 涉及航班的座位哈希；ARGV: 座位ID。只释放守卫中存在的座位
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "for i = 1, #ARGV do\n" +
+            "  for _, key in ipairs(KEYS) do\n" +
+            "    if redis.call('HEXISTS', key, ARGV[i]) == 1 then\n" +
+            "      redis.call('HSET', key, ARGV[i], '0')\n" +
+            "      break\n" +
+            "    end\n" +
+            "  end\n" +
+            "end\n" +
+            "return 1", Long.class);
+
+    // KEYS[1]: 航班座位哈希；ARGV: 座位ID, 状态, 座位ID, 状态...。哈希不存在（航班未被守卫）时忽略
+    private static final RedisScript<Long> APPLY_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end\n" +
+            "for i = 1, #ARGV, 2 do redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1]) end\n" +
+            "return 1", Long.class);
+
+    // KEYS[1]: 航班座位哈希；ARGV[1]: 占位过期秒数。哈希不存在时写入加载占位字段
+    private static final RedisScript<Long> MARK_LOADING_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 1 then return 0 end\n" +
+            "redis.call('HSET', KEYS[1], '" + LOADING_FIELD + "', '1')\n" +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1])\n" +
+            "return 1", Long.class);
+
+    // KEYS[1]: 航班座位哈希，KEYS[2]: 守卫航班集合；ARGV[1]: 航班ID，ARGV[2]: 默认过期秒数，
+    // ARGV[3]: 是否只在哈希存在时对账，ARGV[4]: 读取快照前已失效的下单中占用的时间上限，ARGV[5..]: 座位ID, 状态...。
+    // 快照只把座位修正为可售、补充哈希中没有的座位或替换已失效的下单中占用，不把其他已有座位改为已占；
+    // 保留原有剩余过期时间
+    private static final RedisScript<Long> LOAD_SCRIPT = new DefaultRedisScript<>(
+            "local ttl = redis.call('TTL', KEYS[1])\n" +
+            "if ARGV[3] == '1' and ttl < 0 then\n" +
+            "  redis.call('SREM', KEYS[2], ARGV[1])\n" +
+            "  return 0\n" +
+            "end\n" +
+            "if ttl < 0 or redis.call('HDEL', KEYS[1], '" + LOADING_FIELD + "') == 1 then ttl = tonumber(ARGV[2]) end\n" +
+            "local staleBefore = tonumber(ARGV[4])\n" +
+            "for i = 5, #ARGV, 2 do\n" +
+            "  local v = redis.call('HGET', KEYS[1], ARGV[i])\n" +
+            "  if ARGV[i + 1] == '0' or not v\n" +
+            "      or (string.sub(v, 1, 2) == 'c:' and tonumber(string.sub(v, 3)) < staleBefore) then\n" +
+            "    redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1])\n" +
+            "  end\n" +
+            "end\n" +
+            "if #ARGV >= 5 then\n" +
+            "  redis.call('EXPIRE', KEYS[1], ttl)\n" +
+            "  redis.call('SADD', KEYS[2], ARGV[1])\n" +
+            "else\n" +
+            "  redis.call('DEL', KEYS[1])\n" +
+            "  redis.call('SREM', KEYS[2], ARGV[1])\n" +
+            "end\n" +
+            "return 1", Long.class);
+
+    /**
+     * 占用结果
+     */
+    public enum ClaimResult {
+        // 守卫中已占用，事务失败时需要调用 release
+        CLAIMED,
+        // 有座位已被占用，应直接拒绝
+        REJECTED,
+        // 航班未被守卫或 Redis 不可用，交给数据库判断
+        BYPASSED
+    }
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private SeatRepository seatRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${airline.seat-guard.enabled:true}")
+    private boolean enabled;
+
+    @Value("${airline.seat-guard.idle-ttl-seconds:1800}")
+    private long idleTtlSeconds;
+
+    @Value("${airline.seat-guard.claim-timeout-ms:60000}")
+    private long claimTimeoutMs;
+
+    @Override
+    public void run(String... args) {
+        reconcile();
+    }
+
+    /**
+     * 原子地占用所选座位
+     * 航班尚未被守卫时从 seats 表加载后重试一次
+     * @param flightIds 座位所属的航班
+     * @param seatIds 所选座位
+     */
+    public ClaimResult tryClaim(Collection<Long> flightIds, Collection<Long> seatIds) {
+        if (!enabled || flightIds.isEmpty() || seatIds.isEmpty()) {
+            return ClaimResult.BYPASSED;
+        }
+        try {
+            long result = claim(flightIds, seatIds);
+            if (result < 0) {
+                flightIds.forEach(flightId -> load(flightId, false));
+                result = claim(flightIds, seatIds);
+            }
+            ClaimResult claimResult = result > 0 ? ClaimResult.CLAIMED
+                    : result == 0 ? ClaimResult.REJECTED : ClaimResult.BYPASSED;
+            meterRegistry.counter("seat.guard.claims", "result", claimResult.name().toLowerCase()).increment();
+            return claimResult;
+        } catch (Exception e) {
+            log.warn("Redis 座位守卫不可用，交给数据库判断: {}", e.getMessage());
+            meterRegistry.counter("seat.guard.claims", "result", "error").increment();
+            return ClaimResult.BYPASSED;
+        }
+    }
+
+    /**
+     * 释放守卫中的占用（占用成功但下单事务失败时调用）
+     */
+    public void release(Collection<Long> flightIds, Collection<Long> seatIds) {
+        try {
+            stringRedisTemplate.execute(RELEASE_SCRIPT, keysOf(flightIds), toArgs(seatIds));
+        } catch (Exception e) {
+            log.warn("释放 Redis 座位守卫失败，等待对账修正: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 把本实例已提交的座位状态变化同步到守卫（其他实例转发来的变化已由提交的实例同步）
+     */
+    @EventListener
+    public void onAvailabilityChanged(FlightAvailabilityChangedEvent event) {
+        if (!enabled || event.isRemote() || event.getTransitions().isEmpty()) {
+            return;
+        }
+        Map<Long, List<String>> argsByFlight = new HashMap<>();
+        for (SeatTransition transition : event.getTransitions()) {
+            List<String> args = argsByFlight.computeIfAbsent(transition.getFlightId(), id -> new ArrayList<>());
+            args.add(String.valueOf(transition.getSeatId()));
+            args.add(transition.getTo() == Seat.SeatStatus.AVAILABLE ? "0" : "1");
+        }
+        try {
+            argsByFlight.forEach((flightId, args) -> stringRedisTemplate.execute(APPLY_SCRIPT,
+                    keysOf(Collections.singletonList(flightId)), args.toArray()));
+        } catch (Exception e) {
+            log.warn("同步 Redis 座位守卫失败，等待对账修正: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 定期与 seats 表对账；过期（不再热门）的航班移出守卫
+     */
+    @Scheduled(initialDelayString = "${airline.seat-guard.reconcile-interval-ms:300000}",
+            fixedDelayString = "${airline.seat-guard.reconcile-interval-ms:300000}")
+    public void reconcile() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Set<String> members = stringRedisTemplate.opsForSet().members(FLIGHTS_KEY);
+            if (members == null || members.isEmpty()) {
+                return;
+            }
+            for (String member : members) {
+                load(Long.valueOf(member), true);
+            }
+            log.debug("Redis 座位守卫对账完成：{} 个航班", members.size());
+        } catch (Exception e) {
+            log.warn("Redis 座位守卫对账失败: {}", e.getMessage());
+        }
+    }
+
+    private long claim(Collection<Long> flightIds, Collection<Long> seatIds) {
+        long now = System.currentTimeMillis();
+        List<String> args = new ArrayList<>(seatIds.size() + 3);
+        args.add(String.valueOf(idleTtlSeconds));
+        args.add(String.valueOf(now));
+        args.add(String.valueOf(now - claimTimeoutMs));
+        seatIds.forEach(seatId -> args.add(String.valueOf(seatId)));
+        Long result = stringRedisTemplate.execute(CLAIM_SCRIPT, keysOf(flightIds), args.toArray());
+        return result != null ? result : -1;
+    }
+
+    // 按 seats 表中的状态修正航班的座位哈希（对账时只处理仍存在的哈希）
+    // 首次加载先写入占位字段再读取数据库，读取之后提交的状态变化写入哈希，不会被快照覆盖
+    private void load(Long flightId, boolean onlyExisting) {
+        if (!onlyExisting) {
+            stringRedisTemplate.execute(MARK_LOADING_SCRIPT, Collections.singletonList(KEY_PREFIX + flightId),
+                    String.valueOf(Math.max(1, claimTimeoutMs / 1000)));
+        }
+        // 读取快照前就已失效的占用，其事务结果一定已反映在快照中
+        long staleBefore = System.currentTimeMillis() - claimTimeoutMs;
+        List<SeatDTO> seats = seatRepository.findSeatViewsByFlightId(flightId);
+        List<String> args = new ArrayList<>(seats.size() * 2 + 4);
+        args.add(String.valueOf(flightId));
+        args.add(String.valueOf(idleTtlSeconds));
+        args.add(onlyExisting ? "1" : "0");
+        args.add(String.valueOf(staleBefore));
+        for (SeatDTO seat : seats) {
+            args.add(String.valueOf(seat.getId()));
+            args.add(Seat.SeatStatus.AVAILABLE.name().equals(seat.getStatus()) ? "0" : "1");
+        }
+        List<String> keys = new ArrayList<>(2);
+        keys.add(KEY_PREFIX + flightId);
+        keys.add(FLIGHTS_KEY);
+        stringRedisTemplate.execute(LOAD_SCRIPT, keys, args.toArray());
+    }
+
+    private static List<String> keysOf(Collection<Long> flightIds) {
+        return flightIds.stream().map(flightId -> KEY_PREFIX + flightId).collect(Collectors.toList());
+    }
+
+    private static Object[] toArgs(Collection<Long> ids) {
+        return ids.stream().map(String::valueOf).toArray();
+    }
+}
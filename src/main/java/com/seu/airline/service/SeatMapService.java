@@ -0,0 +1,769 @@
+package com.seu.airline.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.seu.airline.dto.ApiResponse;
+import com.seu.airline.dto.SeatDTO;
+import com.seu.airline.dto.SeatDeltaDTO;
+import com.seu.airline.dto.SeatMapDTO;
+import com.seu.airline.dto.SeatTransition;
+import com.seu.airline.event.FlightAvailabilityChangedEvent;
+import com.seu.airline.model.Seat;
+import com.seu.airline.repository.SeatRepository;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 航班紧凑座位图服务
+ * 每个航班在内存中保存不变的舱位/行/列布局和两张座位状态位图（已预留、已出票），
+ * 座位状态变化事件到达时只翻转对应位并递增版本号；序列化后的响应按版本缓存，
+ * 同一版本的重复读取直接返回缓存字节，不访问数据库也不重新序列化。
+ * 版本号同时用于座位接口的 ETag 条件请求和按版本返回增量，因此按航班保存在 Redis 中由所有实例共享：
+ * 提交座位状态变化的实例在提交后递增共享版本号，并随变化一起转发给其他实例，
+ * 同一版本号在任何实例上都对应同一座位状态（座位图在版本 V 时包含所有版本不超过 V 的变化）。
+ * 共享版本号在本实例缓存很短的时间（version-cache-ms），读取版本不必每次访问 Redis。
+ * 本实例落后于共享版本号时照常返回本实例的版本（该版本对应的状态与其他实例一致），由随后到达的转发追上；
+ * 先于前序版本到达的转发按版本号暂存，前序版本到达后依次应用。
+ * 只有落后超过变化记录容量，或落后持续超过 lag-timeout-ms（转发丢失）时才从数据库重新加载。
+ * Redis 不可用时不提供版本号（不返回 ETag 和增量），避免各实例的版本号含义不一致。
+ */
+@Service
+@Slf4j
+public class SeatMapService {
+
+    private static final Pattern SEAT_NUMBER = Pattern.compile("^(\\d+)([A-Za-z]+)$");
+
+    // 超过该时长未被读取的座位图在全量对账时移出内存
+    private static final long IDLE_EVICT_MS = 10 * 60 * 1000L;
+
+    private static final String VERSION_KEY_PREFIX = "seat:version:";
+
+    // 航班首次取得版本号时以 Redis 服务器当前毫秒时间为起点，保证键过期或丢失后重新开始的版本号
+    // 不会与客户端持有的旧 ETag 重复（且不受各实例时钟偏差影响）
+    private static final String INIT_VERSION =
+            "local t = redis.call('TIME')\n" +
+            "local v = string.format('%.0f', t[1] * 1000 + math.floor(t[2] / 1000))\n";
+
+    // KEYS[1]: 航班版本号；ARGV[1]: 过期秒数。返回递增后的版本号
+    private static final RedisScript<Long> BUMP_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then\n" +
+            INIT_VERSION +
+            "  redis.call('SET', KEYS[1], v)\n" +
+            "end\n" +
+            "local version = redis.call('INCR', KEYS[1])\n" +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1])\n" +
+            "return version", Long.class);
+
+    // KEYS[1]: 航班版本号；ARGV[1]: 过期秒数。返回当前版本号，不存在时初始化
+    private static final RedisScript<Long> READ_SCRIPT = new DefaultRedisScript<>(
+            "local current = redis.call('GET', KEYS[1])\n" +
+            "if current then return tonumber(current) end\n" +
+            INIT_VERSION +
+            "redis.call('SET', KEYS[1], v, 'EX', ARGV[1])\n" +
+            "return tonumber(v)", Long.class);
+
+    @Autowired
+    private SeatRepository seatRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${airline.seat-map.version-ttl-seconds:604800}")
+    private long versionTtlSeconds;
+
+    @Value("${airline.seat-map.version-cache-ms:1000}")
+    private long versionCacheMs;
+
+    @Value("${airline.seat-map.lag-timeout-ms:3000}")
+    private long lagTimeoutMs;
+
+    // 最近读取的共享版本号（航班ID -> 版本号及过期时间）
+    private final Map<Long, CachedVersion> sharedVersions = new ConcurrentHashMap<>();
+
+    private final Map<Long, FlightSeatMap> maps = new ConcurrentHashMap<>();
+
+    // 提交后未能递增共享版本号（Redis 不可用）的航班，定期重试
+    private final Set<Long> pendingBumps = ConcurrentHashMap.newKeySet();
+
+    // 发生过未取得共享版本号的变化的航班 -> 变化前的版本号；共享版本号超过该值之前不提供版本，
+    // 否则同一版本号会对应变化前后两种状态
+    private final Map<Long, Long> unversioned = new ConcurrentHashMap<>();
+
+    // 正在从数据库加载的航班；加载期间收到状态变化时值置为 true，加载完成后标记为过期
+    private final Map<Long, Boolean> loading = new ConcurrentHashMap<>();
+
+    // 按航班ID分段的加载锁，避免同一航班被并发重复加载
+    private final Object[] loadLocks = new Object[64];
+
+    {
+        for (int i = 0; i < loadLocks.length; i++) {
+            loadLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * 获取航班座位图的响应字节（ApiResponse JSON），航班没有座位时返回 null
+     */
+    public byte[] getSeatMapJson(Long flightId) {
+        FlightSeatMap map = current(flightId);
+        return map != null ? map.payload() : null;
+    }
+
+    /**
+     * 航班座位状态版本号（所有实例共享，任一座位状态变化时递增）
+     * 航班没有座位或 Redis 不可用时返回 null；本实例的座位图落后于共享版本号时返回本实例已应用到的版本，
+     * 落后过多或持续落后（转发丢失）时先重新加载
+     */
+    public Long getVersion(Long flightId) {
+        Long shared = sharedVersion(flightId);
+        if (shared == null) {
+            return null;
+        }
+        Long floor = unversioned.get(flightId);
+        if (floor != null) {
+            if (shared <= floor) {
+                return null;
+            }
+            unversioned.remove(flightId, floor);
+        }
+        FlightSeatMap map = current(flightId);
+        if (map != null && map.lagging(shared, System.currentTimeMillis())) {
+            map.stale = true;
+            map = current(flightId);
+        }
+        return map != null && map.version() >= 0 ? map.version() : null;
+    }
+
+    /**
+     * 航班是否有座位
+     */
+    public boolean hasSeats(Long flightId) {
+        return current(flightId) != null;
+    }
+
+    /**
+     * 递增航班的共享版本号（座位状态变化提交后调用），返回各航班的新版本号；
+     * Redis 不可用的航班不在结果中，稍后重试递增，其他实例读取版本时发现落后即重新加载
+     */
+    public Map<Long, Long> nextVersions(Collection<Long> flightIds) {
+        Map<Long, Long> versions = new HashMap<>();
+        for (Long flightId : flightIds) {
+            Long version = bumpVersion(flightId);
+            if (version != null) {
+                versions.put(flightId, version);
+            } else {
+                pendingBumps.add(flightId);
+            }
+        }
+        return versions;
+    }
+
+    /**
+     * 重试未能递增的共享版本号
+     */
+    @Scheduled(fixedDelayString = "${airline.seat-map.version-retry-ms:5000}")
+    public void retryVersionBumps() {
+        pendingBumps.removeIf(flightId -> bumpVersion(flightId) != null);
+    }
+
+    /**
+     * 获取指定版本之后状态发生变化的座位，航班没有座位时返回 null
+     * 变化记录无法覆盖所请求的版本时返回 full 为 true、seats 为空的结果，由调用方返回完整列表
+     * @param flightId 航班ID
+     * @param sinceVersion 客户端已有的版本
+     */
+    public SeatDeltaDTO getChangesSince(Long flightId, long sinceVersion) {
+        FlightSeatMap map = current(flightId);
+        return map != null ? map.changesSince(sinceVersion) : null;
+    }
+
+    /**
+     * 在内存座位图中为同行乘客选择相邻的可售座位（只做选择，不占座），可售座位不足时返回 null
+     * @param flightId 航班ID
+     * @param seatType 舱位
+     * @param count 乘客数
+     * @param excluded 已知不可用的座位（如数据库核对时发现已被占用）
+     */
+    public List<Long> allocateAdjacentSeats(Long flightId, Seat.SeatType seatType, int count, Set<Long> excluded) {
+        FlightSeatMap map = current(flightId);
+        return map != null ? map.allocate(seatType, count, excluded) : null;
+    }
+
+    /**
+     * 座位状态变化后更新位图并前进到事件携带的共享版本号；全量对账后标记所有座位图过期（下次读取时与数据库核对）
+     * 版本号不连续（中间的转发丢失或尚未到达）或没有版本号时，座位图标记过期，下次读取时重新加载
+     * 先于其他监听器执行，保证实时推送读取增量时位图已经更新
+     */
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onAvailabilityChanged(FlightAvailabilityChangedEvent event) {
+        if (event.isFullReload()) {
+            long idleBefore = System.currentTimeMillis() - IDLE_EVICT_MS;
+            maps.values().removeIf(map -> map.lastAccess < idleBefore);
+            maps.values().forEach(map -> map.stale = true);
+            sharedVersions.keySet().retainAll(maps.keySet());
+            return;
+        }
+        Map<Long, List<SeatTransition>> byFlight = new LinkedHashMap<>();
+        for (SeatTransition transition : event.getTransitions()) {
+            byFlight.computeIfAbsent(transition.getFlightId(), k -> new ArrayList<>()).add(transition);
+        }
+        byFlight.forEach((flightId, transitions) -> {
+            loading.replace(flightId, Boolean.FALSE, Boolean.TRUE);
+            Long version = event.getVersions().get(flightId);
+            if (version != null) {
+                sharedVersions.computeIfPresent(flightId, (k, cached) -> version > cached.version
+                        ? new CachedVersion(version, cached.expiresAt) : cached);
+            }
+            FlightSeatMap map = maps.get(flightId);
+            if (map == null) {
+                return;
+            }
+            if (version == null) {
+                long before = map.version();
+                if (before >= 0) {
+                    unversioned.merge(flightId, before, Math::max);
+                }
+            }
+            map.apply(transitions, version);
+        });
+    }
+
+    private FlightSeatMap current(Long flightId) {
+        FlightSeatMap map = maps.get(flightId);
+        if (map == null || map.stale) {
+            synchronized (loadLocks[(int) (flightId & (loadLocks.length - 1))]) {
+                map = maps.get(flightId);
+                if (map == null || map.stale) {
+                    map = load(flightId);
+                }
+            }
+        }
+        if (map != null) {
+            map.lastAccess = System.currentTimeMillis();
+        }
+        return map;
+    }
+
+    private FlightSeatMap load(Long flightId) {
+        loading.put(flightId, Boolean.FALSE);
+        try {
+            // 先取共享版本号再查询：版本号不超过它的变化都已提交，快照一定包含
+            Long version = readVersion(flightId);
+            List<SeatDTO> seats = seatRepository.findSeatViewsByFlightId(flightId);
+            if (seats.isEmpty()) {
+                maps.remove(flightId);
+                return null;
+            }
+            FlightSeatMap loaded = build(flightId, seats, version != null ? version : -1);
+            maps.put(flightId, loaded);
+            return loaded;
+        } finally {
+            if (Boolean.TRUE.equals(loading.remove(flightId))) {
+                FlightSeatMap installed = maps.get(flightId);
+                if (installed != null) {
+                    installed.stale = true;
+                }
+            }
+        }
+    }
+
+    private FlightSeatMap build(Long flightId, List<SeatDTO> seats, long version) {
+        // 按舱位分组并解析行列，舱位按最小行号排序
+        Map<String, List<ParsedSeat>> byCabin = new LinkedHashMap<>();
+        for (SeatDTO seat : seats) {
+            Matcher matcher = SEAT_NUMBER.matcher(seat.getSeatNumber() != null ? seat.getSeatNumber().trim() : "");
+            if (!matcher.matches()) {
+                log.warn("航班 {} 的座位号 {} 无法解析为行列，未加入座位图", flightId, seat.getSeatNumber());
+                continue;
+            }
+            byCabin.computeIfAbsent(seat.getSeatType(), k -> new ArrayList<>())
+                    .add(new ParsedSeat(seat, Integer.parseInt(matcher.group(1)), matcher.group(2).toUpperCase()));
+        }
+        List<List<ParsedSeat>> cabinSeats = new ArrayList<>(byCabin.values());
+        cabinSeats.sort(Comparator.comparingInt(list -> list.stream().mapToInt(s -> s.row).min().orElse(0)));
+
+        List<SeatMapDTO.Cabin> cabins = new ArrayList<>();
+        List<CabinGrid> grids = new ArrayList<>();
+        List<SeatDTO> ordered = new ArrayList<>(seats.size());
+        for (List<ParsedSeat> list : cabinSeats) {
+            TreeSet<Integer> rowSet = new TreeSet<>();
+            TreeSet<String> columnSet = new TreeSet<>(Comparator.comparingInt(String::length).thenComparing(c -> c));
+            Map<String, ParsedSeat> byPosition = new HashMap<>();
+            BigDecimal minPrice = null;
+            for (ParsedSeat parsed : list) {
+                rowSet.add(parsed.row);
+                columnSet.add(parsed.column);
+                byPosition.put(parsed.row + parsed.column, parsed);
+                BigDecimal price = parsed.seat.getPrice();
+                if (price != null && (minPrice == null || price.compareTo(minPrice) < 0)) {
+                    minPrice = price;
+                }
+            }
+
+            int[] rows = rowSet.stream().mapToInt(Integer::intValue).toArray();
+            List<String> columns = new ArrayList<>(columnSet);
+            BitSet layout = new BitSet(rows.length * columns.size());
+            int[] cellSeats = new int[rows.length * columns.size()];
+            int cell = 0;
+            for (int row : rows) {
+                for (String column : columns) {
+                    ParsedSeat parsed = byPosition.get(row + column);
+                    if (parsed != null) {
+                        layout.set(cell);
+                        ordered.add(parsed.seat);
+                        cellSeats[cell] = ordered.size() - 1;
+                    } else {
+                        cellSeats[cell] = -1;
+                    }
+                    cell++;
+                }
+            }
+            boolean complete = layout.cardinality() == cell;
+            grids.add(new CabinGrid(list.get(0).seat.getSeatType(), rows, columns.size(), cellSeats));
+            cabins.add(new SeatMapDTO.Cabin(list.get(0).seat.getSeatType(), minPrice, rows, String.join("", columns),
+                    complete ? null : Base64.getEncoder().encodeToString(layout.toByteArray())));
+        }
+
+        long[] seatIds = new long[ordered.size()];
+        BitSet reserved = new BitSet(ordered.size());
+        BitSet occupied = new BitSet(ordered.size());
+        for (int i = 0; i < ordered.size(); i++) {
+            SeatDTO seat = ordered.get(i);
+            seatIds[i] = seat.getId();
+            reserved.set(i, Seat.SeatStatus.RESERVED.name().equals(seat.getStatus()));
+            occupied.set(i, Seat.SeatStatus.OCCUPIED.name().equals(seat.getStatus()));
+        }
+        return new FlightSeatMap(flightId, cabins, grids, ordered, seatIds, reserved, occupied, version);
+    }
+
+    // 读取共享版本号（缓存 version-cache-ms），Redis 不可用时返回 null
+    private Long sharedVersion(Long flightId) {
+        long now = System.currentTimeMillis();
+        CachedVersion cached = sharedVersions.get(flightId);
+        if (cached != null && cached.expiresAt > now) {
+            return cached.version;
+        }
+        Long version = readVersion(flightId);
+        if (version != null) {
+            sharedVersions.put(flightId, new CachedVersion(version, now + versionCacheMs));
+        } else {
+            sharedVersions.remove(flightId);
+        }
+        return version;
+    }
+
+    // 读取共享版本号，Redis 不可用时返回 null
+    private Long readVersion(Long flightId) {
+        try {
+            return stringRedisTemplate.execute(READ_SCRIPT, Collections.singletonList(VERSION_KEY_PREFIX + flightId),
+                    String.valueOf(versionTtlSeconds));
+        } catch (Exception e) {
+            log.warn("读取航班 {} 的座位版本号失败: {}", flightId, e.getMessage());
+            return null;
+        }
+    }
+
+    private Long bumpVersion(Long flightId) {
+        try {
+            return stringRedisTemplate.execute(BUMP_SCRIPT, Collections.singletonList(VERSION_KEY_PREFIX + flightId),
+                    String.valueOf(versionTtlSeconds));
+        } catch (Exception e) {
+            log.warn("递增航班 {} 的座位版本号失败，稍后重试: {}", flightId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 单个航班的座位图，布局不可变，状态位图修改时加锁并使缓存的响应失效
+     * 最近的状态变化按版本号记录在环形缓冲区中，用于返回增量；version 为 -1 表示加载时未取得共享版本号
+     * 版本号不连续（前序版本的转发尚未到达）的变化暂存在 pending 中，前序版本到达后按版本顺序应用
+     */
+    private final class FlightSeatMap {
+        private static final int CHANGE_LOG_SIZE = 256;
+
+        private final Long flightId;
+        private final List<SeatMapDTO.Cabin> cabins;
+        private final List<CabinGrid> grids;
+        private final List<SeatDTO> seats;
+        private final long[] seatIds;
+        private final Map<Long, Integer> indexBySeatId;
+        private final BitSet reserved;
+        private final BitSet occupied;
+        private final long baseVersion;
+        private long version;
+        private byte[] payload;
+
+        // 版本 v 对应的变化座位下标保存在 changeLog[v % CHANGE_LOG_SIZE]（同一次提交可能改变多个座位）
+        private final int[][] changeLog = new int[CHANGE_LOG_SIZE][];
+
+        // 先于前序版本到达的变化（版本号 -> 座位状态变化）
+        private final TreeMap<Long, List<SeatTransition>> pending = new TreeMap<>();
+
+        // 开始落后于共享版本号的时间（0 表示未落后）和观察到的共享版本号
+        private long behindSince;
+        private long behindTarget;
+
+        volatile boolean stale;
+        volatile long lastAccess;
+
+        FlightSeatMap(Long flightId, List<SeatMapDTO.Cabin> cabins, List<CabinGrid> grids, List<SeatDTO> seats,
+                long[] seatIds,
+                BitSet reserved, BitSet occupied, long version) {
+            this.flightId = flightId;
+            this.cabins = cabins;
+            this.grids = grids;
+            this.seats = seats;
+            this.seatIds = seatIds;
+            this.reserved = reserved;
+            this.occupied = occupied;
+            this.baseVersion = version;
+            this.version = version;
+            this.indexBySeatId = new HashMap<>(seatIds.length * 2);
+            for (int i = 0; i < seatIds.length; i++) {
+                indexBySeatId.put(seatIds[i], i);
+            }
+        }
+
+        synchronized long version() {
+            return version;
+        }
+
+        // 应用一次提交的座位状态变化；newVersion 为空或加载时未取得版本号时位图照常更新，但标记过期等待重新加载；
+        // 版本号不连续时暂存，前序版本到达后应用，暂存超过变化记录容量时标记过期
+        synchronized void apply(List<SeatTransition> transitions, Long newVersion) {
+            if (newVersion == null || version < 0) {
+                flip(transitions);
+                stale = true;
+                return;
+            }
+            if (newVersion <= version) {
+                return; // 加载的快照已包含该变化
+            }
+            if (newVersion > version + 1) {
+                pending.put(newVersion, transitions);
+                if (pending.size() > CHANGE_LOG_SIZE) {
+                    stale = true;
+                }
+                return;
+            }
+            advance(transitions);
+            while (!pending.isEmpty() && pending.firstKey() <= version + 1) {
+                Map.Entry<Long, List<SeatTransition>> next = pending.pollFirstEntry();
+                if (next.getKey() == version + 1) {
+                    advance(next.getValue());
+                }
+            }
+            if (version >= behindTarget) {
+                behindSince = 0;
+            }
+        }
+
+        // 应用版本 version + 1 的变化并记录到环形缓冲区，调用方须持有锁
+        private void advance(List<SeatTransition> transitions) {
+            version++;
+            changeLog[(int) (version % CHANGE_LOG_SIZE)] = flip(transitions);
+        }
+
+        // 翻转座位状态位并返回实际变化的座位下标，调用方须持有锁
+        private int[] flip(List<SeatTransition> transitions) {
+            int[] changed = new int[transitions.size()];
+            int count = 0;
+            for (SeatTransition transition : transitions) {
+                Integer index = indexBySeatId.get(transition.getSeatId());
+                if (index == null) {
+                    continue;
+                }
+                boolean isReserved = transition.getTo() == Seat.SeatStatus.RESERVED;
+                boolean isOccupied = transition.getTo() == Seat.SeatStatus.OCCUPIED;
+                if (reserved.get(index) == isReserved && occupied.get(index) == isOccupied) {
+                    continue;
+                }
+                reserved.set(index, isReserved);
+                occupied.set(index, isOccupied);
+                changed[count++] = index;
+            }
+            if (count > 0) {
+                payload = null;
+            }
+            return Arrays.copyOf(changed, count);
+        }
+
+        // 与共享版本号比较：落后超过变化记录容量、持续落后超过 lag-timeout-ms（转发丢失）
+        // 或加载时未取得版本号时返回 true，需要重新加载
+        synchronized boolean lagging(long shared, long now) {
+            if (version < 0) {
+                return true;
+            }
+            if (shared <= version) {
+                return false;
+            }
+            if (shared - version > CHANGE_LOG_SIZE) {
+                return true;
+            }
+            behindTarget = Math.max(behindTarget, shared);
+            if (behindSince == 0) {
+                behindSince = now;
+                return false;
+            }
+            return now - behindSince > lagTimeoutMs;
+        }
+
+        synchronized SeatDeltaDTO changesSince(long sinceVersion) {
+            // 变化记录只覆盖本次加载之后、且仍在环形缓冲区内的版本
+            long oldestCovered = Math.max(baseVersion, version - CHANGE_LOG_SIZE);
+            if (version < 0 || sinceVersion < oldestCovered || sinceVersion > version) {
+                return new SeatDeltaDTO(flightId, sinceVersion, version, true, null);
+            }
+
+            BitSet changed = new BitSet(seats.size());
+            for (long v = sinceVersion + 1; v <= version; v++) {
+                for (int index : changeLog[(int) (v % CHANGE_LOG_SIZE)]) {
+                    changed.set(index);
+                }
+            }
+            List<SeatDTO> delta = new ArrayList<>(changed.cardinality());
+            for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1)) {
+                delta.add(seatAt(i));
+            }
+            return new SeatDeltaDTO(flightId, sinceVersion, version, false, delta);
+        }
+
+        // 以当前状态创建第 i 个座位的 DTO，调用方须持有锁
+        private SeatDTO seatAt(int i) {
+            SeatDTO seat = seats.get(i);
+            Seat.SeatStatus status = occupied.get(i) ? Seat.SeatStatus.OCCUPIED
+                    : reserved.get(i) ? Seat.SeatStatus.RESERVED : Seat.SeatStatus.AVAILABLE;
+            return new SeatDTO(seat.getId(), flightId, seat.getSeatNumber(), Seat.SeatType.valueOf(seat.getSeatType()),
+                    seat.getPrice(), status);
+        }
+
+        synchronized List<Long> allocate(Seat.SeatType seatType, int count, Set<Long> excluded) {
+            for (CabinGrid grid : grids) {
+                if (!grid.seatType.equals(seatType.name())) {
+                    continue;
+                }
+                int[] block = grid.allocate(count,
+                        i -> !reserved.get(i) && !occupied.get(i) && !excluded.contains(seatIds[i]));
+                if (block != null) {
+                    List<Long> ids = new ArrayList<>(block.length);
+                    for (int index : block) {
+                        ids.add(seatIds[index]);
+                    }
+                    return ids;
+                }
+            }
+            return null;
+        }
+
+        synchronized byte[] payload() {
+            if (payload == null) {
+                Base64.Encoder encoder = Base64.getEncoder();
+                SeatMapDTO dto = new SeatMapDTO(flightId, version >= 0 ? version : null, seatIds.length, cabins, seatIds,
+                        encoder.encodeToString(reserved.toByteArray()), encoder.encodeToString(occupied.toByteArray()));
+                try {
+                    payload = objectMapper.writeValueAsBytes(ApiResponse.success(dto, "获取座位图成功"));
+                } catch (JsonProcessingException e) {
+                    throw new RuntimeException("座位图序列化失败", e);
+                }
+            }
+            return payload;
+        }
+    }
+
+    /**
+     * 舱位的行列网格，用于分配相邻座位
+     * 座位表中没有过道信息，按每排座位数推断常见布局（如 6 座为 3-3，8 座为 2-4-2）；
+     * 分配优先级：同一排不跨过道的连续座位 > 同一排跨过道的连续座位 > 前后相邻两排的连续座位 > 排数跨度最小的任意座位，
+     * 同等条件下靠前的排优先
+     */
+    private static final class CabinGrid {
+        private static final int[][] SECTIONS = {
+                {}, {1}, {2}, {3}, {2, 2}, {2, 3}, {3, 3}, {2, 3, 2}, {2, 4, 2}, {3, 3, 3}, {3, 4, 3}
+        };
+
+        private final String seatType;
+        private final int[] rows;
+        private final int columnCount;
+        // 网格单元（行优先）对应的座位下标，-1 表示该位置没有座位
+        private final int[] cellSeats;
+        // 每列所属的区段（过道之间的座位组）
+        private final int[] section;
+
+        CabinGrid(String seatType, int[] rows, int columnCount, int[] cellSeats) {
+            this.seatType = seatType;
+            this.rows = rows;
+            this.columnCount = columnCount;
+            this.cellSeats = cellSeats;
+            this.section = new int[columnCount];
+            int[] widths = columnCount < SECTIONS.length ? SECTIONS[columnCount] : new int[] { columnCount };
+            int column = 0;
+            for (int s = 0; s < widths.length; s++) {
+                for (int w = 0; w < widths[s]; w++) {
+                    section[column++] = s;
+                }
+            }
+        }
+
+        // 返回分配到的座位下标，可用座位不足时返回 null
+        int[] allocate(int count, IntPredicate free) {
+            if (count <= 0) {
+                return null;
+            }
+            int[] block = sameRow(count, free);
+            if (block == null && count > 1) {
+                block = adjacentRows(count, free);
+            }
+            return block != null ? block : closestRows(count, free);
+        }
+
+        private int[] sameRow(int count, IntPredicate free) {
+            int bestRow = -1;
+            int bestColumn = -1;
+            int bestCrossings = Integer.MAX_VALUE;
+            for (int r = 0; r < rows.length && bestCrossings > 0; r++) {
+                for (int c = 0; c + count <= columnCount; c++) {
+                    if (runFree(r, c, count, free)) {
+                        int crossings = crossings(c, count);
+                        if (crossings < bestCrossings) {
+                            bestRow = r;
+                            bestColumn = c;
+                            bestCrossings = crossings;
+                        }
+                    }
+                }
+            }
+            return bestRow < 0 ? null : run(bestRow, bestColumn, count, new int[count], 0);
+        }
+
+        private int[] adjacentRows(int count, IntPredicate free) {
+            int front = (count + 1) / 2;
+            int back = count - front;
+            if (front > columnCount) {
+                return null;
+            }
+            int bestRow = -1;
+            int bestFront = -1;
+            int bestBack = -1;
+            int bestCost = Integer.MAX_VALUE;
+            for (int r = 0; r + 1 < rows.length && bestCost > 0; r++) {
+                if (rows[r + 1] != rows[r] + 1) {
+                    continue;
+                }
+                for (int a = 0; a + front <= columnCount; a++) {
+                    if (!runFree(r, a, front, free)) {
+                        continue;
+                    }
+                    for (int b = 0; b + back <= columnCount; b++) {
+                        if (runFree(r + 1, b, back, free)) {
+                            int cost = crossings(a, front) + crossings(b, back) + Math.abs(a - b);
+                            if (cost < bestCost) {
+                                bestRow = r;
+                                bestFront = a;
+                                bestBack = b;
+                                bestCost = cost;
+                            }
+                        }
+                    }
+                }
+            }
+            if (bestRow < 0) {
+                return null;
+            }
+            int[] block = new int[count];
+            run(bestRow, bestFront, front, block, 0);
+            return run(bestRow + 1, bestBack, back, block, front);
+        }
+
+        private int[] closestRows(int count, IntPredicate free) {
+            int[] freeSeats = new int[cellSeats.length];
+            int[] freeRows = new int[cellSeats.length];
+            int n = 0;
+            for (int cell = 0; cell < cellSeats.length; cell++) {
+                int seat = cellSeats[cell];
+                if (seat >= 0 && free.test(seat)) {
+                    freeSeats[n] = seat;
+                    freeRows[n] = rows[cell / columnCount];
+                    n++;
+                }
+            }
+            if (n < count) {
+                return null;
+            }
+            int best = 0;
+            for (int i = 1; i + count <= n; i++) {
+                if (freeRows[i + count - 1] - freeRows[i] < freeRows[best + count - 1] - freeRows[best]) {
+                    best = i;
+                }
+            }
+            return Arrays.copyOfRange(freeSeats, best, best + count);
+        }
+
+        private boolean runFree(int row, int column, int count, IntPredicate free) {
+            for (int c = column; c < column + count; c++) {
+                int seat = cellSeats[row * columnCount + c];
+                if (seat < 0 || !free.test(seat)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int[] run(int row, int column, int count, int[] into, int offset) {
+            for (int i = 0; i < count; i++) {
+                into[offset + i] = cellSeats[row * columnCount + column + i];
+            }
+            return into;
+        }
+
+        private int crossings(int column, int count) {
+            return section[column + count - 1] - section[column];
+        }
+    }
+
+    @AllArgsConstructor
+    private static final class CachedVersion {
+        private final long version;
+        private final long expiresAt;
+    }
+
+    @AllArgsConstructor
+    private static final class ParsedSeat {
+        private final SeatDTO seat;
+        private final int row;
+        private final String column;
+    }
+}
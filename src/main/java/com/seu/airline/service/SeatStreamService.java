@@ -0,0 +1,496 @@
+package com.seu.airline.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.seu.airline.dto.SeatDeltaDTO;
+import com.seu.airline.dto.SeatTransition;
+import com.seu.airline.event.FlightAvailabilityChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 航班座位状态实时推送服务（SSE）
+ * 每个有订阅者的航班对应一个频道，座位状态变化事件只把频道标记为待推送；
+ * 推送线程从 SeatMapService 取出频道上次推送版本之后的增量，序列化一次后发送给该航班的全部订阅者，
+ * 同一航班短时间内的多次变化合并为一次推送。
+ * 连接由 Servlet 异步请求承载，不占用线程；频道按航班ID分配到固定数量的推送线程，
+ * 同一航班的事件按顺序生成，频道状态只由所属推送线程修改。
+ * 推送线程不直接写连接：事件放入每个连接自己的发送队列，由写线程池按连接顺序发送，
+ * 不会阻塞同一推送线程上其他航班的推送；发送队列积压超过上限的连接直接关闭，客户端重连后按 Last-Event-ID 补发或重新拉取。
+ * 每次发送有期限（send-timeout-ms）：检查线程发现超过期限仍未写完的连接即将其移出频道不再发送，
+ * 并为写线程池补充一个线程替代被卡住的写线程，不读取数据的客户端不会占满写线程池；
+ * 被卡住的写线程在容器的写超时到期（或客户端恢复读取）后返回，关闭该连接并从池中撤下补充的线程。
+ * 其他实例提交的变化经 SeatTransitionRelay 转发为本实例的变化事件，同样触发推送。
+ */
+@Service
+@Slf4j
+public class SeatStreamService {
+
+    @Autowired
+    private SeatMapService seatMapService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${airline.seat-stream.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    @Value("${airline.seat-stream.max-subscribers:10000}")
+    private int maxSubscribers;
+
+    @Value("${airline.seat-stream.dispatcher-threads:4}")
+    private int dispatcherThreads;
+
+    @Value("${airline.seat-stream.writer-threads:8}")
+    private int writerThreads;
+
+    @Value("${airline.seat-stream.max-backlog:32}")
+    private int maxBacklog;
+
+    @Value("${airline.seat-stream.send-timeout-ms:2000}")
+    private long sendTimeoutMs;
+
+    // 为替代被卡住的写线程最多补充的线程数
+    private static final int MAX_EXTRA_WRITERS = 256;
+
+    private final Map<Long, Channel> channels = new ConcurrentHashMap<>();
+
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+
+    private ExecutorService[] dispatchers;
+
+    private ThreadPoolExecutor writers;
+
+    private ScheduledExecutorService watchdog;
+
+    // 正在发送的连接（检查线程据此发现超过发送期限的连接）
+    private final Set<Subscriber> sending = ConcurrentHashMap.newKeySet();
+
+    // 当前被卡住的写线程数（由 this 保护）
+    private int stuckWriters;
+
+    private Counter pushedEvents;
+
+    private Counter droppedSubscribers;
+
+    @PostConstruct
+    public void init() {
+        dispatchers = new ExecutorService[Math.max(1, dispatcherThreads)];
+        for (int i = 0; i < dispatchers.length; i++) {
+            String threadName = "seat-stream-" + i;
+            dispatchers[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        AtomicInteger writerIndex = new AtomicInteger();
+        writers = new ThreadPoolExecutor(Math.max(1, writerThreads), Math.max(1, writerThreads),
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, "seat-stream-writer-" + writerIndex.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "seat-stream-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long checkMs = Math.max(10, sendTimeoutMs / 4);
+        watchdog.scheduleWithFixedDelay(this::checkSendDeadlines, checkMs, checkMs, TimeUnit.MILLISECONDS);
+        pushedEvents = Counter.builder("seat.stream.events")
+                .description("推送给订阅者的座位事件数（按连接计）").register(meterRegistry);
+        droppedSubscribers = Counter.builder("seat.stream.dropped")
+                .description("发送积压超过上限或发送超过期限被关闭的连接数").register(meterRegistry);
+        Gauge.builder("seat.stream.subscribers", subscriberCount, AtomicInteger::get)
+                .description("座位实时推送的连接数").register(meterRegistry);
+        Gauge.builder("seat.stream.flights", channels, Map::size)
+                .description("有订阅者的航班数").register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ExecutorService dispatcher : dispatchers) {
+            dispatcher.shutdownNow();
+        }
+        writers.shutdownNow();
+        watchdog.shutdownNow();
+        for (Channel channel : channels.values()) {
+            channel.subscribers.keySet().forEach(SseEmitter::complete);
+        }
+    }
+
+    /**
+     * 订阅航班座位状态变化，连接数已达上限时返回 null
+     * @param flightId 航班ID
+     * @param lastVersion 断线重连时客户端已收到的版本（Last-Event-ID），首次连接为 null
+     */
+    public SseEmitter subscribe(Long flightId, Long lastVersion) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            log.warn("座位实时推送连接数已达上限 {}，拒绝航班 {} 的订阅", maxSubscribers, flightId);
+            return null;
+        }
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        register(flightId, emitter, lastVersion);
+        return emitter;
+    }
+
+    // 登记连接并发送初始事件（订阅数已计入 subscriberCount）
+    void register(Long flightId, SseEmitter emitter, Long lastVersion) {
+        AtomicBoolean removed = new AtomicBoolean();
+        Runnable remove = () -> {
+            if (removed.compareAndSet(false, true)) {
+                subscriberCount.decrementAndGet();
+                dispatcherOf(flightId).execute(() -> detach(flightId, emitter));
+            }
+        };
+        emitter.onCompletion(remove);
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> remove.run());
+        dispatcherOf(flightId).execute(() -> attach(flightId, emitter, lastVersion));
+    }
+
+    /**
+     * 座位状态变化后把相关航班的频道标记为待推送；全量对账后所有频道都需要核对一次
+     */
+    @EventListener
+    public void onAvailabilityChanged(FlightAvailabilityChangedEvent event) {
+        if (channels.isEmpty()) {
+            return;
+        }
+        if (event.isFullReload()) {
+            channels.keySet().forEach(this::schedulePush);
+            return;
+        }
+        Set<Long> flightIds = new HashSet<>(event.getFlightIds());
+        for (SeatTransition transition : event.getTransitions()) {
+            flightIds.add(transition.getFlightId());
+        }
+        flightIds.forEach(this::schedulePush);
+    }
+
+    /**
+     * 定期发送心跳注释，防止代理断开空闲连接并及时清理已断开的连接
+     */
+    @Scheduled(fixedDelayString = "${airline.seat-stream.heartbeat-ms:20000}")
+    public void heartbeat() {
+        for (Long flightId : channels.keySet()) {
+            dispatcherOf(flightId).execute(() -> {
+                Channel channel = channels.get(flightId);
+                if (channel != null) {
+                    broadcast(channel, () -> SseEmitter.event().comment("heartbeat"), false);
+                }
+            });
+        }
+    }
+
+    private void schedulePush(Long flightId) {
+        Channel channel = channels.get(flightId);
+        if (channel != null && channel.scheduled.compareAndSet(false, true)) {
+            dispatcherOf(flightId).execute(() -> push(flightId));
+        }
+    }
+
+    // 以下方法只在航班所属的推送线程中执行
+
+    private void attach(Long flightId, SseEmitter emitter, Long lastVersion) {
+        Channel channel = channels.get(flightId);
+        if (channel == null) {
+            // 先登记频道再读取版本：读取之后的变化一定会触发推送
+            channel = new Channel(flightId);
+            channels.put(flightId, channel);
+            Long version = seatMapService.getVersion(flightId);
+            channel.version = version != null ? version : 0;
+        }
+        Subscriber subscriber = new Subscriber(channel, emitter);
+        channel.subscribers.put(emitter, subscriber);
+        SeatDeltaDTO delta;
+        try {
+            if (lastVersion != null && lastVersion != channel.version) {
+                delta = seatMapService.getChangesSince(flightId, lastVersion);
+                if (delta == null) {
+                    delta = resync(channel);
+                }
+            } else {
+                delta = new SeatDeltaDTO(flightId, channel.version, channel.version, false, new ArrayList<>());
+            }
+        } catch (Exception e) {
+            log.error("获取航班 {} 的座位变化失败", flightId, e);
+            delta = resync(channel);
+        }
+        subscriber.enqueue(toEvent(delta), true);
+    }
+
+    private void detach(Long flightId, SseEmitter emitter) {
+        Channel channel = channels.get(flightId);
+        if (channel != null) {
+            channel.subscribers.remove(emitter);
+            if (channel.subscribers.isEmpty()) {
+                channels.remove(flightId);
+            }
+        }
+    }
+
+    private void push(Long flightId) {
+        Channel channel = channels.get(flightId);
+        if (channel == null) {
+            return;
+        }
+        channel.scheduled.set(false);
+        SeatDeltaDTO delta;
+        try {
+            delta = seatMapService.getChangesSince(flightId, channel.version);
+        } catch (Exception e) {
+            log.error("获取航班 {} 的座位变化失败", flightId, e);
+            return;
+        }
+        if (delta == null) {
+            delta = resync(channel);
+        } else if (!Boolean.TRUE.equals(delta.getFull()) && delta.getSeats().isEmpty()) {
+            return;
+        }
+        channel.version = delta.getVersion();
+        String id = String.valueOf(delta.getVersion());
+        String name = eventName(delta);
+        String data = serialize(delta);
+        broadcast(channel, () -> SseEmitter.event().id(id).name(name).data(data, MediaType.APPLICATION_JSON), true);
+    }
+
+    // 航班座位已不存在或变化记录不完整时通知客户端重新拉取座位
+    private SeatDeltaDTO resync(Channel channel) {
+        return new SeatDeltaDTO(channel.flightId, channel.version, channel.version, true, null);
+    }
+
+    private SseEmitter.SseEventBuilder toEvent(SeatDeltaDTO delta) {
+        return SseEmitter.event()
+                .id(String.valueOf(delta.getVersion()))
+                .name(eventName(delta))
+                .data(serialize(delta), MediaType.APPLICATION_JSON);
+    }
+
+    private static String eventName(SeatDeltaDTO delta) {
+        return Boolean.TRUE.equals(delta.getFull()) ? "resync" : "delta";
+    }
+
+    private String serialize(SeatDeltaDTO delta) {
+        try {
+            return objectMapper.writeValueAsString(delta);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("座位变化序列化失败", e);
+        }
+    }
+
+    // SseEventBuilder 发送时会被修改，不能重复使用，每个连接创建一个（数据只序列化一次）
+    private void broadcast(Channel channel, Supplier<SseEmitter.SseEventBuilder> event, boolean count) {
+        for (Subscriber subscriber : channel.subscribers.values()) {
+            subscriber.enqueue(event.get(), count);
+        }
+    }
+
+    // 关闭连接（在推送线程中从频道移除）；连接已断开时忽略
+    private void close(Subscriber subscriber) {
+        if (!subscriber.closed.compareAndSet(false, true)) {
+            return;
+        }
+        Long flightId = subscriber.channel.flightId;
+        dispatcherOf(flightId).execute(() -> detach(flightId, subscriber.emitter));
+        try {
+            subscriber.emitter.complete();
+        } catch (Exception ignored) {
+            // 连接已断开
+        }
+    }
+
+    // 检查正在发送的连接，超过发送期限的移出频道，并补充一个写线程替代被卡住的线程
+    private void checkSendDeadlines() {
+        long deadline = System.currentTimeMillis() - sendTimeoutMs;
+        for (Subscriber subscriber : sending) {
+            if (subscriber.expire(deadline)) {
+                droppedSubscribers.increment();
+                log.debug("航班 {} 的推送连接发送超过 {} ms 未完成，停止向其发送", subscriber.channel.flightId, sendTimeoutMs);
+                if (subscriber.closed.compareAndSet(false, true)) {
+                    Long flightId = subscriber.channel.flightId;
+                    dispatcherOf(flightId).execute(() -> detach(flightId, subscriber.emitter));
+                }
+            }
+        }
+    }
+
+    // 调整被卡住的写线程数，写线程池大小为配置的线程数加上被卡住的线程数（不超过补充上限）
+    private synchronized void adjustStuckWriters(int delta) {
+        stuckWriters += delta;
+        int size = Math.max(1, writerThreads) + Math.min(stuckWriters, MAX_EXTRA_WRITERS);
+        if (size > writers.getMaximumPoolSize()) {
+            writers.setMaximumPoolSize(size);
+            writers.setCorePoolSize(size);
+        } else if (size < writers.getMaximumPoolSize()) {
+            writers.setCorePoolSize(size);
+            writers.setMaximumPoolSize(size);
+        }
+    }
+
+    private ExecutorService dispatcherOf(Long flightId) {
+        return dispatchers[(int) Math.floorMod(flightId, (long) dispatchers.length)];
+    }
+
+    /**
+     * 单个航班的推送频道
+     */
+    private static final class Channel {
+        private final Long flightId;
+        private final Map<SseEmitter, Subscriber> subscribers = new LinkedHashMap<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        // 已推送给订阅者的版本，下一次推送从该版本开始取增量
+        private long version;
+
+        Channel(Long flightId) {
+            this.flightId = flightId;
+        }
+    }
+
+    /**
+     * 单个连接的发送队列，同一时刻最多一个写线程在发送，保证事件顺序
+     */
+    private final class Subscriber {
+        private final Channel channel;
+        private final SseEmitter emitter;
+        private final Queue<Outgoing> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger backlog = new AtomicInteger();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        // 当前发送的开始时间（0 表示未在发送）和是否已超过期限，由 this 保护（不使用 emitter 的锁，发送时它被持有）
+        private long sendingSince;
+        private boolean stuck;
+
+        Subscriber(Channel channel, SseEmitter emitter) {
+            this.channel = channel;
+            this.emitter = emitter;
+        }
+
+        void enqueue(SseEmitter.SseEventBuilder event, boolean count) {
+            if (closed.get()) {
+                return;
+            }
+            if (backlog.incrementAndGet() > maxBacklog) {
+                droppedSubscribers.increment();
+                log.debug("航班 {} 的推送连接发送积压超过 {} 条，关闭连接", channel.flightId, maxBacklog);
+                close(this);
+                return;
+            }
+            queue.add(new Outgoing(event, count));
+            if (draining.compareAndSet(false, true)) {
+                writers.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            do {
+                Outgoing next;
+                while ((next = queue.poll()) != null) {
+                    backlog.decrementAndGet();
+                    if (closed.get()) {
+                        continue;
+                    }
+                    beginSend();
+                    try {
+                        emitter.send(next.event);
+                        if (next.count) {
+                            pushedEvents.increment();
+                        }
+                    } catch (Exception e) {
+                        close(this);
+                    } finally {
+                        if (endSend()) {
+                            // 发送超过期限时已被移出频道，写线程恢复后关闭连接
+                            completeQuietly();
+                        }
+                    }
+                }
+                draining.set(false);
+            } while (!queue.isEmpty() && draining.compareAndSet(false, true));
+        }
+
+        private void beginSend() {
+            synchronized (this) {
+                sendingSince = System.currentTimeMillis();
+            }
+            sending.add(this);
+        }
+
+        // 发送结束，返回本次发送是否曾超过期限（此时撤下为其补充的写线程）
+        private boolean endSend() {
+            sending.remove(this);
+            synchronized (this) {
+                sendingSince = 0;
+                if (!stuck) {
+                    return false;
+                }
+                stuck = false;
+                adjustStuckWriters(-1);
+                return true;
+            }
+        }
+
+        // 发送开始于 deadline 之前且尚未处理时标记为超过期限并补充写线程，返回是否新标记
+        synchronized boolean expire(long deadline) {
+            if (sendingSince == 0 || sendingSince > deadline || stuck) {
+                return false;
+            }
+            stuck = true;
+            adjustStuckWriters(1);
+            return true;
+        }
+
+        private void completeQuietly() {
+            try {
+                emitter.complete();
+            } catch (Exception ignored) {
+                // 连接已断开
+            }
+        }
+    }
+
+    private static final class Outgoing {
+        private final SseEmitter.SseEventBuilder event;
+        private final boolean count;
+
+        Outgoing(SseEmitter.SseEventBuilder event, boolean count) {
+            this.event = event;
+            this.count = count;
+        }
+    }
+}
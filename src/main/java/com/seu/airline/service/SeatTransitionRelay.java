@@ -0,0 +1,102 @@
+package com.seu.airline.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.seu.airline.dto.SeatTransition;
+import com.seu.airline.dto.SeatTransitionMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 座位状态变化跨实例转发（Redis 发布/订阅）
+ * 本实例事务提交后的座位状态变化发布到频道，其他实例收到后按同样的方式更新各自的余量计数、座位图、
+ * 低价日历和实时推送，并删除受影响航线日期的搜索缓存；实例之间的偏差从对账间隔缩短为消息延迟。
+ * 发布订阅不保证送达（Redis 断连期间的消息会丢失），丢失的变化由定期对账修正。
+ * 频道由本服务订阅，Redis 不可用时定期重试，不影响应用启动。
+ */
+@Service
+@Slf4j
+public class SeatTransitionRelay implements MessageListener {
+
+    private static final String CHANNEL = "seat:transitions";
+
+    // 本实例标识，用于忽略自己发布的消息
+    private final String origin = UUID.randomUUID().toString();
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private FlightAvailabilityService flightAvailabilityService;
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    /**
+     * 订阅频道；Redis 不可用（启动时或断连后恢复失败）时定期重试
+     */
+    @Scheduled(fixedDelayString = "${airline.seat-relay.resubscribe-interval-ms:5000}")
+    public void ensureSubscribed() {
+        if (listenerContainer.isListening()) {
+            return;
+        }
+        try {
+            listenerContainer.stop();
+            listenerContainer.start();
+            log.info("已订阅座位状态变化转发频道");
+        } catch (Exception e) {
+            log.warn("订阅座位状态变化转发频道失败，稍后重试: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 发布本实例已提交的座位状态变化、各航班变化后的共享版本号及余量版本号
+     */
+    public void publish(List<SeatTransition> transitions, Map<Long, Long> versions, Map<Long, Long> inventoryVersions) {
+        try {
+            String json = objectMapper.writeValueAsString(
+                    new SeatTransitionMessage(origin, transitions, versions, inventoryVersions));
+            stringRedisTemplate.convertAndSend(CHANNEL, json);
+        } catch (Exception e) {
+            log.warn("转发座位状态变化失败，其他实例等待对账修正: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 应用其他实例提交的座位状态变化（在监听容器的单个线程中按到达顺序执行）
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            SeatTransitionMessage received = objectMapper.readValue(message.getBody(), SeatTransitionMessage.class);
+            if (origin.equals(received.getOrigin()) || received.getTransitions() == null) {
+                return;
+            }
+            flightAvailabilityService.applyRemoteTransitions(received.getTransitions(),
+                    received.getVersions() != null ? received.getVersions() : Collections.emptyMap(),
+                    received.getInventoryVersions() != null ? received.getInventoryVersions() : Collections.emptyMap());
+        } catch (Exception e) {
+            log.error("处理其他实例的座位状态变化失败", e);
+        }
+    }
+}
@@ -84,6 +84,12 @@ CREATE TABLE IF NOT EXISTS flights (
     INDEX idx_departure_time (departure_time)
 ) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COMMENT = '航班表';
 
+-- 创建号段主键表（座位、订单项、消息的主键按号段分配，支持 JDBC 批量插入）
+CREATE TABLE IF NOT EXISTS id_generators (
+    entity_name VARCHAR(64) NOT NULL PRIMARY KEY COMMENT '表名',
+    next_val BIGINT NOT NULL COMMENT '下一个号段的起始ID'
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COMMENT = '号段主键表';
+
 -- 创建座位表
 CREATE TABLE IF NOT EXISTS seats (
     id BIGINT AUTO_INCREMENT PRIMARY KEY,
@@ -113,10 +119,56 @@ CREATE TABLE IF NOT EXISTS orders (
     updated_at DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
     FOREIGN KEY (user_id) REFERENCES users (id),
     INDEX idx_order_number (order_number),
-    INDEX idx_user_id (user_id),
+    INDEX idx_user_created (user_id, created_at, id) COMMENT '优化按用户分页查询订单',
     INDEX idx_status (status)
 ) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COMMENT = '订单表';
 
+-- 创建订单摘要表（订单列表和详情的反规范化读模型，下单时写入，状态变化时同步）
+CREATE TABLE IF NOT EXISTS order_summaries (
+    order_id BIGINT PRIMARY KEY COMMENT '订单ID',
+    order_number VARCHAR(50) NOT NULL COMMENT '订单号',
+    user_id BIGINT NOT NULL COMMENT '用户ID',
+    status VARCHAR(20) NOT NULL COMMENT '订单状态',
+    total_amount DECIMAL(10, 2) NOT NULL COMMENT '订单总金额',
+    created_at DATETIME COMMENT '下单时间',
+    payment_time DATETIME COMMENT '支付时间',
+    updated_at DATETIME COMMENT '更新时间',
+    flight_id BIGINT COMMENT '航班ID',
+    flight_number VARCHAR(20) COMMENT '航班号',
+    departure_city VARCHAR(50) COMMENT '出发城市',
+    arrival_city VARCHAR(50) COMMENT '到达城市',
+    departure_time DATETIME COMMENT '起飞时间',
+    arrival_time DATETIME COMMENT '到达时间',
+    seat_type VARCHAR(20) COMMENT '舱位类型',
+    passengers TEXT NOT NULL COMMENT '乘客列表（JSON）',
+    INDEX idx_user_created (user_id, created_at, order_id) COMMENT '优化按用户分页查询订单',
+    INDEX idx_status (status),
+    INDEX idx_created_at (created_at),
+    INDEX idx_flight_id (flight_id)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COMMENT = '订单摘要表';
+
+-- 创建航班余量版本号表（座位状态变化在同一事务中递增，各实例据此忽略已包含在重新汇总中的变化）
+CREATE TABLE IF NOT EXISTS flight_inventory_versions (
+    flight_id BIGINT PRIMARY KEY COMMENT '航班ID',
+    version BIGINT NOT NULL COMMENT '余量版本号'
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COMMENT = '航班余量版本号表';
+
+-- 创建发件箱事件表（与订单、航班状态变化在同一事务中写入，后台分发为站内消息）
+CREATE TABLE IF NOT EXISTS outbox_events (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    aggregate_type VARCHAR(20) NOT NULL COMMENT '聚合类型（ORDER/FLIGHT）',
+    aggregate_id BIGINT NOT NULL COMMENT '订单ID或航班ID',
+    event_type VARCHAR(40) NOT NULL COMMENT '事件类型',
+    payload TEXT COMMENT '事件内容（JSON）',
+    status VARCHAR(20) NOT NULL DEFAULT 'PENDING' COMMENT '分发状态（PENDING/DISPATCHED/FAILED）',
+    attempts INT NOT NULL DEFAULT 0 COMMENT '分发失败次数',
+    next_attempt_at DATETIME NOT NULL COMMENT '下次分发时间',
+    last_error VARCHAR(500) COMMENT '最近一次失败原因',
+    created_at DATETIME NOT NULL COMMENT '创建时间',
+    dispatched_at DATETIME COMMENT '分发完成时间',
+    INDEX idx_status_next_attempt (status, next_attempt_at) COMMENT '优化领取待分发事件'
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COMMENT = '发件箱事件表';
+
 -- 创建乘客信息表
 CREATE TABLE IF NOT EXISTS passengers (
     id BIGINT AUTO_INCREMENT PRIMARY KEY COMMENT '乘客ID',
@@ -1694,6 +1746,21 @@ SELECT
 FROM users
 ORDER BY role, id;
 
+-- ====================================================================
+-- 号段主键起点：推进到各表现有最大ID之后（应用启动时也会自动推进）
+-- ====================================================================
+INSERT INTO id_generators (entity_name, next_val)
+SELECT 'seats', COALESCE(MAX(id), 0) + 1 FROM seats
+ON DUPLICATE KEY UPDATE next_val = GREATEST(id_generators.next_val, VALUES(next_val));
+
+INSERT INTO id_generators (entity_name, next_val)
+SELECT 'order_items', COALESCE(MAX(id), 0) + 1 FROM order_items
+ON DUPLICATE KEY UPDATE next_val = GREATEST(id_generators.next_val, VALUES(next_val));
+
+INSERT INTO id_generators (entity_name, next_val)
+SELECT 'messages', COALESCE(MAX(id), 0) + 1 FROM messages
+ON DUPLICATE KEY UPDATE next_val = GREATEST(id_generators.next_val, VALUES(next_val));
+
 -- ====================================================================
 -- 初始化完成提示
 -- ====================================================================
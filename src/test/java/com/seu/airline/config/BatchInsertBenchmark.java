@@ -0,0 +1,261 @@
+package com.seu.airline.config;
+
+import com.seu.airline.model.Airline;
+import com.seu.airline.model.Airport;
+import com.seu.airline.model.Flight;
+import com.seu.airline.model.Message;
+import com.seu.airline.model.Seat;
+import com.seu.airline.model.User;
+import com.seu.airline.repository.AirlineRepository;
+import com.seu.airline.repository.AirportRepository;
+import com.seu.airline.repository.FlightRepository;
+import com.seu.airline.repository.UserRepository;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EntityManager;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Table;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.function.IntFunction;
+
+/**
+ * 批量插入基准测试（不随 mvn test 运行，需显式指定：mvn test -Dtest=BatchInsertBenchmark）
+ * 分别以自增主键（IDENTITY，每行插入后取回主键，Hibernate 无法使用 JDBC 批次）和
+ * 号段主键 + JDBC 批次（seats / messages 实体的实际配置）插入相同的行，输出每秒插入行数。
+ * 自增主键的对照表与原表列相同，只在测试库中创建。默认使用测试环境的内存库，
+ * 可用 -Dspring.datasource.url=... 等参数指向 MySQL 测试库；每轮都在回滚的事务中执行，不留下数据。
+ * 行数和轮数通过 -Dbenchmark.rows、-Dbenchmark.rounds 指定。
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@Slf4j
+class BatchInsertBenchmark {
+
+    private static final int ROWS = Integer.getInteger("benchmark.rows", 1000);
+    private static final int ROUNDS = Integer.getInteger("benchmark.rounds", 3);
+
+    @Autowired
+    private AirportRepository airportRepository;
+
+    @Autowired
+    private AirlineRepository airlineRepository;
+
+    @Autowired
+    private FlightRepository flightRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private Long flightId;
+    private Long userId;
+
+    @BeforeAll
+    void createFixtures() {
+        Airport departure = airportRepository.save(airport("BMA"));
+        Airport arrival = airportRepository.save(airport("BMB"));
+        Airline airline = new Airline();
+        airline.setCode("BM");
+        airline.setName("基准航空");
+        airline = airlineRepository.save(airline);
+
+        Flight flight = new Flight();
+        flight.setFlightNumber("BM0001");
+        flight.setAirline(airline);
+        flight.setDepartureAirport(departure);
+        flight.setArrivalAirport(arrival);
+        flight.setDepartureTime(LocalDateTime.now().plusDays(1));
+        flight.setArrivalTime(LocalDateTime.now().plusDays(1).plusHours(2));
+        flightId = flightRepository.save(flight).getId();
+
+        User user = new User();
+        user.setUsername("benchmark");
+        user.setPassword("password");
+        user.setEmail("benchmark@example.com");
+        user.setRole(User.Role.PASSENGER);
+        userId = userRepository.save(user).getId();
+    }
+
+    @Test
+    void seats() {
+        compare("seats", i -> {
+            IdentitySeat seat = new IdentitySeat();
+            seat.setFlightId(flightId);
+            seat.setSeatNumber(String.format("Z%05d", i));
+            seat.setSeatType(Seat.SeatType.ECONOMY.name());
+            seat.setPrice(BigDecimal.valueOf(500));
+            seat.setStatus(Seat.SeatStatus.AVAILABLE.name());
+            seat.setCreatedAt(LocalDateTime.now());
+            seat.setUpdatedAt(LocalDateTime.now());
+            return seat;
+        }, i -> {
+            Seat seat = new Seat();
+            seat.setFlight(entityManager.getReference(Flight.class, flightId));
+            seat.setSeatNumber(String.format("Z%05d", i));
+            seat.setSeatType(Seat.SeatType.ECONOMY);
+            seat.setPrice(BigDecimal.valueOf(500));
+            return seat;
+        });
+    }
+
+    @Test
+    void messages() {
+        compare("messages", i -> {
+            IdentityMessage message = new IdentityMessage();
+            message.setUserId(userId);
+            message.setTitle("基准测试消息 " + i);
+            message.setContent("批量插入基准测试");
+            message.setMessageType("SYSTEM");
+            message.setPriority(1);
+            message.setIsRead(false);
+            message.setCreatedAt(LocalDateTime.now());
+            message.setUpdatedAt(LocalDateTime.now());
+            return message;
+        }, i -> {
+            Message message = new Message();
+            message.setUserId(userId);
+            message.setTitle("基准测试消息 " + i);
+            message.setContent("批量插入基准测试");
+            message.setMessageType("SYSTEM");
+            message.setCreatedAt(LocalDateTime.now());
+            message.setUpdatedAt(LocalDateTime.now());
+            return message;
+        });
+    }
+
+    // 第一轮预热（类加载、连接池、号段分配），之后每轮输出一次对比
+    private void compare(String table, IntFunction<Object> identity, IntFunction<Object> pooled) {
+        for (int round = 0; round <= ROUNDS; round++) {
+            long identityMs = measure(identity);
+            long pooledMs = measure(pooled);
+            if (round > 0) {
+                log.info("批量插入基准 {}：{} 行，自增主键 {} ms（{} 行/秒），号段主键+批次 {} ms（{} 行/秒），提升 {} 倍",
+                        table, ROWS, identityMs, rate(identityMs), pooledMs, rate(pooledMs),
+                        String.format("%.1f", (double) identityMs / Math.max(1, pooledMs)));
+            }
+        }
+    }
+
+    private long measure(IntFunction<Object> factory) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        return template.execute(status -> {
+            long start = System.nanoTime();
+            for (int i = 0; i < ROWS; i++) {
+                entityManager.persist(factory.apply(i));
+            }
+            entityManager.flush();
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            entityManager.clear();
+            status.setRollbackOnly();
+            return elapsedMs;
+        });
+    }
+
+    private static long rate(long elapsedMs) {
+        return ROWS * 1000L / Math.max(1, elapsedMs);
+    }
+
+    private static Airport airport(String code) {
+        Airport airport = new Airport();
+        airport.setCode(code);
+        airport.setName(code + "机场");
+        airport.setCity(code);
+        airport.setCountry("中国");
+        return airport;
+    }
+
+    // 与 seats 表列相同、使用自增主键的对照表
+    @Entity
+    @Table(name = "benchmark_identity_seats")
+    @Data
+    @NoArgsConstructor
+    static class IdentitySeat {
+        @Id
+        @GeneratedValue(strategy = GenerationType.IDENTITY)
+        private Long id;
+
+        @Column(name = "flight_id", nullable = false)
+        private Long flightId;
+
+        @Column(name = "seat_number", nullable = false, length = 10)
+        private String seatNumber;
+
+        @Column(name = "seat_type", nullable = false)
+        private String seatType;
+
+        @Column(name = "price", nullable = false, precision = 10, scale = 2)
+        private BigDecimal price;
+
+        @Column(name = "status", nullable = false)
+        private String status;
+
+        @Column(name = "created_at")
+        private LocalDateTime createdAt;
+
+        @Column(name = "updated_at")
+        private LocalDateTime updatedAt;
+    }
+
+    // 与 messages 表列相同、使用自增主键的对照表
+    @Entity
+    @Table(name = "benchmark_identity_messages")
+    @Data
+    @NoArgsConstructor
+    static class IdentityMessage {
+        @Id
+        @GeneratedValue(strategy = GenerationType.IDENTITY)
+        private Long id;
+
+        @Column(name = "user_id", nullable = false)
+        private Long userId;
+
+        @Column(nullable = false, length = 200)
+        private String title;
+
+        @Column(nullable = false, columnDefinition = "TEXT")
+        private String content;
+
+        @Column(name = "message_type", nullable = false, length = 20)
+        private String messageType;
+
+        @Column(name = "related_id")
+        private Long relatedId;
+
+        @Column(nullable = false)
+        private Integer priority;
+
+        @Column(name = "is_read", nullable = false)
+        private Boolean isRead;
+
+        @Column(name = "read_time")
+        private LocalDateTime readTime;
+
+        @Column(name = "created_at", nullable = false, updatable = false)
+        private LocalDateTime createdAt;
+
+        @Column(name = "updated_at")
+        private LocalDateTime updatedAt;
+    }
+}
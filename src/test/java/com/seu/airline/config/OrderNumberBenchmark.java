@@ -0,0 +1,103 @@
+package com.seu.airline.config;
+
+import com.seu.airline.service.OrderNumberGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
+
+/**
+ * 订单号生成基准测试（不随 mvn test 运行，需显式指定：mvn test -Dtest=OrderNumberBenchmark）
+ * 多线程并发生成订单号，对比原来的“时间 + 随机 UUID 片段”方式和 OrderNumberGenerator 的吞吐量与重复数，
+ * 并检查新生成器在每个线程内是否单调递增。
+ * 线程数、每个线程生成的订单号数和轮数通过 -Dbenchmark.threads、-Dbenchmark.order-numbers、-Dbenchmark.rounds 指定。
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@Slf4j
+class OrderNumberBenchmark {
+
+    private final int threads = Integer.getInteger("benchmark.threads", 8);
+    private final int perThread = Integer.getInteger("benchmark.order-numbers", 100000);
+    private final int rounds = Integer.getInteger("benchmark.rounds", 3);
+
+    @Autowired
+    private OrderNumberGenerator orderNumberGenerator;
+
+    @Test
+    void compareGenerators() throws Exception {
+        Supplier<String> legacy = () -> "ORD" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"))
+                + UUID.randomUUID().toString().substring(0, 6).toUpperCase();
+
+        // 第一轮预热
+        for (int round = 0; round <= rounds; round++) {
+            boolean report = round > 0;
+            measure("时间+UUID", legacy, report);
+            measure("Snowflake", orderNumberGenerator::next, report);
+        }
+    }
+
+    private void measure(String name, Supplier<String> generator, boolean report) throws InterruptedException {
+        String[][] results = new String[threads][perThread];
+        boolean[] ordered = new boolean[threads];
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    String[] numbers = results[index];
+                    for (int i = 0; i < numbers.length; i++) {
+                        numbers[i] = generator.get();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }, "order-number-benchmark-" + t);
+            thread.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsedMs = Math.max(1, (System.nanoTime() - begin) / 1_000_000);
+        if (!report) {
+            return;
+        }
+
+        // 计时结束后再检查重复和单调性，不影响吞吐量
+        Set<String> unique = new HashSet<>(threads * perThread * 2);
+        int duplicates = 0;
+        for (int t = 0; t < threads; t++) {
+            ordered[t] = true;
+            String previous = null;
+            for (String number : results[t]) {
+                if (!unique.add(number)) {
+                    duplicates++;
+                }
+                if (previous != null && number.compareTo(previous) <= 0) {
+                    ordered[t] = false;
+                }
+                previous = number;
+            }
+        }
+        boolean monotonic = true;
+        for (boolean value : ordered) {
+            monotonic &= value;
+        }
+        long total = (long) threads * perThread;
+        log.info("订单号基准 {}：{} 线程共 {} 个，耗时 {} ms（{} 个/秒），重复 {} 个，线程内单调递增: {}",
+                name, threads, total, elapsedMs, total * 1000 / elapsedMs, duplicates, monotonic);
+    }
+}
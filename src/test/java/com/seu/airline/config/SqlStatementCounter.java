@@ -0,0 +1,37 @@
+package com.seu.airline.config;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * 按线程统计 Hibernate 执行的 SQL 语句数（仅测试使用）
+ * 通过 application-test.yml 中的 hibernate.session_factory.statement_inspector 注册。
+ * MockMvc 在测试线程中执行请求，reset 之后到 count 之间的语句即为一次请求执行的语句。
+ */
+public class SqlStatementCounter implements StatementInspector {
+
+    private static final ThreadLocal<int[]> COUNTER = new ThreadLocal<>();
+
+    @Override
+    public String inspect(String sql) {
+        int[] counter = COUNTER.get();
+        if (counter != null) {
+            counter[0]++;
+        }
+        return sql;
+    }
+
+    /**
+     * 清零并开始统计当前线程的语句数
+     */
+    public static void reset() {
+        COUNTER.set(new int[1]);
+    }
+
+    /**
+     * 自上次 reset 以来当前线程执行的语句数
+     */
+    public static int count() {
+        int[] counter = COUNTER.get();
+        return counter != null ? counter[0] : 0;
+    }
+}
@@ -0,0 +1,254 @@
+package com.seu.airline.controller;
+
+import com.seu.airline.config.SqlStatementCounter;
+import com.seu.airline.model.Airline;
+import com.seu.airline.model.Airport;
+import com.seu.airline.model.Flight;
+import com.seu.airline.model.Order;
+import com.seu.airline.model.OrderItem;
+import com.seu.airline.model.Seat;
+import com.seu.airline.model.User;
+import com.seu.airline.repository.AirlineRepository;
+import com.seu.airline.repository.AirportRepository;
+import com.seu.airline.repository.FlightRepository;
+import com.seu.airline.repository.OrderItemRepository;
+import com.seu.airline.repository.OrderRepository;
+import com.seu.airline.repository.SeatRepository;
+import com.seu.airline.repository.UserRepository;
+import com.seu.airline.security.UserDetailsImpl;
+import com.seu.airline.service.FlightAvailabilityService;
+import com.seu.airline.service.FlightSearchIndex;
+import com.seu.airline.service.OrderSummaryService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 读接口的 SQL 语句数上限
+ * 每个接口在多个订单、多名乘客的数据上执行一次，断言执行的语句数不超过该接口的预算；
+ * 出现按订单或按乘客逐条查询（N+1）时语句数随数据量增长，测试失败。
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class SqlBudgetTest {
+
+    private static final int ORDERS = 3;
+    private static final int PASSENGERS_PER_ORDER = 2;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private AirportRepository airportRepository;
+
+    @Autowired
+    private AirlineRepository airlineRepository;
+
+    @Autowired
+    private FlightRepository flightRepository;
+
+    @Autowired
+    private SeatRepository seatRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+
+    @Autowired
+    private OrderSummaryService orderSummaryService;
+
+    @Autowired
+    private FlightSearchIndex flightSearchIndex;
+
+    @Autowired
+    private FlightAvailabilityService flightAvailabilityService;
+
+    private LocalDate departureDate;
+    private Flight flight;
+    private User passenger;
+    private Long orderId;
+
+    @BeforeAll
+    void createFixtures() {
+        Airport departure = airportRepository.save(airport("NKG", "南京"));
+        Airport arrival = airportRepository.save(airport("PEK", "北京"));
+
+        Airline airline = new Airline();
+        airline.setCode("MU");
+        airline.setName("东方航空");
+        airline = airlineRepository.save(airline);
+
+        departureDate = LocalDate.now().plusDays(1);
+        flight = new Flight();
+        flight.setFlightNumber("MU2801");
+        flight.setAirline(airline);
+        flight.setDepartureAirport(departure);
+        flight.setArrivalAirport(arrival);
+        flight.setDepartureTime(departureDate.atTime(10, 0));
+        flight.setArrivalTime(departureDate.atTime(12, 0));
+        flight = flightRepository.save(flight);
+
+        List<Seat> seats = new ArrayList<>();
+        for (int i = 1; i <= 12; i++) {
+            Seat seat = new Seat();
+            seat.setFlight(flight);
+            seat.setSeatNumber(i + "A");
+            seat.setSeatType(i <= 2 ? Seat.SeatType.BUSINESS : Seat.SeatType.ECONOMY);
+            seat.setPrice(new BigDecimal(i <= 2 ? "2000.00" : "800.00"));
+            seats.add(seat);
+        }
+        seats = seatRepository.saveAll(seats);
+
+        passenger = new User();
+        passenger.setUsername("passenger");
+        passenger.setPassword("password");
+        passenger.setEmail("passenger@example.com");
+        passenger.setRole(User.Role.PASSENGER);
+        passenger = userRepository.save(passenger);
+
+        // 第一个订单待支付（座位预留），其余已支付（座位已出票）
+        for (int i = 0; i < ORDERS; i++) {
+            boolean paid = i > 0;
+            Order order = new Order();
+            order.setOrderNumber("ORD" + (1000 + i));
+            order.setUser(passenger);
+            order.setTotalAmount(new BigDecimal("1600.00"));
+            order.setStatus(paid ? Order.OrderStatus.PAID : Order.OrderStatus.PENDING);
+            order = orderRepository.save(order);
+            if (orderId == null) {
+                orderId = order.getId();
+            }
+            for (int j = 0; j < PASSENGERS_PER_ORDER; j++) {
+                Seat seat = seats.get(2 + i * PASSENGERS_PER_ORDER + j);
+                seat.setStatus(paid ? Seat.SeatStatus.OCCUPIED : Seat.SeatStatus.RESERVED);
+                seatRepository.save(seat);
+
+                OrderItem item = new OrderItem();
+                item.setOrder(order);
+                item.setSeat(seat);
+                item.setPassengerName("乘客" + i + "-" + j);
+                item.setPassengerIdCard("32010219900101000" + j);
+                item.setPrice(seat.getPrice());
+                orderItemRepository.save(item);
+            }
+        }
+
+        orderSummaryService.backfill();
+        flightSearchIndex.rebuild();
+        flightAvailabilityService.reloadAll();
+    }
+
+    @Test
+    void flightSearch() throws Exception {
+        assertStatementsAtMost(0, get("/flight/search")
+                .param("departureCity", "南京")
+                .param("arrivalCity", "北京")
+                .param("departureDate", departureDate.toString()));
+    }
+
+    @Test
+    void flightSeats() throws Exception {
+        // 首次请求加载座位图（1 条，取得共享版本号时）和座位列表（1 条）
+        assertStatementsAtMost(2, get("/seats/flight/{flightId}", flight.getId()).with(user(principal(passenger))));
+    }
+
+    @Test
+    void userOrders() throws Exception {
+        assertStatementsAtMost(1, get("/orders").with(user(principal(passenger))));
+    }
+
+    @Test
+    void userOrderPage() throws Exception {
+        assertStatementsAtMost(1, get("/orders").param("size", "2").with(user(principal(passenger))));
+    }
+
+    @Test
+    void userOrderDetail() throws Exception {
+        assertStatementsAtMost(1, get("/orders/{id}", orderId).with(user(principal(passenger))));
+    }
+
+    @Test
+    void staffOrderDetail() throws Exception {
+        assertStatementsAtMost(1, get("/staff/v2/orders/{id}", orderId).with(user(staff())));
+    }
+
+    @Test
+    void staffFlightPassengers() throws Exception {
+        // 航班是否存在（1 条）和乘客名单（1 条）
+        assertStatementsAtMost(2, get("/staff/flights/{id}/passengers", flight.getId()).with(user(staff())));
+    }
+
+    @Test
+    void adminOrders() throws Exception {
+        assertStatementsAtMost(1, get("/admin/v2/orders").with(user(admin())));
+    }
+
+    @Test
+    void adminOrdersByStatus() throws Exception {
+        assertStatementsAtMost(1, get("/admin/v2/orders/status/{status}", "PAID").with(user(admin())));
+    }
+
+    @Test
+    void adminOrdersByPeriod() throws Exception {
+        assertStatementsAtMost(1, get("/admin/v2/orders/period")
+                .param("startDate", LocalDate.now().minusDays(1).toString())
+                .param("endDate", LocalDate.now().plusDays(1).toString())
+                .with(user(admin())));
+    }
+
+    @Test
+    void adminOrdersByUser() throws Exception {
+        assertStatementsAtMost(1, get("/admin/v2/orders/user/{userId}", passenger.getId()).with(user(admin())));
+    }
+
+    // 执行一次请求，断言请求成功且执行的SQL语句数不超过预算
+    private void assertStatementsAtMost(int budget, MockHttpServletRequestBuilder request) throws Exception {
+        SqlStatementCounter.reset();
+        mockMvc.perform(request).andExpect(status().isOk());
+        assertThat(SqlStatementCounter.count()).isLessThanOrEqualTo(budget);
+    }
+
+    private static Airport airport(String code, String city) {
+        Airport airport = new Airport();
+        airport.setCode(code);
+        airport.setName(city + "机场");
+        airport.setCity(city);
+        airport.setCountry("中国");
+        return airport;
+    }
+
+    private static UserDetailsImpl principal(User user) {
+        return new UserDetailsImpl(user.getId(), user.getUsername(), user.getPassword(), user.getEmail(), user.getRole());
+    }
+
+    private static UserDetailsImpl staff() {
+        return new UserDetailsImpl(-1L, "staff", "password", "staff@example.com", User.Role.STAFF);
+    }
+
+    private static UserDetailsImpl admin() {
+        return new UserDetailsImpl(-2L, "admin", "password", "admin@example.com", User.Role.ADMIN);
+    }
+}
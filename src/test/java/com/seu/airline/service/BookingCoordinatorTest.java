@@ -0,0 +1,121 @@
+package com.seu.airline.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 订票协调器的分段锁
+ * 4 个分段：航班 1 与航班 5 同段，航班 2 在另一段。等待超时的请求不执行操作、不留下已取得的分段锁，
+ * 不同分段互不阻塞，多航班请求按分段序号加锁不会死锁。
+ */
+class BookingCoordinatorTest {
+
+    private static final long LOCK_TIMEOUT_MS = 200;
+
+    private BookingCoordinator coordinator;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        coordinator = new BookingCoordinator();
+        ReflectionTestUtils.setField(coordinator, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(coordinator, "stripeCount", 4);
+        ReflectionTestUtils.setField(coordinator, "lockTimeoutMs", LOCK_TIMEOUT_MS);
+        ReflectionTestUtils.setField(coordinator, "waitWarnMs", 50L);
+        coordinator.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void waitingOnBusyStripeTimesOutWithoutRunning() throws Exception {
+        Future<?> holder = hold(Collections.singletonList(1L));
+
+        AtomicBoolean ran = new AtomicBoolean();
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> coordinator.execute("order.create", Collections.singletonList(5L), () -> {
+            ran.set(true);
+            return null;
+        })).isInstanceOf(RuntimeException.class).hasMessageContaining("订票人数过多");
+        long waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertThat(ran).isFalse();
+        assertThat(waitedMs).isBetween(LOCK_TIMEOUT_MS - 10, LOCK_TIMEOUT_MS * 10);
+        // 超时的请求已退出排队
+        assertThat(coordinator.getHotFlights(10)).containsOnlyKeys(1L);
+
+        // 其他分段的航班不受影响
+        assertThat(coordinator.execute("order.create", Collections.singletonList(2L), () -> "ok")).isEqualTo("ok");
+
+        release.countDown();
+        holder.get(5, TimeUnit.SECONDS);
+        assertThat(coordinator.getHotFlights(10)).isEmpty();
+    }
+
+    @Test
+    void timeoutOnLaterStripeReleasesEarlierOnes() throws Exception {
+        // 航班 2 的分段被占用；同时涉及航班 1、2 的请求先取得航班 1 的分段，等待航班 2 超时
+        hold(Collections.singletonList(2L));
+        assertThatThrownBy(() -> coordinator.execute("order.create", Arrays.asList(2L, 1L), () -> null))
+                .isInstanceOf(RuntimeException.class);
+
+        // 航班 1 的分段已释放，其他线程可以立即取得
+        Future<String> other = executor.submit(() ->
+                coordinator.execute("order.pay", Collections.singletonList(1L), () -> "ok"));
+        assertThat(other.get(LOCK_TIMEOUT_MS / 2, TimeUnit.MILLISECONDS)).isEqualTo("ok");
+    }
+
+    @Test
+    void opposingMultiFlightRequestsDoNotDeadlock() throws Exception {
+        ReflectionTestUtils.setField(coordinator, "lockTimeoutMs", 5_000L);
+        Future<?> forward = executor.submit(() -> repeat(Arrays.asList(1L, 2L)));
+        Future<?> backward = executor.submit(() -> repeat(Arrays.asList(2L, 1L)));
+
+        forward.get(30, TimeUnit.SECONDS);
+        backward.get(30, TimeUnit.SECONDS);
+        assertThat(coordinator.getHotFlights(10)).isEmpty();
+    }
+
+    private void repeat(Collection<Long> flightIds) {
+        for (int i = 0; i < 2_000; i++) {
+            coordinator.execute("order.create", flightIds, () -> null);
+        }
+    }
+
+    // 在另一个线程中持有航班锁直到 release，返回时锁已取得
+    private Future<?> hold(Collection<Long> flightIds) throws InterruptedException {
+        CountDownLatch acquired = new CountDownLatch(1);
+        Future<?> holder = executor.submit(() -> coordinator.execute("order.create", flightIds, () -> {
+            acquired.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        assertThat(acquired.await(5, TimeUnit.SECONDS)).isTrue();
+        return holder;
+    }
+}
@@ -0,0 +1,158 @@
+package com.seu.airline.service;
+
+import com.seu.airline.dto.SeatTransition;
+import com.seu.airline.model.FlightInventoryVersion;
+import com.seu.airline.model.Seat;
+import com.seu.airline.repository.FlightInventoryVersionRepository;
+import com.seu.airline.repository.SeatRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 航班余量计数的版本号去重
+ * 重新汇总已包含的变化再到达时不能被计入两次，汇总期间应用到旧计数上、汇总中没有的变化不能丢失。
+ */
+class FlightAvailabilityServiceTest {
+
+    private static final long FLIGHT_ID = 1L;
+    private static final BigDecimal PRICE = new BigDecimal("500.00");
+
+    private FlightAvailabilityService service;
+    private SeatRepository seatRepository;
+    private FlightInventoryVersionRepository versionRepository;
+
+    @BeforeEach
+    void setUp() {
+        seatRepository = mock(SeatRepository.class);
+        versionRepository = mock(FlightInventoryVersionRepository.class);
+
+        service = new FlightAvailabilityService();
+        ReflectionTestUtils.setField(service, "seatRepository", seatRepository);
+        ReflectionTestUtils.setField(service, "flightInventoryVersionRepository", versionRepository);
+        ReflectionTestUtils.setField(service, "eventPublisher", mock(ApplicationEventPublisher.class));
+        ReflectionTestUtils.setField(service, "seatTransitionRelay", mock(SeatTransitionRelay.class));
+        ReflectionTestUtils.setField(service, "seatMapService", mock(SeatMapService.class));
+        ReflectionTestUtils.setField(service, "transactionManager", mock(PlatformTransactionManager.class));
+        service.init();
+    }
+
+    @Test
+    void deltaCoveredByReloadIsIgnored() {
+        stubSnapshot(5L, 10);
+        service.reload(Collections.singletonList(FLIGHT_ID));
+
+        // 版本 5 的变化已包含在汇总中（例如转发消息晚于按需汇总到达）
+        service.applyRemoteTransitions(reserve(), Collections.emptyMap(), versions(5L));
+        assertThat(economySeats()).isEqualTo(10);
+
+        service.applyRemoteTransitions(reserve(), Collections.emptyMap(), versions(6L));
+        assertThat(economySeats()).isEqualTo(9);
+    }
+
+    @Test
+    void deltaAppliedDuringReloadIsKeptWhenSnapshotMissesIt() {
+        stubSnapshot(5L, 10);
+        service.reload(Collections.singletonList(FLIGHT_ID));
+
+        // 汇总查询进行中到达版本 6 的变化，快照仍停在版本 5
+        when(seatRepository.summarizeAvailableFaresByFlightIds(anyCollection())).thenAnswer(invocation -> {
+            service.applyRemoteTransitions(reserve(), Collections.emptyMap(), versions(6L));
+            return buckets(10);
+        });
+        service.reload(Collections.singletonList(FLIGHT_ID));
+
+        assertThat(economySeats()).isEqualTo(9);
+    }
+
+    @Test
+    void deltaAppliedDuringReloadIsNotCountedTwiceWhenSnapshotHasIt() {
+        stubSnapshot(5L, 10);
+        service.reload(Collections.singletonList(FLIGHT_ID));
+
+        // 版本 6 的变化在汇总查询进行中到达，快照已包含它
+        when(versionRepository.findByFlightIdIn(anyCollection())).thenReturn(versionRows(6L));
+        when(seatRepository.summarizeAvailableFaresByFlightIds(anyCollection())).thenAnswer(invocation -> {
+            service.applyRemoteTransitions(reserve(), Collections.emptyMap(), versions(6L));
+            return buckets(9);
+        });
+        service.reload(Collections.singletonList(FLIGHT_ID));
+        assertThat(economySeats()).isEqualTo(9);
+
+        // 转发消息重复到达也不再计入
+        service.applyRemoteTransitions(reserve(), Collections.emptyMap(), versions(6L));
+        assertThat(economySeats()).isEqualTo(9);
+    }
+
+    @Test
+    void olderSnapshotDoesNotReplaceNewerCounts() {
+        stubSnapshot(7L, 8);
+        service.reload(Collections.singletonList(FLIGHT_ID));
+
+        stubSnapshot(6L, 9);
+        service.reload(Collections.singletonList(FLIGHT_ID));
+
+        assertThat(economySeats()).isEqualTo(8);
+    }
+
+    private void stubSnapshot(long version, int available) {
+        when(versionRepository.findByFlightIdIn(anyCollection())).thenReturn(versionRows(version));
+        when(seatRepository.summarizeAvailableFaresByFlightIds(anyCollection())).thenReturn(buckets(available));
+    }
+
+    private int economySeats() {
+        return service.peek(FLIGHT_ID).getEconomySeats();
+    }
+
+    private static List<SeatTransition> reserve() {
+        return Collections.singletonList(new SeatTransition(100L, FLIGHT_ID, Seat.SeatType.ECONOMY, PRICE,
+                Seat.SeatStatus.AVAILABLE, Seat.SeatStatus.RESERVED));
+    }
+
+    private static Map<Long, Long> versions(long version) {
+        return Collections.singletonMap(FLIGHT_ID, version);
+    }
+
+    private static List<FlightInventoryVersion> versionRows(long version) {
+        FlightInventoryVersion row = new FlightInventoryVersion();
+        row.setFlightId(FLIGHT_ID);
+        row.setVersion(version);
+        return Collections.singletonList(row);
+    }
+
+    private static List<SeatRepository.FareBucketView> buckets(int available) {
+        return Collections.singletonList(new SeatRepository.FareBucketView() {
+            @Override
+            public Long getFlightId() {
+                return FLIGHT_ID;
+            }
+
+            @Override
+            public Seat.SeatType getSeatType() {
+                return Seat.SeatType.ECONOMY;
+            }
+
+            @Override
+            public BigDecimal getPrice() {
+                return PRICE;
+            }
+
+            @Override
+            public Long getAvailable() {
+                return (long) available;
+            }
+        });
+    }
+}
@@ -0,0 +1,168 @@
+package com.seu.airline.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 请求幂等处理
+ * 同一幂等键的重复请求只执行一次：完成后重放保存的响应，内容不同返回 422，
+ * 第一个请求仍在处理时并发到达的重复请求等待，超过等待时间返回 409。
+ */
+class IdempotencyServiceTest {
+
+    private static final String OPERATION = "order.create";
+    private static final Long USER_ID = 42L;
+    private static final String KEY = "7f1c2d3e";
+
+    private IdempotencyService service;
+    private final Map<String, Object> store = new ConcurrentHashMap<>();
+    private final AtomicInteger executions = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        // 用内存 Map 模拟 Redis 的 SET NX / GET / SET / DEL
+        RedisService redisService = mock(RedisService.class);
+        when(redisService.setIfAbsent(anyString(), any(), anyLong(), any()))
+                .thenAnswer(invocation -> store.putIfAbsent(invocation.getArgument(0), invocation.getArgument(1)) == null);
+        when(redisService.get(anyString())).thenAnswer(invocation -> store.get(invocation.<String>getArgument(0)));
+        when(redisService.delete(anyString())).thenAnswer(invocation -> store.remove(invocation.<String>getArgument(0)) != null);
+        doAnswer(invocation -> store.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(redisService).set(anyString(), any(), anyLong(), any());
+
+        service = new IdempotencyService();
+        ReflectionTestUtils.setField(service, "redisService", redisService);
+        ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "ttlSeconds", 86400L);
+        ReflectionTestUtils.setField(service, "processingTtlSeconds", 60L);
+        ReflectionTestUtils.setField(service, "waitMs", 10_000L);
+    }
+
+    @Test
+    void completedRequestIsReplayedWithoutExecutingAgain() {
+        ResponseEntity<?> first = service.execute(OPERATION, USER_ID, KEY, request(1L), this::createOrder);
+        ResponseEntity<?> second = service.execute(OPERATION, USER_ID, KEY, request(1L), this::createOrder);
+
+        assertThat(executions.get()).isEqualTo(1);
+        assertThat(first.getHeaders().containsKey(IdempotencyService.REPLAYED_HEADER)).isFalse();
+        assertThat(second.getStatusCodeValue()).isEqualTo(200);
+        assertThat(second.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER)).isEqualTo("true");
+        assertThat(second.getBody()).isEqualTo("{\"orderNumber\":\"ORD1\"}");
+    }
+
+    @Test
+    void sameKeyWithDifferentRequestIsRejected() {
+        service.execute(OPERATION, USER_ID, KEY, request(1L), this::createOrder);
+        ResponseEntity<?> reused = service.execute(OPERATION, USER_ID, KEY, request(2L), this::createOrder);
+
+        assertThat(reused.getStatusCodeValue()).isEqualTo(422);
+        assertThat(executions.get()).isEqualTo(1);
+    }
+
+    @Test
+    void concurrentDuplicateGetsConflictWhileFirstIsStillRunning() throws Exception {
+        ReflectionTestUtils.setField(service, "waitMs", 200L);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<ResponseEntity<?>> first = executor.submit(() ->
+                    service.execute(OPERATION, USER_ID, KEY, request(1L), () -> {
+                        running.countDown();
+                        await(finish);
+                        return createOrder();
+                    }));
+            assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+
+            ResponseEntity<?> duplicate = service.execute(OPERATION, USER_ID, KEY, request(1L), this::createOrder);
+            assertThat(duplicate.getStatusCodeValue()).isEqualTo(409);
+
+            finish.countDown();
+            assertThat(first.get(5, TimeUnit.SECONDS).getStatusCodeValue()).isEqualTo(200);
+            assertThat(executions.get()).isEqualTo(1);
+        } finally {
+            finish.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void concurrentDuplicateWaitsAndReplaysWhenFirstFinishesInTime() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            executor.submit(() -> service.execute(OPERATION, USER_ID, KEY, request(1L), () -> {
+                running.countDown();
+                await(finish);
+                return createOrder();
+            }));
+            assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+            Future<ResponseEntity<?>> duplicate = executor.submit(() ->
+                    service.execute(OPERATION, USER_ID, KEY, request(1L), this::createOrder));
+
+            Thread.sleep(100);
+            finish.countDown();
+
+            ResponseEntity<?> replayed = duplicate.get(5, TimeUnit.SECONDS);
+            assertThat(replayed.getStatusCodeValue()).isEqualTo(200);
+            assertThat(replayed.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER)).isEqualTo("true");
+            assertThat(executions.get()).isEqualTo(1);
+        } finally {
+            finish.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void failedRequestReleasesKeyForRetry() {
+        ResponseEntity<?> busy = service.execute(OPERATION, USER_ID, KEY, request(1L),
+                () -> ResponseEntity.status(503).build());
+        assertThat(busy.getStatusCodeValue()).isEqualTo(503);
+
+        ResponseEntity<?> retried = service.execute(OPERATION, USER_ID, KEY, request(1L), this::createOrder);
+        assertThat(retried.getStatusCodeValue()).isEqualTo(200);
+        assertThat(retried.getHeaders().containsKey(IdempotencyService.REPLAYED_HEADER)).isFalse();
+        assertThat(executions.get()).isEqualTo(1);
+    }
+
+    private ResponseEntity<?> createOrder() {
+        return ResponseEntity.ok(Collections.singletonMap("orderNumber", "ORD" + executions.incrementAndGet()));
+    }
+
+    private static Map<String, Object> request(Long flightId) {
+        return Collections.singletonMap("flightId", flightId);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
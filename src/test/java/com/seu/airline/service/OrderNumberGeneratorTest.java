@@ -0,0 +1,114 @@
+package com.seu.airline.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 订单号生成器在并发和时钟回拨下的唯一性与顺序
+ */
+class OrderNumberGeneratorTest {
+
+    private static final int NODE_ID = 5;
+    private static final long EPOCH = 1704067200000L;
+    private static final int THREADS = 8;
+    private static final int PER_THREAD = 20_000;
+
+    private OrderNumberGenerator generator;
+
+    @BeforeEach
+    void setUp() {
+        generator = new OrderNumberGenerator();
+        ReflectionTestUtils.setField(generator, "configuredNodeId", NODE_ID);
+        generator.init();
+    }
+
+    @Test
+    void idsAreUniqueAndIncreasingPerThreadUnderContention() throws Exception {
+        // 每毫秒最多 4096 个序号，16 万个ID必然用完序号并借用后续毫秒
+        Set<Long> all = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                results.add(executor.submit(() -> {
+                    start.await(5, TimeUnit.SECONDS);
+                    long previous = Long.MIN_VALUE;
+                    boolean increasing = true;
+                    for (int i = 0; i < PER_THREAD; i++) {
+                        long id = generator.nextId();
+                        increasing &= id > previous;
+                        previous = id;
+                        all.add(id);
+                    }
+                    return increasing;
+                }));
+            }
+            start.countDown();
+            for (Future<Boolean> result : results) {
+                assertThat(result.get(30, TimeUnit.SECONDS)).as("单个线程取得的ID递增").isTrue();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(all).hasSize(THREADS * PER_THREAD);
+        assertThat(all).allMatch(id -> ((id >>> 12) & 1023) == NODE_ID);
+    }
+
+    @Test
+    void clockRollbackKeepsIdsIncreasing() {
+        // 上一个ID取自 5 秒之后（相当于系统时钟回拨了 5 秒）
+        long issuedAt = System.currentTimeMillis() - EPOCH + 5_000;
+        state().set((issuedAt << 12) | 10);
+        long lastId = (issuedAt << 22) | ((long) NODE_ID << 12) | 10;
+
+        long previous = lastId;
+        for (int i = 0; i < 10_000; i++) {
+            long id = generator.nextId();
+            assertThat(id).isGreaterThan(previous);
+            assertThat(id >>> 22).as("回拨期间不使用更早的时间戳").isGreaterThanOrEqualTo(issuedAt);
+            previous = id;
+        }
+    }
+
+    @Test
+    void exhaustedSequenceBorrowsNextMillisecond() {
+        long issuedAt = System.currentTimeMillis() - EPOCH + 5_000;
+        state().set((issuedAt << 12) | 4095);
+
+        long id = generator.nextId();
+
+        assertThat(id >>> 22).isEqualTo(issuedAt + 1);
+        assertThat(id & 4095).isZero();
+    }
+
+    @Test
+    void orderNumbersSortInGenerationOrder() {
+        String previous = generator.next();
+        for (int i = 0; i < 10_000; i++) {
+            String current = generator.next();
+            assertThat(current).hasSize(previous.length()).startsWith("ORD");
+            assertThat(current.compareTo(previous)).isPositive();
+            previous = current;
+        }
+    }
+
+    private AtomicLong state() {
+        return (AtomicLong) ReflectionTestUtils.getField(generator, "state");
+    }
+}
@@ -0,0 +1,260 @@
+package com.seu.airline.service;
+
+import com.seu.airline.model.Airline;
+import com.seu.airline.model.Airport;
+import com.seu.airline.model.Flight;
+import com.seu.airline.model.Order;
+import com.seu.airline.model.OrderItem;
+import com.seu.airline.model.OutboxEvent;
+import com.seu.airline.model.Seat;
+import com.seu.airline.model.User;
+import com.seu.airline.repository.AirlineRepository;
+import com.seu.airline.repository.AirportRepository;
+import com.seu.airline.repository.FlightRepository;
+import com.seu.airline.repository.OrderItemRepository;
+import com.seu.airline.repository.OrderRepository;
+import com.seu.airline.repository.SeatRepository;
+import com.seu.airline.repository.UserRepository;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 订单状态机的并发结果
+ * 支付与超时取消以 当前时间 - 保留时长 为界互斥；两者同时满足条件并发执行时，条件更新只允许其中一个生效，
+ * 订单状态与座位状态始终一致（已支付对应已出票，已取消对应可售）。
+ * 时间截到整秒，避免数据库时间精度与参数精度不同影响期限边界的比较。
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class OrderStateMachineTest {
+
+    private static final int RACES = 20;
+
+    @Autowired
+    private OrderStateMachine orderStateMachine;
+
+    @Autowired
+    private AirportRepository airportRepository;
+
+    @Autowired
+    private AirlineRepository airlineRepository;
+
+    @Autowired
+    private FlightRepository flightRepository;
+
+    @Autowired
+    private SeatRepository seatRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${airline.booking.hold-minutes:30}")
+    private long holdMinutes;
+
+    private TransactionTemplate transactionTemplate;
+    private Flight flight;
+    private User passenger;
+    private final AtomicInteger seatNumbers = new AtomicInteger();
+
+    @BeforeAll
+    void createFixtures() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+
+        Airport departure = airportRepository.save(airport("SHA", "上海"));
+        Airport arrival = airportRepository.save(airport("CAN", "广州"));
+        Airline airline = new Airline();
+        airline.setCode("CZ");
+        airline.setName("南方航空");
+        airline = airlineRepository.save(airline);
+
+        LocalDate departureDate = LocalDate.now().plusDays(2);
+        flight = new Flight();
+        flight.setFlightNumber("CZ3101");
+        flight.setAirline(airline);
+        flight.setDepartureAirport(departure);
+        flight.setArrivalAirport(arrival);
+        flight.setDepartureTime(departureDate.atTime(8, 0));
+        flight.setArrivalTime(departureDate.atTime(10, 30));
+        flight = flightRepository.save(flight);
+
+        passenger = new User();
+        passenger.setUsername("race-passenger");
+        passenger.setPassword("password");
+        passenger.setEmail("race@example.com");
+        passenger.setRole(User.Role.PASSENGER);
+        passenger = userRepository.save(passenger);
+    }
+
+    @Test
+    void payAtHoldDeadlineLosesToExpiry() {
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+        Long orderId = pendingOrder(now.minusMinutes(holdMinutes));
+
+        assertThat(pay(orderId, now)).as("保留期满时支付").isNull();
+        assertThat(expire(orderId, now)).containsExactly(1, 1);
+        assertState(orderId, Order.OrderStatus.CANCELLED, Seat.SeatStatus.AVAILABLE);
+    }
+
+    @Test
+    void expiryBeforeHoldDeadlineLeavesOrderPayable() {
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+        Long orderId = pendingOrder(now.minusMinutes(holdMinutes).plusSeconds(1));
+
+        assertThat(expire(orderId, now)).containsExactly(0, 0);
+        Integer cancelled = transactionTemplate.execute(status -> orderStateMachine.cancel(orderId, now,
+                now.minusMinutes(holdMinutes), OutboxEvent.EventType.ORDER_EXPIRED));
+        assertThat(cancelled).as("逐个取消同样不命中").isEqualTo(-1);
+
+        assertThat(pay(orderId, now)).hasSize(1);
+        assertState(orderId, Order.OrderStatus.PAID, Seat.SeatStatus.OCCUPIED);
+    }
+
+    @Test
+    void cancelledOrderCannotBePaidOrExpired() {
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+        Long orderId = pendingOrder(now.minusMinutes(holdMinutes).minusMinutes(1));
+
+        Integer released = transactionTemplate.execute(status -> orderStateMachine.cancel(orderId, now, null,
+                OutboxEvent.EventType.ORDER_CANCELLED));
+        assertThat(released).isEqualTo(1);
+        assertThat(pay(orderId, now)).isNull();
+        assertThat(expire(orderId, now)).containsExactly(0, 0);
+        assertState(orderId, Order.OrderStatus.CANCELLED, Seat.SeatStatus.AVAILABLE);
+    }
+
+    @Test
+    void concurrentPayAndExpireHaveExactlyOneWinner() throws Exception {
+        // 支付方的时钟在期限前、取消方的时钟在期限后，两者的条件都满足，只能由条件更新决出一个
+        LocalDateTime deadline = LocalDateTime.now().withNano(0);
+        LocalDateTime payClock = deadline.minusNanos(1_000_000);
+        LocalDateTime expireClock = deadline.plusNanos(1_000_000);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < RACES; i++) {
+                Long orderId = pendingOrder(deadline.minusMinutes(holdMinutes));
+                CyclicBarrier start = new CyclicBarrier(2);
+
+                Future<Boolean> paid = executor.submit(race(start, () -> pay(orderId, payClock) != null));
+                Future<Boolean> expired = executor.submit(race(start, () -> expire(orderId, expireClock)[0] == 1));
+                boolean payWon = paid.get(30, TimeUnit.SECONDS);
+                boolean expireWon = expired.get(30, TimeUnit.SECONDS);
+
+                assertThat(payWon ^ expireWon).as("第 %d 次：支付 %s，取消 %s", i, payWon, expireWon).isTrue();
+                if (payWon) {
+                    assertState(orderId, Order.OrderStatus.PAID, Seat.SeatStatus.OCCUPIED);
+                } else {
+                    assertState(orderId, Order.OrderStatus.CANCELLED, Seat.SeatStatus.AVAILABLE);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Callable<Boolean> race(CyclicBarrier start, Callable<Boolean> action) {
+        return () -> {
+            start.await(10, TimeUnit.SECONDS);
+            try {
+                return action.call();
+            } catch (RuntimeException e) {
+                // 数据库在并发更新同一行时让其中一方失败，等同于未命中
+                return false;
+            }
+        };
+    }
+
+    private List<OrderItem> pay(Long orderId, LocalDateTime now) {
+        return transactionTemplate.execute(status -> orderStateMachine.pay(orderId, null, now));
+    }
+
+    private int[] expire(Long orderId, LocalDateTime now) {
+        return transactionTemplate.execute(status ->
+                orderStateMachine.expire(Collections.singletonList(orderId), now, now.minusMinutes(holdMinutes)));
+    }
+
+    // 创建一个预留一个座位的待支付订单，并把下单时间改为 createdAt
+    private Long pendingOrder(LocalDateTime createdAt) {
+        Seat seat = new Seat();
+        seat.setFlight(flight);
+        seat.setSeatNumber(seatNumbers.incrementAndGet() + "C");
+        seat.setSeatType(Seat.SeatType.ECONOMY);
+        seat.setPrice(new BigDecimal("900.00"));
+        seat.setStatus(Seat.SeatStatus.RESERVED);
+        seat = seatRepository.save(seat);
+
+        Order order = new Order();
+        order.setOrderNumber("RACE" + seat.getId());
+        order.setUser(passenger);
+        order.setTotalAmount(seat.getPrice());
+        order.setStatus(Order.OrderStatus.PENDING);
+        order = orderRepository.save(order);
+
+        OrderItem item = new OrderItem();
+        item.setOrder(order);
+        item.setSeat(seat);
+        item.setPassengerName("乘客" + seat.getId());
+        item.setPassengerIdCard("320102199001010001");
+        item.setPrice(seat.getPrice());
+        orderItemRepository.save(item);
+
+        jdbcTemplate.update("UPDATE orders SET created_at = ? WHERE id = ?", createdAt, order.getId());
+        return order.getId();
+    }
+
+    private void assertState(Long orderId, Order.OrderStatus orderStatus, Seat.SeatStatus seatStatus) {
+        assertThat(orderRepository.findById(orderId).map(Order::getStatus)).hasValue(orderStatus);
+        assertThat(seatStatusOf(orderId)).isEqualTo(seatStatus);
+    }
+
+    private Seat.SeatStatus seatStatusOf(Long orderId) {
+        return Seat.SeatStatus.valueOf(jdbcTemplate.queryForObject(
+                "SELECT s.status FROM seats s JOIN order_items oi ON oi.seat_id = s.id WHERE oi.order_id = ?",
+                String.class, orderId));
+    }
+
+    private static Airport airport(String code, String city) {
+        Airport airport = new Airport();
+        airport.setCode(code);
+        airport.setName(city + "机场");
+        airport.setCity(city);
+        airport.setCountry("中国");
+        return airport;
+    }
+}
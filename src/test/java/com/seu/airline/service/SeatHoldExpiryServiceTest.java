@@ -0,0 +1,156 @@
+package com.seu.airline.service;
+
+import com.seu.airline.model.Flight;
+import com.seu.airline.model.OutboxEvent;
+import com.seu.airline.model.Seat;
+import com.seu.airline.repository.OrderItemRepository;
+import com.seu.airline.repository.OrderRepository;
+import com.seu.airline.repository.SeatRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 超时订单的批量取消与逐个回退
+ * 批量取消期间有订单被其他请求处理时整批回滚，改为逐个取消：已被处理的订单跳过，
+ * 失败的订单单独放回时间轮，其余订单照常取消。兜底扫描按页推进，失败的页不会阻塞后面的页。
+ */
+class SeatHoldExpiryServiceTest {
+
+    private static final long FLIGHT_ID = 7L;
+
+    private SeatHoldExpiryService service;
+    private OrderRepository orderRepository;
+    private SeatRepository seatRepository;
+    private OutboxService outboxService;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        orderRepository = mock(OrderRepository.class);
+        seatRepository = mock(SeatRepository.class);
+        outboxService = mock(OutboxService.class);
+        meterRegistry = new SimpleMeterRegistry();
+
+        OrderStateMachine orderStateMachine = new OrderStateMachine();
+        ReflectionTestUtils.setField(orderStateMachine, "orderRepository", orderRepository);
+        ReflectionTestUtils.setField(orderStateMachine, "orderItemRepository", mock(OrderItemRepository.class));
+        ReflectionTestUtils.setField(orderStateMachine, "seatRepository", seatRepository);
+        ReflectionTestUtils.setField(orderStateMachine, "flightAvailabilityService", mock(FlightAvailabilityService.class));
+        ReflectionTestUtils.setField(orderStateMachine, "orderSummaryService", mock(OrderSummaryService.class));
+        ReflectionTestUtils.setField(orderStateMachine, "outboxService", outboxService);
+        ReflectionTestUtils.setField(orderStateMachine, "holdMinutes", 30L);
+
+        service = new SeatHoldExpiryService();
+        ReflectionTestUtils.setField(service, "orderRepository", orderRepository);
+        ReflectionTestUtils.setField(service, "orderStateMachine", orderStateMachine);
+        ReflectionTestUtils.setField(service, "transactionManager", mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(service, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(service, "holdMinutes", 30L);
+        ReflectionTestUtils.setField(service, "tickMs", 1000L);
+        ReflectionTestUtils.setField(service, "batchSize", 200);
+        service.init();
+    }
+
+    @Test
+    void batchExpiresAllCandidatesInOneUpdate() {
+        List<Long> orderIds = Arrays.asList(1L, 2L, 3L);
+        when(orderRepository.findExpiredPendingIds(anyCollection(), any())).thenReturn(orderIds);
+        when(orderRepository.expirePending(anyCollection(), any(), any()))
+                .thenAnswer(invocation -> invocation.<Collection<?>>getArgument(0).size());
+        when(seatRepository.findReservedByOrderIds(anyCollection())).thenReturn(Arrays.asList(seat(11L), seat(12L)));
+        when(seatRepository.releaseReservedSeats(anyList(), any())).thenReturn(2);
+
+        assertThat(service.expireOrders(orderIds)).isEqualTo(3);
+        assertThat(meterRegistry.counter("booking.hold.released.seats").count()).isEqualTo(2.0);
+        verify(outboxService).publishAll(OutboxService.ORDER, orderIds, OutboxEvent.EventType.ORDER_EXPIRED);
+        verify(outboxService, never()).publish(any(), any(), any(), any());
+    }
+
+    @Test
+    void orderPaidDuringBatchFallsBackToPerOrderExpiry() {
+        // 候选订单 1、2、3 查出后订单 2 被支付：批量更新只命中 2 行，整批回滚后逐个取消
+        when(orderRepository.findExpiredPendingIds(anyCollection(), any())).thenReturn(Arrays.asList(1L, 2L, 3L));
+        when(orderRepository.expirePending(anyCollection(), any(), any())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            if (ids.size() > 1) {
+                return ids.size() - 1;
+            }
+            Long orderId = ids.iterator().next();
+            if (orderId == 3L) {
+                throw new RuntimeException("Lock wait timeout exceeded");
+            }
+            return orderId == 2L ? 0 : 1;
+        });
+        when(seatRepository.findReservedByOrderIds(Collections.singletonList(1L)))
+                .thenReturn(Collections.singletonList(seat(11L)));
+        when(seatRepository.releaseReservedSeats(anyList(), any())).thenReturn(1);
+
+        assertThat(service.expireOrders(Arrays.asList(1L, 2L, 3L))).isEqualTo(1);
+
+        // 订单 1 取消并释放座位；订单 2 已支付被跳过；订单 3 失败后放回时间轮等待重试
+        verify(outboxService).publish(OutboxService.ORDER, 1L, OutboxEvent.EventType.ORDER_EXPIRED, null);
+        verify(outboxService, never()).publish(eq(OutboxService.ORDER), eq(2L), any(), isNull());
+        verify(outboxService, never()).publishAll(any(), anyCollection(), any());
+        assertThat(meterRegistry.counter("booking.hold.expired.orders").count()).isEqualTo(1.0);
+        assertThat(meterRegistry.counter("booking.hold.released.seats").count()).isEqualTo(1.0);
+        assertThat(meterRegistry.get("booking.hold.pending").gauge().value()).isEqualTo(1.0);
+    }
+
+    @Test
+    void sweepPagesPastOrdersThatKeepFailing() {
+        // 宕机实例留下的超时订单由兜底扫描分页取消；一页全部失败时继续处理后面的页，不反复扫描同一页
+        ReflectionTestUtils.setField(service, "batchSize", 2);
+        when(orderRepository.findExpiredPendingIdsAfter(any(), eq(0L), any())).thenReturn(Arrays.asList(1L, 2L));
+        when(orderRepository.findExpiredPendingIdsAfter(any(), eq(2L), any())).thenReturn(Collections.singletonList(3L));
+        when(orderRepository.findExpiredPendingIdsAfter(any(), eq(3L), any())).thenReturn(Collections.emptyList());
+        when(orderRepository.findExpiredPendingIds(anyCollection(), any()))
+                .thenAnswer(invocation -> new ArrayList<>(invocation.<Collection<Long>>getArgument(0)));
+        when(orderRepository.expirePending(anyCollection(), any(), any())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            if (ids.contains(1L) || ids.contains(2L)) {
+                throw new RuntimeException("Deadlock found when trying to get lock");
+            }
+            return ids.size();
+        });
+
+        service.sweep();
+
+        verify(outboxService).publishAll(OutboxService.ORDER, Collections.singletonList(3L),
+                OutboxEvent.EventType.ORDER_EXPIRED);
+        assertThat(meterRegistry.counter("booking.hold.expired.orders").count()).isEqualTo(1.0);
+        assertThat(meterRegistry.get("booking.hold.pending").gauge().value()).isEqualTo(2.0);
+    }
+
+    private static Seat seat(Long seatId) {
+        Flight flight = new Flight();
+        flight.setId(FLIGHT_ID);
+        Seat seat = new Seat();
+        seat.setId(seatId);
+        seat.setFlight(flight);
+        seat.setSeatType(Seat.SeatType.ECONOMY);
+        seat.setPrice(new BigDecimal("800.00"));
+        seat.setStatus(Seat.SeatStatus.RESERVED);
+        return seat;
+    }
+}
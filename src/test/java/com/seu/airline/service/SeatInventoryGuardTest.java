@@ -0,0 +1,182 @@
+package com.seu.airline.service;
+
+import com.seu.airline.dto.SeatDTO;
+import com.seu.airline.dto.SeatTransition;
+import com.seu.airline.event.FlightAvailabilityChangedEvent;
+import com.seu.airline.model.Seat;
+import com.seu.airline.repository.SeatRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Redis 座位守卫的占用、释放和对账流程
+ * 脚本本身在 Redis 中原子执行，这里用记录调用的替身检查脚本的调用顺序和参数：
+ * 首次占用前先写入加载占位再读取数据库（加载期间提交的释放不会被快照覆盖），
+ * 失效判断的时间上限在读取快照之前取得，守卫出错时放行交给数据库判断。
+ */
+class SeatInventoryGuardTest {
+
+    private static final long FLIGHT_ID = 3L;
+    private static final long CLAIM_TIMEOUT_MS = 60_000;
+
+    private static final RedisScript<?> CLAIM = script("CLAIM_SCRIPT");
+    private static final RedisScript<?> RELEASE = script("RELEASE_SCRIPT");
+    private static final RedisScript<?> APPLY = script("APPLY_SCRIPT");
+    private static final RedisScript<?> MARK_LOADING = script("MARK_LOADING_SCRIPT");
+    private static final RedisScript<?> LOAD = script("LOAD_SCRIPT");
+
+    private SeatInventoryGuard guard;
+    private StringRedisTemplate redisTemplate;
+    private SeatRepository seatRepository;
+
+    // 按顺序记录的脚本调用，以及每个脚本依次返回的结果
+    private final List<String> calls = new ArrayList<>();
+    private final List<Object[]> callArgs = new ArrayList<>();
+    private final Map<RedisScript<?>, Deque<Long>> results = new HashMap<>();
+    private long snapshotReadAt;
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = mock(StringRedisTemplate.class);
+        seatRepository = mock(SeatRepository.class);
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any())).thenAnswer(invocation -> {
+            RedisScript<?> script = invocation.getArgument(0);
+            calls.add(nameOf(script));
+            Object[] raw = invocation.getArguments();
+            callArgs.add(Arrays.copyOfRange(raw, 2, raw.length));
+            Deque<Long> queue = results.get(script);
+            return queue != null && !queue.isEmpty() ? queue.poll() : 1L;
+        });
+        when(seatRepository.findSeatViewsByFlightId(FLIGHT_ID)).thenAnswer(invocation -> {
+            calls.add("db");
+            snapshotReadAt = System.currentTimeMillis();
+            return Arrays.asList(
+                    new SeatDTO(31L, FLIGHT_ID, "1A", Seat.SeatType.ECONOMY, BigDecimal.TEN, Seat.SeatStatus.AVAILABLE),
+                    new SeatDTO(32L, FLIGHT_ID, "1B", Seat.SeatType.ECONOMY, BigDecimal.TEN, Seat.SeatStatus.RESERVED));
+        });
+
+        guard = new SeatInventoryGuard();
+        ReflectionTestUtils.setField(guard, "stringRedisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(guard, "seatRepository", seatRepository);
+        ReflectionTestUtils.setField(guard, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(guard, "enabled", true);
+        ReflectionTestUtils.setField(guard, "idleTtlSeconds", 1800L);
+        ReflectionTestUtils.setField(guard, "claimTimeoutMs", CLAIM_TIMEOUT_MS);
+    }
+
+    @Test
+    void firstClaimMarksLoadingBeforeReadingSnapshotThenRetries() {
+        results.put(CLAIM, new ArrayDeque<>(Arrays.asList(-1L, 1L)));
+
+        assertThat(guard.tryClaim(Collections.singletonList(FLIGHT_ID), Collections.singletonList(31L)))
+                .isEqualTo(SeatInventoryGuard.ClaimResult.CLAIMED);
+        assertThat(calls).containsExactly("claim", "markLoading", "db", "load", "claim");
+
+        // 快照参数：航班ID、过期秒数、不限于已存在的哈希、失效上限（读取快照之前）、座位状态
+        Object[] load = callArgs.get(2);
+        assertThat(load[0]).isEqualTo(String.valueOf(FLIGHT_ID));
+        assertThat(load[2]).isEqualTo("0");
+        assertThat(Long.parseLong((String) load[3])).isLessThanOrEqualTo(snapshotReadAt - CLAIM_TIMEOUT_MS);
+        assertThat(Arrays.copyOfRange(load, 4, load.length)).containsExactly("31", "0", "32", "1");
+    }
+
+    @Test
+    void claimOfTakenSeatIsRejectedWithoutTouchingDatabase() {
+        results.put(CLAIM, new ArrayDeque<>(Collections.singletonList(0L)));
+
+        assertThat(guard.tryClaim(Collections.singletonList(FLIGHT_ID), Arrays.asList(31L, 32L)))
+                .isEqualTo(SeatInventoryGuard.ClaimResult.REJECTED);
+        assertThat(calls).containsExactly("claim");
+
+        // 下单中占用超过时限视为已失效：失效上限 = 当前时间 - 时限
+        Object[] claim = callArgs.get(0);
+        assertThat(Long.parseLong((String) claim[1]) - Long.parseLong((String) claim[2])).isEqualTo(CLAIM_TIMEOUT_MS);
+        assertThat(Arrays.copyOfRange(claim, 3, claim.length)).containsExactly("31", "32");
+    }
+
+    @Test
+    void redisFailureBypassesToDatabase() {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any()))
+                .thenThrow(new RedisConnectionFailureException("Unable to connect to Redis"));
+
+        assertThat(guard.tryClaim(Collections.singletonList(FLIGHT_ID), Collections.singletonList(31L)))
+                .isEqualTo(SeatInventoryGuard.ClaimResult.BYPASSED);
+        // 释放失败不影响调用方，等待对账修正
+        guard.release(Collections.singletonList(FLIGHT_ID), Collections.singletonList(31L));
+    }
+
+    @Test
+    void committedTransitionsAreAppliedButRemoteOnesAreLeftToTheirOrigin() {
+        List<SeatTransition> transitions = Arrays.asList(
+                new SeatTransition(31L, FLIGHT_ID, Seat.SeatType.ECONOMY, BigDecimal.TEN,
+                        Seat.SeatStatus.AVAILABLE, Seat.SeatStatus.RESERVED),
+                new SeatTransition(32L, FLIGHT_ID, Seat.SeatType.ECONOMY, BigDecimal.TEN,
+                        Seat.SeatStatus.RESERVED, Seat.SeatStatus.AVAILABLE));
+
+        guard.onAvailabilityChanged(FlightAvailabilityChangedEvent.remote(
+                Collections.singleton(FLIGHT_ID), transitions, Collections.emptyMap()));
+        assertThat(calls).isEmpty();
+
+        guard.onAvailabilityChanged(FlightAvailabilityChangedEvent.of(
+                Collections.singleton(FLIGHT_ID), transitions, Collections.emptyMap()));
+        assertThat(calls).containsExactly("apply");
+        assertThat(callArgs.get(0)).containsExactly("31", "1", "32", "0");
+    }
+
+    @Test
+    void reconcileOnlyRefreshesFlightsStillGuarded() {
+        @SuppressWarnings("unchecked")
+        SetOperations<String, String> setOperations = mock(SetOperations.class);
+        when(redisTemplate.opsForSet()).thenReturn(setOperations);
+        when(setOperations.members("seat:guard:flights"))
+                .thenReturn(new HashSet<>(Collections.singletonList(String.valueOf(FLIGHT_ID))));
+
+        guard.reconcile();
+
+        // 对账不写加载占位，已过期的哈希由脚本移出守卫集合而不是重新创建
+        assertThat(calls).containsExactly("db", "load");
+        assertThat(callArgs.get(0)[2]).isEqualTo("1");
+    }
+
+    private static RedisScript<?> script(String field) {
+        return (RedisScript<?>) ReflectionTestUtils.getField(SeatInventoryGuard.class, field);
+    }
+
+    private static String nameOf(RedisScript<?> script) {
+        if (script == CLAIM) {
+            return "claim";
+        } else if (script == RELEASE) {
+            return "release";
+        } else if (script == APPLY) {
+            return "apply";
+        } else if (script == MARK_LOADING) {
+            return "markLoading";
+        } else if (script == LOAD) {
+            return "load";
+        }
+        return "unknown";
+    }
+}
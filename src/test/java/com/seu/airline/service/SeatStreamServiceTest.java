@@ -0,0 +1,105 @@
+package com.seu.airline.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 座位实时推送的发送期限
+ * 只有一个写线程时，一个不读取数据（发送一直阻塞）的连接不能让同一实例上的其他连接收不到事件。
+ */
+class SeatStreamServiceTest {
+
+    private static final long FLIGHT_ID = 1L;
+    private static final long SEND_TIMEOUT_MS = 200;
+
+    private SeatStreamService service;
+    private SimpleMeterRegistry meterRegistry;
+    private final CountDownLatch unblock = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        SeatMapService seatMapService = mock(SeatMapService.class);
+        when(seatMapService.getVersion(FLIGHT_ID)).thenReturn(5L);
+
+        meterRegistry = new SimpleMeterRegistry();
+        service = new SeatStreamService();
+        ReflectionTestUtils.setField(service, "seatMapService", seatMapService);
+        ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(service, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(service, "timeoutMs", 60_000L);
+        ReflectionTestUtils.setField(service, "maxSubscribers", 100);
+        ReflectionTestUtils.setField(service, "dispatcherThreads", 1);
+        ReflectionTestUtils.setField(service, "writerThreads", 1);
+        ReflectionTestUtils.setField(service, "maxBacklog", 32);
+        ReflectionTestUtils.setField(service, "sendTimeoutMs", SEND_TIMEOUT_MS);
+        service.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        unblock.countDown();
+        service.shutdown();
+    }
+
+    @Test
+    void stalledSubscriberDoesNotDelayOthers() throws Exception {
+        AtomicInteger stalledSends = new AtomicInteger();
+        SseEmitter stalled = new SseEmitter(60_000L) {
+            @Override
+            public void send(SseEventBuilder builder) {
+                stalledSends.incrementAndGet();
+                try {
+                    unblock.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        BlockingQueue<SseEmitter.SseEventBuilder> received = new LinkedBlockingQueue<>();
+        SseEmitter healthy = new SseEmitter(60_000L) {
+            @Override
+            public void send(SseEventBuilder builder) {
+                received.add(builder);
+            }
+        };
+
+        // 唯一的写线程先被卡住在第一个连接的初始事件上
+        service.register(FLIGHT_ID, stalled, null);
+        service.register(FLIGHT_ID, healthy, null);
+
+        long start = System.currentTimeMillis();
+        assertThat(received.poll(5, TimeUnit.SECONDS)).as("初始事件").isNotNull();
+        assertThat(System.currentTimeMillis() - start).isLessThan(SEND_TIMEOUT_MS * 10);
+        assertThat(meterRegistry.counter("seat.stream.dropped").count()).isEqualTo(1.0);
+
+        // 超过期限的连接已移出频道，之后的事件只发给其他连接且不再排在它后面
+        service.heartbeat();
+        assertThat(received.poll(5, TimeUnit.SECONDS)).as("心跳").isNotNull();
+        assertThat(stalledSends.get()).isEqualTo(1);
+
+        // 被卡住的写线程恢复后撤下补充的线程
+        unblock.countDown();
+        ThreadPoolExecutor writers = (ThreadPoolExecutor) ReflectionTestUtils.getField(service, "writers");
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (writers.getMaximumPoolSize() != 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(writers.getMaximumPoolSize()).isEqualTo(1);
+    }
+}